@@ -0,0 +1,126 @@
+package com.example.app.repository;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.app.db.DatabaseContract.PersonEntry;
+import com.example.app.db.DatabaseHelper;
+import com.example.app.model.Person;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented latency benchmark comparing the old open/close-per-call access pattern against the
+ * long-lived connection kept by {@link PersonRepository}.
+ *
+ * Results are written to logcat under the {@value TAG} tag, e.g.
+ * {@code adb logcat -s PersonRepositoryBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PersonRepositoryBenchmark {
+
+    private static final String TAG = "PersonRepositoryBenchmark";
+    private static final int SEED_ROWS = 500; // Rows added to the table before measuring.
+    private static final int WARM_UP = 20; // Iterations discarded before measuring.
+    private static final int ITERATIONS = 200; // Measured iterations per scenario.
+
+    private DatabaseHelper dbHelper;
+    private PersonRepository personRepository;
+    private final List<Person> seeded = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dbHelper = new DatabaseHelper(appContext);
+        personRepository = new PersonRepository(appContext);
+        for (int i = 0; i < SEED_ROWS; i++) {
+            long id = personRepository.insert(new Person("First" + i, "Last" + i));
+            seeded.add(new Person((int) id, "First" + i, "Last" + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (Person person : seeded) {
+            personRepository.delete(person);
+        }
+        personRepository.release();
+        dbHelper.close();
+    }
+
+    @Test
+    public void findById_openClosePerCall_vs_longLivedConnection() {
+        final int id = seeded.get(SEED_ROWS / 2).getId();
+
+        long[] before = new long[ITERATIONS];
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            SQLiteDatabase database = dbHelper.getReadableDatabase();
+            Cursor cursor = database.query(PersonEntry.TABLE_NAME, null, PersonEntry._ID + "= ?",
+                    new String[]{String.valueOf(id)}, null, null, null);
+            cursor.moveToFirst();
+            cursor.close();
+            database.close();
+            if (i >= 0) before[i] = System.nanoTime() - start;
+        }
+
+        long[] after = new long[ITERATIONS];
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            Person person = personRepository.findById(id);
+            if (i >= 0) after[i] = System.nanoTime() - start;
+            assertNotNull(person);
+        }
+
+        report("findById", before, after);
+    }
+
+    @Test
+    public void findAll_openClosePerCall_vs_longLivedConnection() {
+        long[] before = new long[ITERATIONS];
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            SQLiteDatabase database = dbHelper.getReadableDatabase();
+            Cursor cursor = database.query(PersonEntry.TABLE_NAME, null, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                cursor.getString(cursor.getColumnIndex(PersonEntry.COLUMN_NAME_FIRST));
+            }
+            cursor.close();
+            database.close();
+            if (i >= 0) before[i] = System.nanoTime() - start;
+        }
+
+        long[] after = new long[ITERATIONS];
+        int size = 0;
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            size = personRepository.findAll().size();
+            if (i >= 0) after[i] = System.nanoTime() - start;
+        }
+        assertTrue(size >= SEED_ROWS);
+
+        report("findAll", before, after);
+    }
+
+    /**
+     * Logs the p50/p90/p99 latencies (in microseconds) of both scenarios.
+     */
+    private static void report(String operation, long[] before, long[] after) {
+        Log.i(TAG, operation + " open/close per call: " + BenchmarkResults.describe(before));
+        Log.i(TAG, operation + " long-lived connection: " + BenchmarkResults.describe(after));
+    }
+}
@@ -5,33 +5,84 @@ import androidx.appcompat.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.web.MetricsHandler;
+import com.example.app.service.PersonService;
+import com.example.app.service.WriteBehindQueue;
 import com.example.app.web.NamesHandler;
+import com.example.app.web.NamesStreamHandler;
 import com.example.app.web.RootHandler;
+import com.example.app.web.server.DispatchingHandler;
+import com.example.app.web.server.ExecutionMode;
+import com.example.app.web.server.OverloadFilter;
+import com.example.app.web.server.RequestExecutor;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getName() + "_TAG"; // Logging TAG
     private static final int SERVER_PORT = 5000; // HTTP Service's port.
+    private static final ExecutionMode EXECUTION_MODE = ExecutionMode.VIRTUAL_THREADS; // Falls back to BOUNDED_POOL.
+    private static final int REQUEST_THREADS = 4; // Fixed number of threads handling requests.
+    private static final int REQUEST_QUEUE_CAPACITY = 64; // Requests waiting for a thread before rejecting with 503.
+    private static final int DB_THREADS = 2; // Fixed number of threads running database calls.
+    private static final int DB_QUEUE_CAPACITY = 64; // Database calls waiting before rejecting their request with 503.
+    private static final int RETRY_AFTER_SECONDS = 1; // Retry-After sent along with 503 responses.
+    private static final int MAX_REQUEST_HEADER_SECONDS = 10; // Max time a client may take to send its request's headers.
+    private static final int MAX_EVENT_STREAMS = 8; // Open "/names/stream" connections, each holding a thread.
+    private static final boolean WRITE_BEHIND = false; // Group commit "/names" writes on a single writer thread.
+    private static final int WRITE_QUEUE_CAPACITY = 4096; // Writes waiting for their commit before rejecting with 503.
+    private static final int WRITE_BATCH_SIZE = 256; // Max writes committed in a single transaction.
+    private static final long WRITE_BATCH_DELAY_MILLIS = 10; // Max time a write waits for others to share its commit.
+    private static final boolean IN_MEMORY_INDEX = false; // Serve "/names" reads from memory, for read-mostly devices.
 
     private HttpServer httpServer; // Holds our Http Service instance.
+    private ExecutorService requestExecutor; // Executor running the Http Service's requests.
+    private RequestExecutor dbExecutor; // Dedicated executor running the PersonService's async database calls.
+    private RequestExecutor streamExecutor; // Dedicated executor holding the open event streams.
     private NamesHandler namesHandler; // Variable needed to release used resources when done.
+    private NamesStreamHandler namesStreamHandler; // Variable needed to release used resources when done.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         try {
-            // 1 create the Http Service
+            // 1 create the Http Service, closing connections whose request's headers take too long to
+            // arrive, so slow clients can't hold a request thread, nor the one answering 503s
+            System.setProperty("sun.net.httpserver.maxReqTime", String.valueOf(MAX_REQUEST_HEADER_SECONDS));
             httpServer = HttpServer.create(new InetSocketAddress(SERVER_PORT), 0);
-            httpServer.setExecutor(Executors.newCachedThreadPool());
-            // 2 define the endpoints
-            httpServer.createContext(RootHandler.ENDPOINT, new RootHandler(getAssets()));
-            namesHandler = new NamesHandler(getApplicationContext());
-            httpServer.createContext(NamesHandler.ENDPOINT, namesHandler);
+            requestExecutor = EXECUTION_MODE.createExecutor(REQUEST_THREADS, REQUEST_QUEUE_CAPACITY);
+            httpServer.setExecutor(requestExecutor);
+            dbExecutor = new RequestExecutor("db", DB_THREADS, DB_QUEUE_CAPACITY, false);
+            // Streams never end on their own, so none waits for a thread: further ones are answered with 503
+            streamExecutor = new RequestExecutor("event-stream", MAX_EVENT_STREAMS, 0, false);
+            // 2 define the endpoints, answering with 503 when overloaded
+            OverloadFilter overloadFilter = new OverloadFilter(RETRY_AFTER_SECONDS);
+            httpServer.createContext(RootHandler.ENDPOINT, new RootHandler(getAssets()))
+                    .getFilters().add(overloadFilter);
+            PersonService personService = new PersonService(getApplicationContext(), IN_MEMORY_INDEX, dbExecutor);
+            WriteBehindQueue writeQueue = WRITE_BEHIND ? new WriteBehindQueue(personService, WRITE_QUEUE_CAPACITY,
+                    WRITE_BATCH_SIZE, WRITE_BATCH_DELAY_MILLIS, MetricsRegistry.getDefault()) : null;
+            // Its requests wait on the database without holding a request thread, see AsyncRoute, and
+            // are answered on one once it's done
+            namesHandler = new NamesHandler(personService, writeQueue, requestExecutor);
+            httpServer.createContext(NamesHandler.ENDPOINT, namesHandler)
+                    .getFilters().add(overloadFilter);
+            namesStreamHandler = new NamesStreamHandler(personService.getChangeFeed());
+            httpServer.createContext(NamesStreamHandler.ENDPOINT, new DispatchingHandler(streamExecutor,
+                    namesStreamHandler, RETRY_AFTER_SECONDS))
+                    .getFilters().add(overloadFilter);
+            httpServer.createContext(MetricsHandler.ENDPOINT, new MetricsHandler(MetricsRegistry.getDefault()))
+                    .getFilters().add(overloadFilter);
+            if (requestExecutor instanceof RequestExecutor) {
+                ((RequestExecutor) requestExecutor).registerMetrics(MetricsRegistry.getDefault());
+            }
+            dbExecutor.registerMetrics(MetricsRegistry.getDefault());
+            streamExecutor.registerMetrics(MetricsRegistry.getDefault());
             // 3 start service
             httpServer.start();
             Log.d(TAG, "onCreate: Server started at " + httpServer.getAddress().toString());
@@ -45,7 +96,11 @@ public class MainActivity extends AppCompatActivity {
         super.onDestroy();
         if (httpServer != null) {
             httpServer.stop(0);
-            namesHandler.tearDown();
+            requestExecutor.shutdown();
+            dbExecutor.shutdown();
+            namesHandler.tearDown(); // commits the queued writes, then closes the change feed, ending the open event streams
+            streamExecutor.shutdown();
+            namesStreamHandler.tearDown();
         }
     }
 }
@@ -0,0 +1,196 @@
+package com.example.app.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns the app's single {@link SQLiteDatabase} and is the only way to use it: callers hand it
+ * {@link Read}s and {@link Write}s instead of holding on to the connection.
+ *
+ * Concurrency model:
+ * <ul>
+ *     <li>Writes are serialized on a single writer lock, each in its own transaction on SQLite's
+ *     primary connection, so writers queue up here instead of busy waiting on SQLite's lock. The
+ *     statements compiled through {@link #compileStatement(String)} are only used by the writer
+ *     holding the lock, so they need no locking of their own.</li>
+ *     <li>Reads run concurrently with each other and with the writer. Since the {@link DatabaseHelper}
+ *     enables write-ahead logging, SQLiteDatabase runs them on its pool of reader connections, each
+ *     seeing the last committed snapshot.</li>
+ *     <li>{@link #close()} never closes the connection under a running read or write: new ones are
+ *     refused right away, and the last one in flight closes it when it ends.</li>
+ * </ul>
+ */
+public final class DatabaseAccess {
+
+    /**
+     * A query run by {@link #read(Read)}.
+     *
+     * @param <R> the query's result type.
+     */
+    public interface Read<R> {
+        /**
+         * @param db the shared {@link SQLiteDatabase}, never to be closed, nor used after returning.
+         * @return the query's result.
+         * @throws IOException if handing the rows read to a consumer fails.
+         */
+        R run(SQLiteDatabase db) throws IOException;
+    }
+
+    /**
+     * Statements run by {@link #write(Write)}, all in the same transaction.
+     *
+     * @param <R> the write's result type.
+     */
+    public interface Write<R> {
+        /**
+         * @param db the shared {@link SQLiteDatabase}, never to be closed, nor used after returning.
+         * @return the write's result.
+         */
+        R run(SQLiteDatabase db);
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final Object lock = new Object(); // Guards the fields below.
+    private final Object writeLock = new Object(); // Held by the one writer, the only one using the statements.
+    private final Map<String, SQLiteStatement> statements = new HashMap<>(); // Writer's compiled statements by SQL.
+    private SQLiteDatabase database; // Opened on first use, closed once closed and no longer in use.
+    private int inUse; // Reads and writes in flight.
+    private boolean closed;
+
+    /**
+     * @param dbHelper the {@link DatabaseHelper} opening, and upgrading, the database on first use.
+     */
+    public DatabaseAccess(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Runs a query, concurrently with any other read and the writer.
+     *
+     * @param read the {@link Read} to run.
+     * @return the read's result.
+     * @throws IOException if the read throws it.
+     * @throws IllegalStateException if this access was closed.
+     */
+    public <R> R read(Read<R> read) throws IOException {
+        SQLiteDatabase db = acquire();
+        try {
+            return read.run(db);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Runs a write in a transaction of its own, once the writes before it are done. The transaction
+     * is committed if the write returns, rolled back if it throws.
+     *
+     * @param write the {@link Write} to run.
+     * @return the write's result.
+     * @throws IllegalStateException if this access was closed.
+     */
+    public <R> R write(Write<R> write) {
+        SQLiteDatabase db = acquire();
+        try {
+            synchronized (writeLock) {
+                // Non exclusive, so readers on other connections carry on while the write runs
+                db.beginTransactionNonExclusive();
+                try {
+                    R result = write.run(db);
+                    db.setTransactionSuccessful();
+                    return result;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns a statement compiled once for the connection and reused by every later write, with
+     * its bindings left cleared by the caller.
+     *
+     * @param sql the statement's SQL.
+     * @return the compiled {@link SQLiteStatement}.
+     * @throws IllegalStateException if not called from within a {@link Write}.
+     */
+    public SQLiteStatement compileStatement(String sql) {
+        if (!Thread.holdsLock(writeLock)) {
+            throw new IllegalStateException("Statements can only be used from within a write");
+        }
+        // Looked up and compiled under the same lock closing them, so a statement is never used once closed
+        synchronized (lock) {
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * Refuses any new read or write, then closes the connection and its compiled statements, right
+     * away if none is in flight, otherwise once the last one ends. Never blocks.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (inUse == 0) {
+                closeDatabase();
+            }
+        }
+    }
+
+    /**
+     * Opens the database on first use, starting the backfill of any pending migration.
+     */
+    private SQLiteDatabase acquire() {
+        boolean opened = false;
+        SQLiteDatabase db;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Database access is closed");
+            }
+            if (database == null) {
+                database = dbHelper.getWritableDatabase();
+                opened = true;
+            }
+            inUse++;
+            db = database;
+        }
+        if (opened) {
+            dbHelper.startBackfill(this);
+        }
+        return db;
+    }
+
+    private void release() {
+        synchronized (lock) {
+            if (--inUse == 0 && closed) {
+                closeDatabase();
+            }
+        }
+    }
+
+    /**
+     * Closes the compiled statements and the connection. Called with the lock held and nothing in flight.
+     */
+    private void closeDatabase() {
+        if (database == null) {
+            return;
+        }
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+        dbHelper.close();
+        database = null;
+    }
+}
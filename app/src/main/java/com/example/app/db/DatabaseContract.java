@@ -21,6 +21,19 @@ public final class DatabaseContract {
         public static final String TABLE_NAME = "people";
         public static final String COLUMN_NAME_FIRST= "firstName";
         public static final String COLUMN_NAME_LAST = "lastName";
+        public static final String COLUMN_NAME_UPDATED_AT = "updatedAt"; // Last insert or update, epoch millis.
+        public static final String INDEX_NAME = "people_name_idx"; // Composite (lastName, firstName) index.
+        public static final String FTS_TABLE_NAME = "people_fts"; // Full-text index of names, docid is the _ID.
+    }
+
+    /**
+     * This class maps the SQLite table tracking the {@link Migration} backfills not completed yet,
+     * one row per migration, removed once its backfill is done.
+     */
+    public static class BackfillEntry {
+        public static final String TABLE_NAME = "pending_backfills";
+        public static final String COLUMN_NAME_VERSION = "version"; // Version of the Migration, the primary key.
+        public static final String COLUMN_NAME_AFTER_ID = "afterId"; // Last row id covered by a committed batch.
     }
 
 }
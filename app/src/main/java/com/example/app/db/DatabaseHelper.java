@@ -1,11 +1,20 @@
 package com.example.app.db;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
+import com.example.app.db.DatabaseContract.BackfillEntry;
 import com.example.app.db.DatabaseContract.PersonEntry;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Custom implementation of the {@link SQLiteOpenHelper} Android class.
  *
@@ -14,52 +23,159 @@ import com.example.app.db.DatabaseContract.PersonEntry;
  *
  * To add more tables, in addition to creating the respective Entry classes on the {@link DatabaseContract} class,
  * it is need to create the proper SQL DDL statements as shown with String variables SQL_CREATE_ENTRIES and SQL_DELETE_ENTRIES.
+ *
+ * Databases created by older versions of the app are upgraded through the {@link #MIGRATIONS}, applied
+ * one after the other from the database's version up to {@value DATABASE_VERSION}, keeping their records.
+ * To change the schema, add a {@link Migration} for the next version, bump {@value DATABASE_VERSION}
+ * and update the CREATE statements so new databases start with the same schema.
+ *
+ * The backfills of the migrations applied by an upgrade are recorded in the
+ * {@link BackfillEntry#TABLE_NAME} table, along with their progress, and removed from it once done,
+ * so completed backfills aren't run again on the next start up.
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
-    private static final int DATABASE_VERSION = 1; // Current database version number
+    private static final String TAG = DatabaseHelper.class.getName()+"_TAG"; // Logging TAG
+    private static final int DATABASE_VERSION = 5; // Current database version number
+    private static final int BACKFILL_TRACKING_VERSION = 5; // First version recording its pending backfills.
     private static final String DATABASE_NAME = "Device.db"; // Database file name i.e. name to search for in 'Device File Explorer'
+    private static final int BACKFILL_BATCH_SIZE = 500; // Rows rewritten per backfill transaction.
+
+    // Schema changes since version 1, ordered by version.
+    private static final Migration[] MIGRATIONS = {
+            // 2 - Composite index to look up and sort people by name.
+            new Migration(2) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_NAME_INDEX);
+                }
+            },
+            // 3 - Time of each record's last insert or update. Existing records are stamped with the
+            // time they are backfilled at, since their actual one is unknown.
+            new Migration(3) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    // Adding a nullable column with no default only changes the schema, no row is rewritten
+                    db.execSQL("ALTER TABLE " + PersonEntry.TABLE_NAME +
+                            " ADD COLUMN " + PersonEntry.COLUMN_NAME_UPDATED_AT + " INTEGER");
+                }
+
+                @Override
+                public long backfill(SQLiteDatabase db, long afterId, int batchSize) {
+                    long lastId = lastIdOfBatch(db, afterId, batchSize);
+                    if (lastId <= afterId) {
+                        return -1;
+                    }
+                    db.execSQL("UPDATE " + PersonEntry.TABLE_NAME +
+                                    " SET " + PersonEntry.COLUMN_NAME_UPDATED_AT + " = ?" +
+                                    " WHERE " + PersonEntry._ID + " > ? AND " + PersonEntry._ID + " <= ?" +
+                                    " AND " + PersonEntry.COLUMN_NAME_UPDATED_AT + " IS NULL",
+                            new Object[]{System.currentTimeMillis(), afterId, lastId});
+                    return lastId;
+                }
+            },
+            // 4 - Full-text index of names, kept in sync by triggers. Existing records are indexed
+            // by the backfill, new ones by the triggers as soon as they're created.
+            new Migration(4) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_FTS);
+                    for (String trigger : SQL_CREATE_FTS_TRIGGERS) {
+                        db.execSQL(trigger);
+                    }
+                }
+
+                @Override
+                public long backfill(SQLiteDatabase db, long afterId, int batchSize) {
+                    long lastId = lastIdOfBatch(db, afterId, batchSize);
+                    if (lastId <= afterId) {
+                        return -1;
+                    }
+                    // Rows already indexed by the triggers, or a previous run, are skipped by docid
+                    db.execSQL("INSERT INTO " + PersonEntry.FTS_TABLE_NAME + " (docid, " +
+                                    PersonEntry.COLUMN_NAME_FIRST + ", " + PersonEntry.COLUMN_NAME_LAST + ")" +
+                                    " SELECT " + PersonEntry._ID + ", " + PersonEntry.COLUMN_NAME_FIRST + ", " +
+                                    PersonEntry.COLUMN_NAME_LAST + " FROM " + PersonEntry.TABLE_NAME +
+                                    " WHERE " + PersonEntry._ID + " > ?1 AND " + PersonEntry._ID + " <= ?2" +
+                                    " AND " + PersonEntry._ID + " NOT IN (SELECT docid FROM " +
+                                    PersonEntry.FTS_TABLE_NAME + " WHERE docid > ?1 AND docid <= ?2)",
+                            new Object[]{afterId, lastId});
+                    return lastId;
+                }
+            },
+            // 5 - Backfills still to run, so completed ones aren't run again on every start up.
+            new Migration(5) {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_PENDING_BACKFILLS);
+                }
+            }
+    };
 
     /**
      * Default constructor for this class.
      * Receives an instance of the application context to create the database file.
      *
      * Calls it's super constructor, passing the context, database name, an optional factory and the current version number.
+     * Write-ahead logging is enabled so readers on the HTTP worker threads don't block each other, nor the writer.
      *
      * @param context Application's {@link Context} instance
      */
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
      * Called the very first time the Helper is instantiated.
-     * Will execute the SQL_DELETE_ENTRIES sql code.
+     * Will execute the SQL_CREATE_ENTRIES, SQL_CREATE_NAME_INDEX, SQL_CREATE_FTS,
+     * SQL_CREATE_FTS_TRIGGERS and SQL_CREATE_PENDING_BACKFILLS sql code, creating the current schema.
+     * A new database has no rows to backfill.
      *
      * @param db {@link SQLiteDatabase} instance to perform sql statements
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_ENTRIES);
+        db.execSQL(SQL_CREATE_NAME_INDEX);
+        db.execSQL(SQL_CREATE_FTS);
+        for (String trigger : SQL_CREATE_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        db.execSQL(SQL_CREATE_PENDING_BACKFILLS);
     }
 
     /**
      * Called when the {@value DATABASE_VERSION} is incremented, e.g. from 1 to 2.
-     * This provides the option to perform a migration, from existing records to the new schema.
+     * Applies the {@link Migration#migrate(SQLiteDatabase)} step of every migration newer than the
+     * database, in order, within the single transaction the upgrade runs in. Their backfills are
+     * recorded as pending and run later, see {@link #startBackfill(DatabaseAccess)}. Databases older
+     * than {@value BACKFILL_TRACKING_VERSION} didn't record theirs, so all of their backfills run once
+     * more.
      *
      * Database versions should only change when the table schema is altered or new tables are added.
      *
-     * DANGER! Current migration strategy is to drop all existing tables along with their records.
-     * Upgrading the database as is will result in all records being deleted.
-     *
      * @param db {@link SQLiteDatabase} instance to perform sql statements
      * @param oldVersion Version number we are upgrading from.
      * @param newVersion Version number we are upgrading to.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.getVersion() > oldVersion && migration.getVersion() <= newVersion) {
+                Log.i(TAG, "Migrating database to version " + migration.getVersion());
+                migration.migrate(db);
+            }
+        }
+        for (Migration migration : MIGRATIONS) {
+            int version = migration.getVersion();
+            if (version <= newVersion && (version > oldVersion || oldVersion < BACKFILL_TRACKING_VERSION)) {
+                db.execSQL("INSERT OR IGNORE INTO " + BackfillEntry.TABLE_NAME + " (" +
+                                BackfillEntry.COLUMN_NAME_VERSION + ", " + BackfillEntry.COLUMN_NAME_AFTER_ID + ")" +
+                                " VALUES (?, 0)",
+                        new Object[]{version});
+            }
+        }
     }
 
     /**
@@ -67,8 +183,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      *
      * Database versions should only change when the table schema is altered or new tables are added.
      *
-     * DANGER! Current migration strategy is to drop all existing tables along with their records.
-     * Downgrading the database as is will result in all records being deleted.
+     * DANGER! Migrations only go forward, so downgrading drops all existing tables along with their
+     * records, then creates the schema known to this version.
      *
      * @param db {@link SQLiteDatabase} instance to perform sql statements
      * @param oldVersion Version number we are downgrading to.
@@ -76,7 +192,108 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        db.execSQL(SQL_DELETE_FTS); // Its triggers are dropped along with the Person table
+        db.execSQL(SQL_DELETE_ENTRIES);
+        db.execSQL(SQL_DELETE_PENDING_BACKFILLS);
+        onCreate(db);
+    }
+
+    /**
+     * Runs the pending backfills on a background thread, one batch of {@value BACKFILL_BATCH_SIZE}
+     * rows per {@link DatabaseAccess#write(DatabaseAccess.Write)}, so writes from the HTTP worker
+     * threads are only held back for the duration of a batch.
+     *
+     * Each batch commits its progress along with its rows. The thread stops if the database is
+     * closed meanwhile, the next start up resumes after the last batch committed.
+     *
+     * @param access the {@link DatabaseAccess} that just opened the database through this helper.
+     */
+    void startBackfill(final DatabaseAccess access) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (long[] pending : findPendingBackfills(access)) {
+                        for (Migration migration : MIGRATIONS) {
+                            if (migration.getVersion() == pending[0]) {
+                                backfill(access, migration, pending[1]);
+                            }
+                        }
+                    }
+                } catch (IOException | IllegalStateException | SQLiteException e) {
+                    // The database was closed, or failed, midway. It's resumed on the next start up.
+                    Log.w(TAG, "Backfill interrupted", e);
+                }
+            }
+        }, "db-backfill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Runs a {@link Migration}'s backfill until it's done, one write per batch, each one recording
+     * its progress, and the last one removing the backfill from the pending ones.
+     *
+     * @param afterId the last row id covered by a previous run, 0 to start from the first row.
+     */
+    private static void backfill(DatabaseAccess access, final Migration migration, long afterId) {
+        final String[] version = {String.valueOf(migration.getVersion())};
+        while (afterId >= 0) {
+            final long batchAfterId = afterId;
+            afterId = access.write(new DatabaseAccess.Write<Long>() {
+                @Override
+                public Long run(SQLiteDatabase db) {
+                    long lastId = migration.backfill(db, batchAfterId, BACKFILL_BATCH_SIZE);
+                    if (lastId < 0) {
+                        db.delete(BackfillEntry.TABLE_NAME, BackfillEntry.COLUMN_NAME_VERSION + " = ?", version);
+                    } else {
+                        db.execSQL("UPDATE " + BackfillEntry.TABLE_NAME +
+                                        " SET " + BackfillEntry.COLUMN_NAME_AFTER_ID + " = ?" +
+                                        " WHERE " + BackfillEntry.COLUMN_NAME_VERSION + " = ?",
+                                new Object[]{lastId, migration.getVersion()});
+                    }
+                    return lastId;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the version and progress of each backfill not completed yet, oldest version first.
+     */
+    private static List<long[]> findPendingBackfills(DatabaseAccess access) throws IOException {
+        return access.read(new DatabaseAccess.Read<List<long[]>>() {
+            @Override
+            public List<long[]> run(SQLiteDatabase db) {
+                List<long[]> pending = new ArrayList<>();
+                Cursor cursor = db.rawQuery("SELECT " + BackfillEntry.COLUMN_NAME_VERSION + ", " +
+                        BackfillEntry.COLUMN_NAME_AFTER_ID + " FROM " + BackfillEntry.TABLE_NAME +
+                        " ORDER BY " + BackfillEntry.COLUMN_NAME_VERSION, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        pending.add(new long[]{cursor.getLong(0), cursor.getLong(1)});
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return pending;
+            }
+        });
+    }
+
+    /**
+     * Finds the range of the next backfill batch. Walking the primary key in ranges of batchSize rows,
+     * instead of looking up rows not migrated yet, keeps every batch from scanning the ones before it.
+     *
+     * @return the id of the last of the batchSize rows following afterId, 0 if there are none.
+     */
+    private static long lastIdOfBatch(SQLiteDatabase db, long afterId, int batchSize) {
+        return DatabaseUtils.longForQuery(db, // MAX() of no rows is NULL, read as 0
+                "SELECT MAX(" + PersonEntry._ID + ") FROM (SELECT " + PersonEntry._ID +
+                        " FROM " + PersonEntry.TABLE_NAME + " WHERE " + PersonEntry._ID +
+                        " > ? ORDER BY " + PersonEntry._ID + " LIMIT ?)",
+                new String[]{String.valueOf(afterId), String.valueOf(batchSize)});
     }
 
     // Standard SQL CREATE statement to create the Person SQLite table.
@@ -84,9 +301,54 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             "CREATE TABLE " + PersonEntry.TABLE_NAME + " (" +
                     PersonEntry._ID + " INTEGER PRIMARY KEY," +
                     PersonEntry.COLUMN_NAME_FIRST + " TEXT," +
-                    PersonEntry.COLUMN_NAME_LAST + " TEXT)";
+                    PersonEntry.COLUMN_NAME_LAST + " TEXT," +
+                    PersonEntry.COLUMN_NAME_UPDATED_AT + " INTEGER)";
+
+    // Standard SQL CREATE INDEX statement to create the Person name index, shared with the migration.
+    private static final String SQL_CREATE_NAME_INDEX =
+            "CREATE INDEX " + PersonEntry.INDEX_NAME + " ON " + PersonEntry.TABLE_NAME + " (" +
+                    PersonEntry.COLUMN_NAME_LAST + ", " +
+                    PersonEntry.COLUMN_NAME_FIRST + ")";
+
+    // Standard SQL CREATE statement to create the FTS4 full-text index of Person names. It keeps its
+    // own copy of the names so search results are read without going back to the Person table, and
+    // indexes 2 and 3 letter prefixes so short prefix queries don't expand into every matching term.
+    private static final String SQL_CREATE_FTS =
+            "CREATE VIRTUAL TABLE " + PersonEntry.FTS_TABLE_NAME + " USING fts4(" +
+                    PersonEntry.COLUMN_NAME_FIRST + ", " +
+                    PersonEntry.COLUMN_NAME_LAST + ", " +
+                    "tokenize=unicode61, prefix=\"2,3\")";
+
+    // Triggers keeping the full-text index in sync with every insert, name update and delete.
+    private static final String[] SQL_CREATE_FTS_TRIGGERS = {
+            "CREATE TRIGGER " + PersonEntry.FTS_TABLE_NAME + "_ai AFTER INSERT ON " + PersonEntry.TABLE_NAME +
+                    " BEGIN INSERT INTO " + PersonEntry.FTS_TABLE_NAME + " (docid, " +
+                    PersonEntry.COLUMN_NAME_FIRST + ", " + PersonEntry.COLUMN_NAME_LAST + ")" +
+                    " VALUES (new." + PersonEntry._ID + ", new." + PersonEntry.COLUMN_NAME_FIRST +
+                    ", new." + PersonEntry.COLUMN_NAME_LAST + "); END",
+            "CREATE TRIGGER " + PersonEntry.FTS_TABLE_NAME + "_au AFTER UPDATE OF " +
+                    PersonEntry.COLUMN_NAME_FIRST + ", " + PersonEntry.COLUMN_NAME_LAST + " ON " + PersonEntry.TABLE_NAME +
+                    " BEGIN UPDATE " + PersonEntry.FTS_TABLE_NAME + " SET " +
+                    PersonEntry.COLUMN_NAME_FIRST + " = new." + PersonEntry.COLUMN_NAME_FIRST + ", " +
+                    PersonEntry.COLUMN_NAME_LAST + " = new." + PersonEntry.COLUMN_NAME_LAST +
+                    " WHERE docid = old." + PersonEntry._ID + "; END",
+            "CREATE TRIGGER " + PersonEntry.FTS_TABLE_NAME + "_ad AFTER DELETE ON " + PersonEntry.TABLE_NAME +
+                    " BEGIN DELETE FROM " + PersonEntry.FTS_TABLE_NAME +
+                    " WHERE docid = old." + PersonEntry._ID + "; END"
+    };
+
+    // Standard SQL CREATE statement to create the table of the backfills not completed yet.
+    private static final String SQL_CREATE_PENDING_BACKFILLS =
+            "CREATE TABLE " + BackfillEntry.TABLE_NAME + " (" +
+                    BackfillEntry.COLUMN_NAME_VERSION + " INTEGER PRIMARY KEY," +
+                    BackfillEntry.COLUMN_NAME_AFTER_ID + " INTEGER NOT NULL)";
 
-    // Standard SQL DELETE statement to delete the Person SQLite table.
+    // Standard SQL DELETE statements to delete the Person SQLite table, its full-text index and the
+    // pending backfills.
     private static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + PersonEntry.TABLE_NAME;
+    private static final String SQL_DELETE_FTS =
+            "DROP TABLE IF EXISTS " + PersonEntry.FTS_TABLE_NAME;
+    private static final String SQL_DELETE_PENDING_BACKFILLS =
+            "DROP TABLE IF EXISTS " + BackfillEntry.TABLE_NAME;
 }
@@ -0,0 +1,55 @@
+package com.example.app.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A single, incremental, step of the database schema, applied by {@link DatabaseHelper} when
+ * upgrading from an older version instead of dropping the existing tables.
+ *
+ * The schema change itself, {@link #migrate(SQLiteDatabase)}, runs inside the upgrade transaction
+ * while the database is being opened, so it should only hold fast DDL statements. Rewriting existing
+ * rows goes in {@link #backfill(SQLiteDatabase, long, int)}, which is called in small batches once
+ * the database is open, each batch in its own transaction, so requests aren't blocked for its duration.
+ */
+public abstract class Migration {
+
+    private final int version;
+
+    /**
+     * @param version the database version this migration upgrades to.
+     */
+    protected Migration(int version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the database version this migration upgrades to.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Applies the schema change, called from {@link DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)}.
+     *
+     * @param db {@link SQLiteDatabase} instance to perform sql statements
+     */
+    public abstract void migrate(SQLiteDatabase db);
+
+    /**
+     * Migrates one batch of existing rows to the new schema, in primary key order. Called repeatedly,
+     * in a transaction of its own, until it returns -1. The progress is committed along with each
+     * batch, so a backfill interrupted by the app stopping resumes after its last batch on the next
+     * start up, and a completed one never runs again. It must still skip the rows already migrated,
+     * e.g. by their new column not being null, since the app writes them meanwhile.
+     *
+     * @param db {@link SQLiteDatabase} instance to perform sql statements
+     * @param afterId the last row id covered by the previous batch, 0 for the first one.
+     * @param batchSize the max number of rows to cover.
+     * @return the last row id covered by this batch, -1 once there are none left. Defaults to -1,
+     * for migrations with no data to rewrite.
+     */
+    public long backfill(SQLiteDatabase db, long afterId, int batchSize) {
+        return -1;
+    }
+}
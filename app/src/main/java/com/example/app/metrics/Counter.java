@@ -0,0 +1,33 @@
+package com.example.app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic, lock-free counter. Increments from many threads are spread over several cells by a
+ * {@link LongAdder}, so a hot counter does not become a point of contention.
+ */
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * @param amount the non negative amount to add to the counter.
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * @return the counter's current value.
+     */
+    public long get() {
+        return value.sum();
+    }
+}
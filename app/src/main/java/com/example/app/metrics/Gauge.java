@@ -0,0 +1,14 @@
+package com.example.app.metrics;
+
+/**
+ * A value sampled when the metrics are exported, e.g. an executor's queue depth.
+ */
+public interface Gauge {
+
+    /**
+     * Called from the thread exporting the metrics, must be thread safe and cheap.
+     *
+     * @return the gauge's current value.
+     */
+    long getValue();
+}
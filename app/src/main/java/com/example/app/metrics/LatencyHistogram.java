@@ -0,0 +1,107 @@
+package com.example.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram.
+ *
+ * Every power of two is split in {@link #SUB_BUCKETS} linear buckets, so a value is known within
+ * 12.5% of its actual value from 1 nanosecond up to {@link #MAX_TRACKABLE_NANOS}, larger values are
+ * counted in the last bucket. All buckets are allocated up front: recording is a couple of shifts
+ * and two atomic increments, and never allocates.
+ *
+ * A bucket counts the values up to and including its upper bound, e.g. (8, 9] then (9, 10], the way
+ * Prometheus' "le" buckets do, so powers of two can be exported as they are.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Linear buckets per power of two.
+    private static final int MAX_MAGNITUDE = 36; // Values are tracked up to 2^36 ns, about 68 seconds.
+    static final long MAX_TRACKABLE_NANOS = 1L << MAX_MAGNITUDE;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Records a single value.
+     *
+     * @param nanos the measured latency in nanoseconds, negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(Math.min(nanos, MAX_TRACKABLE_NANOS)));
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of all recorded values, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Fills the given array with the cumulative counts up to each bound, in a single pass over the
+     * buckets so the counts are consistent with each other. A bound between two bucket boundaries
+     * leaves out the bucket it falls in.
+     *
+     * @param bounds the inclusive upper bounds in nanoseconds, sorted in ascending order.
+     * @param cumulativeCounts receives the count of values less than or equal to each bound, must be
+     *                         as long as the bounds.
+     * @return the total number of recorded values.
+     */
+    long getCumulativeCounts(long[] bounds, long[] cumulativeCounts) {
+        long count = 0;
+        int bound = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            while (bound < bounds.length && bucketUpperBound(i) > bounds[bound]) {
+                cumulativeCounts[bound++] = count;
+            }
+            count += counts.get(i);
+        }
+        while (bound < bounds.length) {
+            cumulativeCounts[bound++] = count;
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the bucket counting the given non negative value.
+     */
+    static int bucketIndex(long value) {
+        if (value <= SUB_BUCKETS) {
+            return value == 0 ? 0 : (int) value - 1; // Values up to the first power of two are exact
+        }
+        value--; // Shifted so each bucket ends on its bound, the start being exclusive
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // Index of the highest bit set
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the inclusive upper bound, in nanoseconds, of the values counted by the given bucket.
+     */
+    static long bucketUpperBound(int index) {
+        int group = index / SUB_BUCKETS;
+        if (group == 0) {
+            return index + 1;
+        }
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS + 1) << (group - 1);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.app.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the application's metrics and exports them in the Prometheus text format.
+ *
+ * Metrics are grouped in families sharing a name, e.g. "db_operation_duration_seconds", each series
+ * of a family is told apart by its labels, e.g. operation="insert". Series are looked up or created
+ * when a component is set up, recording into the returned {@link Counter} or {@link LatencyHistogram}
+ * afterwards takes no lock and allocates nothing. Registering and exporting are synchronized.
+ */
+public class MetricsRegistry {
+
+    // Histogram buckets exported to Prometheus, powers of two from ~65us to ~17s. They fall on bucket
+    // boundaries of the LatencyHistogram, whose buckets are inclusive of their upper bound like "le",
+    // so the exported counts are exact.
+    private static final int MIN_EXPORTED_MAGNITUDE = 16;
+    private static final int MAX_EXPORTED_MAGNITUDE = 34;
+    private static final long[] EXPORTED_BOUNDS = new long[MAX_EXPORTED_MAGNITUDE - MIN_EXPORTED_MAGNITUDE + 1];
+    private static final String[] EXPORTED_LE_LABELS = new String[EXPORTED_BOUNDS.length];
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    static {
+        for (int i = 0; i < EXPORTED_BOUNDS.length; i++) {
+            EXPORTED_BOUNDS[i] = 1L << (MIN_EXPORTED_MAGNITUDE + i);
+            EXPORTED_LE_LABELS[i] = label("le", Double.toString(EXPORTED_BOUNDS[i] / NANOS_PER_SECOND));
+        }
+    }
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry(); // Shared by the whole application.
+
+    private final Map<String, Family> families = new LinkedHashMap<>(); // Guarded by this, in registration order.
+    private final ConcurrentHashMap<String, RequestMetrics> requestMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by the whole application, exported on the "/metrics" endpoint.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Formats a single label, escaping its value, e.g. {@code operation="insert"}.
+     *
+     * @param name the label's name.
+     * @param value the label's value.
+     * @return the formatted label, to be passed as is or joined with others by commas.
+     */
+    public static String label(String name, String value) {
+        StringBuilder label = new StringBuilder(name.length() + value.length() + 3);
+        label.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                label.append('\\').append(c);
+            } else if (c == '\n') {
+                label.append("\\n");
+            } else {
+                label.append(c);
+            }
+        }
+        return label.append('"').toString();
+    }
+
+    /**
+     * Looks up or registers a counter.
+     *
+     * @param name the family's name, ending in "_total" by convention.
+     * @param help the family's description.
+     * @param labels the series' formatted labels, see {@link #label(String, String)}. Empty for none.
+     * @return the series' {@link Counter}, the same one for the same name and labels.
+     * @throws IllegalArgumentException if the name is already registered with another metric type.
+     */
+    public synchronized Counter counter(String name, String help, String labels) {
+        Family family = family(name, help, Family.COUNTER);
+        Counter counter = (Counter) family.series.get(labels);
+        if (counter == null) {
+            counter = new Counter();
+            family.series.put(labels, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Looks up or registers a latency histogram, exported in seconds.
+     *
+     * @param name the family's name, ending in "_seconds" by convention.
+     * @param help the family's description.
+     * @param labels the series' formatted labels, see {@link #label(String, String)}. Empty for none.
+     * @return the series' {@link LatencyHistogram}, the same one for the same name and labels.
+     * @throws IllegalArgumentException if the name is already registered with another metric type.
+     */
+    public synchronized LatencyHistogram histogram(String name, String help, String labels) {
+        Family family = family(name, help, Family.HISTOGRAM);
+        LatencyHistogram histogram = (LatencyHistogram) family.series.get(labels);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            family.series.put(labels, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing any previous one with the same name and labels.
+     *
+     * @param name the family's name.
+     * @param help the family's description.
+     * @param labels the series' formatted labels, see {@link #label(String, String)}. Empty for none.
+     * @param gauge the {@link Gauge} sampled on every export.
+     * @throws IllegalArgumentException if the name is already registered with another metric type.
+     */
+    public synchronized void gauge(String name, String help, String labels, Gauge gauge) {
+        family(name, help, Family.GAUGE).series.put(labels, gauge);
+    }
+
+    /**
+     * Looks up or creates the HTTP request metrics of a route. The lookup doesn't allocate once the
+     * route has been seen, so it can be done on every request.
+     *
+     * @param route the route's template, e.g. "/names/{id:int}", not the actual request path.
+     * @return the route's {@link RequestMetrics}.
+     */
+    public RequestMetrics requests(String route) {
+        RequestMetrics metrics = requestMetrics.get(route);
+        if (metrics == null) {
+            RequestMetrics created = new RequestMetrics(this, route);
+            metrics = requestMetrics.putIfAbsent(route, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @param writer the {@link Writer} to write to, left open.
+     * @throws IOException thrown if an I/O error is encountered while writing.
+     */
+    public synchronized void writeTo(Writer writer) throws IOException {
+        long[] cumulativeCounts = new long[EXPORTED_BOUNDS.length];
+        for (Family family : families.values()) {
+            writer.write("# HELP " + family.name + " " + family.help + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof Counter) {
+                    writeSample(writer, family.name, labels, Long.toString(((Counter) metric).get()));
+                } else if (metric instanceof Gauge) {
+                    writeSample(writer, family.name, labels, Long.toString(((Gauge) metric).getValue()));
+                } else {
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    long count = histogram.getCumulativeCounts(EXPORTED_BOUNDS, cumulativeCounts);
+                    String prefix = labels.isEmpty() ? "" : labels + ",";
+                    for (int i = 0; i < EXPORTED_BOUNDS.length; i++) {
+                        writeSample(writer, family.name + "_bucket", prefix + EXPORTED_LE_LABELS[i],
+                                Long.toString(cumulativeCounts[i]));
+                    }
+                    writeSample(writer, family.name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(count));
+                    writeSample(writer, family.name + "_sum", labels,
+                            Double.toString(histogram.getSumNanos() / NANOS_PER_SECOND));
+                    writeSample(writer, family.name + "_count", labels, Long.toString(count));
+                }
+            }
+        }
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write('{');
+            writer.write(labels);
+            writer.write('}');
+        }
+        writer.write(' ');
+        writer.write(value);
+        writer.write('\n');
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Metrics sharing a name, one series per distinct set of labels.
+     */
+    private static final class Family {
+        private static final String COUNTER = "counter";
+        private static final String GAUGE = "gauge";
+        private static final String HISTOGRAM = "histogram";
+
+        private final String name;
+        private final String help;
+        private final String type; // Prometheus metric type.
+        private final Map<String, Object> series = new LinkedHashMap<>(); // Metric by formatted labels.
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.app.metrics;
+
+import com.example.app.web.util.model.HttpMethod;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * HTTP request latencies of a single route, one {@link LatencyHistogram} per method and status.
+ *
+ * Histograms are registered on the {@link MetricsRegistry} the first time a method and status
+ * combination is seen, then found by index: recording a request allocates nothing.
+ */
+public class RequestMetrics {
+
+    private static final String REQUEST_DURATION = "http_request_duration_seconds";
+    private static final String REQUEST_DURATION_HELP = "Time spent handling HTTP requests, by route, method and status.";
+    private static final String OTHER_METHOD = "OTHER"; // Label of the methods no route handles.
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+    private static final int STATUS_SLOTS = MAX_STATUS - MIN_STATUS + 1;
+    private static final int FALLBACK_STATUS = 500; // Recorded for invalid statuses, e.g. an unanswered request.
+
+    private final MetricsRegistry registry;
+    private final String route;
+    // Indexed by method ordinal, or METHODS.length for other methods, times STATUS_SLOTS plus the status
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+            new AtomicReferenceArray<>((METHODS.length + 1) * STATUS_SLOTS);
+
+    RequestMetrics(MetricsRegistry registry, String route) {
+        this.registry = registry;
+        this.route = route;
+    }
+
+    /**
+     * Records a handled request.
+     *
+     * @param method the request's {@link HttpMethod}, null for a method the service doesn't handle.
+     * @param status the response's status code, anything but a valid code is recorded as 500.
+     * @param nanos the time spent handling the request, in nanoseconds.
+     */
+    public void record(HttpMethod method, int status, long nanos) {
+        if (status < MIN_STATUS || status > MAX_STATUS) {
+            status = FALLBACK_STATUS;
+        }
+        int index = (method == null ? METHODS.length : method.ordinal()) * STATUS_SLOTS + status - MIN_STATUS;
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histogram = registry.histogram(REQUEST_DURATION, REQUEST_DURATION_HELP,
+                    MetricsRegistry.label("route", route) + ","
+                            + MetricsRegistry.label("method", method == null ? OTHER_METHOD : method.name()) + ","
+                            + MetricsRegistry.label("status", Integer.toString(status)));
+            histograms.set(index, histogram); // The registry hands out the same histogram to racing threads
+        }
+        histogram.record(nanos);
+    }
+}
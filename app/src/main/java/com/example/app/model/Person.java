@@ -2,14 +2,21 @@ package com.example.app.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Represents a person enrolled in the system.
  */
 public class Person {
+    public static final String SERIALIZED_ID = "id";
     public static final String SERIALIZED_FIRST_NAME = "first_name";
     public static final String SERIALIZED_LAST_NAME = "last_name";
+    public static final List<String> SERIALIZED_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            SERIALIZED_ID, SERIALIZED_FIRST_NAME, SERIALIZED_LAST_NAME));
 
-    @SerializedName("id")
+    @SerializedName(SERIALIZED_ID)
     private int id;
     @SerializedName(SERIALIZED_FIRST_NAME)
     private String firstName;
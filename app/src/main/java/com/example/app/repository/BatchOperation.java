@@ -0,0 +1,43 @@
+package com.example.app.repository;
+
+/**
+ * Represents a single write to be applied by {@link Repository#applyBatch(java.util.List)} along
+ * with the rest of its batch.
+ *
+ * @param <T> The Entity Type the operation is applied to.
+ */
+public class BatchOperation<T> {
+
+    /**
+     * The kind of write performed by a {@link BatchOperation}.
+     */
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE,
+    }
+
+    private final Type type;
+    private final T record;
+
+    public BatchOperation(Type type, T record) {
+        this.type = type;
+        this.record = record;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public T getRecord() {
+        return record;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOperation{" +
+                "type=" + type +
+                ", record=" + record +
+                '}';
+    }
+}
@@ -0,0 +1,470 @@
+package com.example.app.repository;
+
+import android.util.Log;
+
+import com.example.app.model.Person;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link Repository} decorator keeping every {@link Person} of the wrapped repository in memory, for
+ * read-mostly devices: {@link #findById(int)}, {@link #findAll()} and {@link #findPage(int, int, Set, RecordConsumer)}
+ * are served without touching the database, while writes go to the wrapped repository first and are
+ * applied to memory once they succeed. Searches still go to the wrapped repository's full-text index.
+ *
+ * Records aren't kept as objects, which the garbage collector would have to trace: ids live in an
+ * int-keyed open addressing table, linear probing, and names in UTF-8 slices of a single byte pool,
+ * so the index is a handful of arrays however many records it holds, and reads only allocate the
+ * {@link Person}s they return.
+ *
+ * The records are loaded on a background thread, reads go to the wrapped repository until it's
+ * done and writes wait for it, so none is missed.
+ */
+public class IndexedPersonRepository implements Repository<Person> {
+
+    private static final String TAG = IndexedPersonRepository.class.getName()+"_TAG"; // Logging TAG
+    private static final int INITIAL_CAPACITY = 1024; // Table slots, always a power of two.
+    private static final int INITIAL_POOL_SIZE = 16 * 1024; // Bytes of UTF-8 names.
+    private static final int READ_CHUNK_SIZE = 64; // Records decoded per read lock while streaming.
+    private static final long NULL_NAME = -1; // Slice of a null name.
+
+    private final Repository<Person> delegate;
+    private final Object writeLock = new Object(); // Serializes writes, so they're applied in the database's order.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards the fields below.
+    private volatile boolean loaded; // Whether reads are served from memory.
+
+    private int[] keys = new int[INITIAL_CAPACITY]; // Record id of each slot, 0 for free slots.
+    private long[] firstNames = new long[INITIAL_CAPACITY]; // First name slice of each slot, see append(String).
+    private long[] lastNames = new long[INITIAL_CAPACITY]; // Last name slice of each slot, see append(String).
+    private int[] ids = new int[INITIAL_CAPACITY]; // Record ids in ascending order, for paging.
+    private int size; // Number of records.
+    private byte[] pool = new byte[INITIAL_POOL_SIZE]; // UTF-8 names, appended one after the other.
+    private int poolSize; // Bytes of the pool in use.
+    private int poolGarbage; // Bytes of the pool no longer referenced by any slot.
+
+    /**
+     * Main constructor for this class, starts loading the wrapped repository's records.
+     *
+     * @param delegate the {@link Repository} storing the {@link Person} records.
+     */
+    public IndexedPersonRepository(Repository<Person> delegate) {
+        this.delegate = delegate;
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, "person-index-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Copies every record of the wrapped repository, holding off writes until done.
+     */
+    private void load() {
+        synchronized (writeLock) {
+            lock.writeLock().lock();
+            try {
+                delegate.findAll(new RecordConsumer<Person>() {
+                    @Override
+                    public void accept(Person person) {
+                        put(person.getId(), person.getFirstName(), person.getLastName());
+                    }
+                });
+                loaded = true;
+            } catch (IOException | RuntimeException e) {
+                // Reads keep going to the wrapped repository
+                Log.e(TAG, "Loading the Person index failed", e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public long insert(Person person) {
+        synchronized (writeLock) {
+            long id = delegate.insert(person);
+            if (id > 0 && loaded) {
+                lock.writeLock().lock();
+                try {
+                    put((int) id, person.getFirstName(), person.getLastName());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return id;
+        }
+    }
+
+    @Override
+    public Person findById(int id) {
+        if (!loaded) {
+            return delegate.findById(id);
+        }
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? null : new Person(id, decode(firstNames[slot]), decode(lastNames[slot]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Person> findAll() {
+        if (!loaded) {
+            return delegate.findAll();
+        }
+        lock.readLock().lock();
+        try {
+            List<Person> people = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int slot = slotOf(ids[i]);
+                people.add(new Person(ids[i], decode(firstNames[slot]), decode(lastNames[slot])));
+            }
+            return people;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void findAll(RecordConsumer<Person> consumer) throws IOException {
+        if (!loaded) {
+            delegate.findAll(consumer);
+            return;
+        }
+        findPage(0, 0, null, consumer);
+    }
+
+    @Override
+    public void findPage(int afterId, int limit, Set<String> fields, RecordConsumer<Person> consumer) throws IOException {
+        if (!loaded) {
+            delegate.findPage(afterId, limit, fields, consumer);
+            return;
+        }
+        // Step 1 - Map the requested fields to the ones decoded, left out ones keep their default value
+        boolean withId = fields == null || fields.contains(Person.SERIALIZED_ID);
+        boolean withFirstName = fields == null || fields.contains(Person.SERIALIZED_FIRST_NAME);
+        boolean withLastName = fields == null || fields.contains(Person.SERIALIZED_LAST_NAME);
+        if (fields != null) {
+            for (String field : fields) {
+                if (!Person.SERIALIZED_FIELDS.contains(field)) {
+                    throw new IllegalArgumentException("Unknown Person field " + field);
+                }
+            }
+        }
+
+        // Step 2 - Decode a chunk of records past the last id handed out under the read lock, then hand
+        // them to the consumer without it, so a slow consumer never holds off writes
+        Person[] chunk = new Person[READ_CHUNK_SIZE];
+        int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+        while (remaining > 0) {
+            int count = 0;
+            lock.readLock().lock();
+            try {
+                for (int i = firstIdAfter(afterId); i < size && count < chunk.length && count < remaining; i++) {
+                    int slot = slotOf(ids[i]);
+                    chunk[count++] = new Person(withId ? ids[i] : 0,
+                            withFirstName ? decode(firstNames[slot]) : null,
+                            withLastName ? decode(lastNames[slot]) : null);
+                    afterId = ids[i];
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (int i = 0; i < count; i++) {
+                consumer.accept(chunk[i]);
+                chunk[i] = null;
+            }
+            if (count < chunk.length) {
+                return; // No records left, or the limit was reached
+            }
+            remaining -= count;
+        }
+    }
+
+    @Override
+    public void search(String query, int offset, int limit, RecordConsumer<Person> consumer) throws IOException {
+        delegate.search(query, offset, limit, consumer);
+    }
+
+    @Override
+    public boolean update(Person person) {
+        synchronized (writeLock) {
+            boolean updated = delegate.update(person);
+            if (updated && loaded) {
+                lock.writeLock().lock();
+                try {
+                    put(person.getId(), person.getFirstName(), person.getLastName());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public boolean delete(Person person) {
+        synchronized (writeLock) {
+            boolean deleted = delegate.delete(person);
+            if (deleted && loaded) {
+                lock.writeLock().lock();
+                try {
+                    remove(person.getId());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public long[] applyBatch(List<BatchOperation<Person>> operations) {
+        synchronized (writeLock) {
+            long[] results = delegate.applyBatch(operations);
+            if (!loaded) {
+                return results;
+            }
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < results.length; i++) {
+                    Person person = operations.get(i).getRecord();
+                    if (results[i] <= 0) {
+                        continue; // Failed insert, or nothing affected
+                    }
+                    switch (operations.get(i).getType()) {
+                        case INSERT:
+                            put((int) results[i], person.getFirstName(), person.getLastName());
+                            break;
+                        case UPDATE:
+                            put(person.getId(), person.getFirstName(), person.getLastName());
+                            break;
+                        case DELETE:
+                            remove(person.getId());
+                            break;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return results;
+        }
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+    }
+
+    /**
+     * @return true once the records are loaded and reads are served from memory.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the number of bytes held by the index's arrays.
+     */
+    public long getMemoryFootprint() {
+        lock.readLock().lock();
+        try {
+            return keys.length * (4L + 8 + 8) + ids.length * 4L + pool.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The methods below are called with the read lock held, or the write lock for those changing the fields.
+
+    static int hash(int id) {
+        int h = id * 0x9E3779B9; // Fibonacci hashing, spreads sequential ids over the table
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot holding the given id, -1 if none.
+     */
+    private int slotOf(int id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(id) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index in ids of the first id greater than the given one, size if none.
+     */
+    private int firstIdAfter(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Inserts or replaces a record.
+     */
+    private void put(int id, String firstName, String lastName) {
+        int slot = slotOf(id);
+        if (slot >= 0) {
+            poolGarbage += length(firstNames[slot]) + length(lastNames[slot]);
+        } else {
+            // Keep the table at most half full, so probe sequences stay short
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            slot = hash(id) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            insertId(id);
+        }
+        // Appending may compact the pool, so the slot only ever references live slices while it does
+        firstNames[slot] = NULL_NAME;
+        lastNames[slot] = NULL_NAME;
+        long first = append(firstName);
+        firstNames[slot] = first;
+        long last = append(lastName);
+        lastNames[slot] = last;
+    }
+
+    /**
+     * Removes a record, shifting back the records probed past its slot instead of leaving a tombstone.
+     */
+    private void remove(int id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return;
+        }
+        poolGarbage += length(firstNames[slot]) + length(lastNames[slot]);
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+
+        int mask = keys.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            // The record stays unless the freed slot lies between its home slot and its current one
+            boolean reachable = free <= next ? (free < home && home <= next) : (free < home || home <= next);
+            if (!reachable) {
+                keys[free] = keys[next];
+                firstNames[free] = firstNames[next];
+                lastNames[free] = lastNames[next];
+                free = next;
+            }
+        }
+        keys[free] = 0;
+    }
+
+    private void insertId(int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        // Ids are assigned in ascending order, so it's almost always appended
+        int index = size == 0 || ids[size - 1] < id ? size : firstIdAfter(id);
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldFirstNames = firstNames;
+        long[] oldLastNames = lastNames;
+        keys = new int[capacity];
+        firstNames = new long[capacity];
+        lastNames = new long[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                firstNames[slot] = oldFirstNames[i];
+                lastNames[slot] = oldLastNames[i];
+            }
+        }
+    }
+
+    /**
+     * Appends a name's UTF-8 bytes to the pool, first compacting or growing it if needed.
+     *
+     * @return the name's slice: its offset in the high 32 bits, its length in the low ones. NULL_NAME for null.
+     */
+    private long append(String name) {
+        if (name == null) {
+            return NULL_NAME;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (poolSize + bytes.length > pool.length) {
+            // Reclaim the bytes of replaced and removed names once they're at least half of the pool
+            int live = poolSize - poolGarbage;
+            if (poolGarbage >= live) {
+                compact(Math.max(INITIAL_POOL_SIZE, (live + bytes.length) * 2));
+            } else {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + bytes.length));
+            }
+        }
+        long slice = ((long) poolSize << 32) | bytes.length;
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+        poolSize += bytes.length;
+        return slice;
+    }
+
+    /**
+     * Copies the names still referenced to a new pool of the given size.
+     */
+    private void compact(int capacity) {
+        byte[] compacted = new byte[capacity];
+        int compactedSize = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                firstNames[slot] = move(firstNames[slot], compacted, compactedSize);
+                compactedSize += length(firstNames[slot]);
+                lastNames[slot] = move(lastNames[slot], compacted, compactedSize);
+                compactedSize += length(lastNames[slot]);
+            }
+        }
+        pool = compacted;
+        poolSize = compactedSize;
+        poolGarbage = 0;
+    }
+
+    private long move(long slice, byte[] to, int offset) {
+        if (slice == NULL_NAME) {
+            return NULL_NAME;
+        }
+        int length = length(slice);
+        System.arraycopy(pool, (int) (slice >>> 32), to, offset, length);
+        return ((long) offset << 32) | length;
+    }
+
+    private static int length(long slice) {
+        return slice == NULL_NAME ? 0 : (int) slice;
+    }
+
+    private String decode(long slice) {
+        if (slice == NULL_NAME) {
+            return null;
+        }
+        return new String(pool, (int) (slice >>> 32), (int) slice, StandardCharsets.UTF_8);
+    }
+}
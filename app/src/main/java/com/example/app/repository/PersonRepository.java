@@ -1,25 +1,34 @@
 package com.example.app.repository;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 import android.util.Log;
 
+import com.example.app.db.DatabaseAccess;
 import com.example.app.db.DatabaseHelper;
 import com.example.app.db.DatabaseContract.PersonEntry;
 import com.example.app.model.Person;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Provides the concrete {@link Repository} for the {@link Person} type.
  *
- * This class implements the default CRUD methods behavior using a {@link DatabaseHelper} instance
- * to perform operations on the apps SQLite database.
+ * This class implements the default CRUD methods behavior through a {@link DatabaseAccess} instance
+ * to perform operations on the apps SQLite database, so queries run concurrently while writes are
+ * serialized, and the connection is never closed under either.
+ *
+ * Insert, update and delete go through {@link SQLiteStatement}s compiled once per connection and
+ * reused with bound arguments, only ever by the one writer.
  */
 public class PersonRepository implements Repository<Person> {
 
@@ -30,8 +39,48 @@ public class PersonRepository implements Repository<Person> {
             PersonEntry.COLUMN_NAME_LAST
     };
 
-    private SQLiteDatabase database; // Instance that will hold the Writable/Readable SQlite database.
-    private DatabaseHelper dbHelper; // Our SQLiteOpenHelper abstraction to retrieve our database.
+    private static final String WHERE_AFTER_ID = PersonEntry._ID + " > ?"; // Keyset pagination clause.
+    private static final String ORDER_BY_ID = PersonEntry._ID + " ASC"; // Keyset pagination order.
+    static final int MAX_SEARCH_TERMS = 8; // Words of a search query past this one are ignored.
+    public static final int MAX_SEARCH_RESULTS = 500; // Matches ranked by a search, offset + limit past it get fewer.
+
+    // Standard SQL statements compiled once and reused with bound arguments.
+    private static final String SQL_INSERT =
+            "INSERT INTO " + PersonEntry.TABLE_NAME + " (" +
+                    PersonEntry.COLUMN_NAME_FIRST + ", " +
+                    PersonEntry.COLUMN_NAME_LAST + ", " +
+                    PersonEntry.COLUMN_NAME_UPDATED_AT + ") VALUES (?, ?, ?)";
+    private static final String SQL_UPDATE_BY_ID =
+            "UPDATE " + PersonEntry.TABLE_NAME + " SET " +
+                    PersonEntry.COLUMN_NAME_FIRST + " = ?, " +
+                    PersonEntry.COLUMN_NAME_LAST + " = ?, " +
+                    PersonEntry.COLUMN_NAME_UPDATED_AT + " = ? WHERE " +
+                    PersonEntry._ID + " = ?";
+    private static final String SQL_DELETE_BY_ID =
+            "DELETE FROM " + PersonEntry.TABLE_NAME + " WHERE " + PersonEntry._ID + " = ?";
+    // Full-text search over the names' index. Ranking every match would read the names of all of
+    // them, so only the first MAX_SEARCH_RESULTS exact word matches and prefix matches are ranked:
+    // exact name matches first, then the shortest names, i.e. the closest completions of the
+    // prefixes searched for, then by id for a stable order.
+    private static final String SQL_SEARCH =
+            "SELECT docid, " + PersonEntry.COLUMN_NAME_FIRST + ", " + PersonEntry.COLUMN_NAME_LAST +
+                    " FROM " + PersonEntry.FTS_TABLE_NAME + " WHERE docid IN (" +
+                    "SELECT docid FROM (SELECT docid FROM " + PersonEntry.FTS_TABLE_NAME +
+                    " WHERE " + PersonEntry.FTS_TABLE_NAME + " MATCH ?1 LIMIT " + MAX_SEARCH_RESULTS + ")" +
+                    " UNION SELECT docid FROM (SELECT docid FROM " + PersonEntry.FTS_TABLE_NAME +
+                    " WHERE " + PersonEntry.FTS_TABLE_NAME + " MATCH ?2 LIMIT " + MAX_SEARCH_RESULTS + "))" +
+                    " ORDER BY (" + PersonEntry.COLUMN_NAME_FIRST + " LIKE ?3 OR " +
+                    PersonEntry.COLUMN_NAME_LAST + " LIKE ?3) DESC, " +
+                    "length(" + PersonEntry.COLUMN_NAME_FIRST + ") + length(" + PersonEntry.COLUMN_NAME_LAST + "), " +
+                    "docid LIMIT ?4 OFFSET ?5";
+    // A SQLiteStatement can only return a single value, so rows are selected through a constant SQL
+    // string instead. SQLite's per-connection statement cache then reuses the compiled statement.
+    private static final String SQL_SELECT_BY_ID =
+            "SELECT " + PersonEntry.COLUMN_NAME_FIRST + ", " +
+                    PersonEntry.COLUMN_NAME_LAST + " FROM " + PersonEntry.TABLE_NAME +
+                    " WHERE " + PersonEntry._ID + " = ?";
+
+    private final DatabaseAccess access; // Single writer, multi reader access to the apps database.
 
     /**
      * Main constructor for this class.
@@ -40,87 +89,101 @@ public class PersonRepository implements Repository<Person> {
      * It uses a {@link WeakReference} to avoid accidental leaking if not released properly by calling
      * this class's {@link PersonRepository#release()} method.
      *
+     * The database is opened on first use and kept open until {@link PersonRepository#release()} is
+     * called, so SQLite's page cache survives between requests.
+     *
      * @param context the Application's {@link Context} instance.
      */
     public PersonRepository(Context context) {
         WeakReference<Context> contextWeakReference = new WeakReference<>(context);
-        dbHelper = new DatabaseHelper(contextWeakReference.get());
+        access = new DatabaseAccess(new DatabaseHelper(contextWeakReference.get()));
     }
 
     @Override
-    public long insert(Person person) {
-        // Step 1 - Get writable database instance since we are adding a new record.
-        database = dbHelper.getWritableDatabase();
-
-        // Step 2 - Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(PersonEntry.COLUMN_NAME_FIRST, person.getFirstName());
-        values.put(PersonEntry.COLUMN_NAME_LAST, person.getLastName());
-
-        // Step 3 - Insert the new row, returning the primary key value of the new row
-        long newRowId = database.insert(PersonEntry.TABLE_NAME, null, values);
-
-        // Step 4 - If the new id results in -1, an error occurred and we print to console
+    public long insert(final Person person) {
+        // Step 1 & 2 - Once it's the writer, bind the values and insert the new row, returning the primary key value of the new row
+        long newRowId = access.write(new DatabaseAccess.Write<Long>() {
+            @Override
+            public Long run(SQLiteDatabase db) {
+                return executeInsert(access.compileStatement(SQL_INSERT), person);
+            }
+        });
+
+        // Step 3 - If the new id results in -1, an error occurred and we print to console
         if(newRowId < 0) {
             Log.e(TAG, "Record for entry " + person + " was not saved in the database");
         }
 
-        // Step 5 - Close the database
-        database.close();
-
         return newRowId;
     }
 
     @Override
-    public Person findById(int id) {
-        // Step 1 - Get readable database instance since we are fetching a single record.
-        database = dbHelper.getReadableDatabase();
+    public Person findById(final int id) {
+        try {
+            return access.read(new DatabaseAccess.Read<Person>() {
+                @Override
+                public Person run(SQLiteDatabase db) {
+                    return findById(db, id);
+                }
+            });
+        } catch (IOException e) {
+            throw new AssertionError(e); // Not thrown by the read
+        }
+    }
 
-        // Step 2 - Define the "WHERE" clause(s) and the where clause values array
-        String where = PersonEntry._ID + "= ?";
-        String[] whereArguments = {String.valueOf(id)};
-
-        // Step 3 - Load the query results into a Cursor.
-        Cursor cursor = database.query(
-                PersonEntry.TABLE_NAME,
-                DEFAULT_PROJECTION,
-                where,
-                whereArguments,
-                null,
-                null,
-                null,
-                null
-        );
+    private static Person findById(SQLiteDatabase db, int id) {
+        // Step 1 & 2 - Load the query results into a Cursor using the constant select by id statement.
+        Cursor cursor = db.rawQuery(SQL_SELECT_BY_ID, new String[]{String.valueOf(id)});
 
         // Prepare the result object
         Person person = null;
 
-        // Step 4 - If we received a result, map it to the result object
+        // Step 3 - If we received a result, map it to the result object
         if(cursor.moveToFirst()) {
-            String firstName = cursor.getString(cursor.getColumnIndex(PersonEntry.COLUMN_NAME_FIRST));
-            String lastName = cursor.getString(cursor.getColumnIndex(PersonEntry.COLUMN_NAME_LAST));
+            String firstName = cursor.getString(0);
+            String lastName = cursor.getString(1);
             person = new Person(id, firstName, lastName);
         }
 
-        // Step 5 - Close the cursor since its not needed anymore
+        // Step 4 - Close the cursor since its not needed anymore
         cursor.close();
 
-        // Step 6 - Close the database
-        database.close();
-
         return person; // Return the result object
     }
 
     @Override
     public List<Person> findAll() {
-        // Step 1 - Get readable database instance since we are just reading all records.
-        database = dbHelper.getReadableDatabase();
-
         // Prepare the result object
-        List<Person> people = new ArrayList<>();
+        final List<Person> people = new ArrayList<>();
+        try {
+            // Step 1 - Stream every row into the result list
+            findAll(new RecordConsumer<Person>() {
+                @Override
+                public void accept(Person person) {
+                    people.add(person);
+                }
+            });
+        } catch (IOException e) {
+            throw new AssertionError(e); // Not thrown by the consumer
+        }
+        return people; // Return the result list object
+    }
+
+    @Override
+    public void findAll(final RecordConsumer<Person> consumer) throws IOException {
+        // Step 1 - Read through the shared access, which won't close the database under the cursor
+        access.read(new DatabaseAccess.Read<Void>() {
+            @Override
+            public Void run(SQLiteDatabase db) throws IOException {
+                findAll(db, consumer);
+                return null;
+            }
+        });
+    }
 
+    private static void findAll(SQLiteDatabase db, RecordConsumer<Person> consumer) throws IOException {
         // Step 2 - Load the query results into a Cursor, since we are fetching all records no clauses are passed.
-        Cursor cursor = database.query(
+        Cursor cursor = db.query(
                 PersonEntry.TABLE_NAME,
                 DEFAULT_PROJECTION,
                 null,
@@ -130,80 +193,301 @@ public class PersonRepository implements Repository<Person> {
                 null,
                 null);
 
-        // Step 3 - If we received a result, map it to the result list object
-        while(cursor.moveToNext()) {
-            int id = cursor.getInt(cursor.getColumnIndex(PersonEntry._ID));
-            String firstName = cursor.getString(cursor.getColumnIndex(PersonEntry.COLUMN_NAME_FIRST));
-            String lastName = cursor.getString(cursor.getColumnIndex(PersonEntry.COLUMN_NAME_LAST));
-            people.add(new Person(id, firstName, lastName));
+        try {
+            // Step 3 - Hand every row to the consumer as soon as it is read from the Cursor
+            int idIndex = cursor.getColumnIndex(PersonEntry._ID);
+            int firstNameIndex = cursor.getColumnIndex(PersonEntry.COLUMN_NAME_FIRST);
+            int lastNameIndex = cursor.getColumnIndex(PersonEntry.COLUMN_NAME_LAST);
+            while(cursor.moveToNext()) {
+                consumer.accept(new Person(cursor.getInt(idIndex),
+                        cursor.getString(firstNameIndex),
+                        cursor.getString(lastNameIndex)));
+            }
+        } finally {
+            // Step 4 - Close the cursor even if the consumer failed
+            cursor.close();
         }
+    }
 
-        // Step 4 - Close the cursor since its not needed anymore
-        cursor.close();
-
-        // Step 5 - Close the database
-        database.close();
+    @Override
+    public void findPage(final int afterId, final int limit, Set<String> fields,
+                         final RecordConsumer<Person> consumer) throws IOException {
+        // Step 1 - Map the requested fields to their columns, so only those are read from disk
+        final String[] projection = toProjection(fields);
+
+        // Step 2 - Read through the shared access, which won't close the database under the cursor
+        access.read(new DatabaseAccess.Read<Void>() {
+            @Override
+            public Void run(SQLiteDatabase db) throws IOException {
+                findPage(db, afterId, limit, projection, consumer);
+                return null;
+            }
+        });
+    }
 
-        return people; // Return the result list object
+    private static void findPage(SQLiteDatabase db, int afterId, int limit, String[] projection,
+                                 RecordConsumer<Person> consumer) throws IOException {
+        // Step 3 - Seek on the primary key index past the last id the client has seen
+        Cursor cursor = db.query(
+                PersonEntry.TABLE_NAME,
+                projection,
+                WHERE_AFTER_ID,
+                new String[]{String.valueOf(afterId)},
+                null,
+                null,
+                ORDER_BY_ID,
+                limit > 0 ? String.valueOf(limit) : null);
+
+        try {
+            // Step 4 - Hand every row to the consumer, columns not projected are left as defaults
+            int idIndex = cursor.getColumnIndex(PersonEntry._ID);
+            int firstNameIndex = cursor.getColumnIndex(PersonEntry.COLUMN_NAME_FIRST);
+            int lastNameIndex = cursor.getColumnIndex(PersonEntry.COLUMN_NAME_LAST);
+            while(cursor.moveToNext()) {
+                consumer.accept(new Person(idIndex < 0 ? 0 : cursor.getInt(idIndex),
+                        firstNameIndex < 0 ? null : cursor.getString(firstNameIndex),
+                        lastNameIndex < 0 ? null : cursor.getString(lastNameIndex)));
+            }
+        } finally {
+            // Step 5 - Close the cursor even if the consumer failed
+            cursor.close();
+        }
     }
 
     @Override
-    public boolean update(Person person) {
-        // Step 1 - Get writable database instance since we are updating an existing record.
-        database = dbHelper.getWritableDatabase();
+    public void search(String query, final int offset, final int limit,
+                       final RecordConsumer<Person> consumer) throws IOException {
+        // Step 1 - Turn the query's words into prefix terms, also rejecting queries with none
+        final String[] terms = toSearchTerms(query);
+
+        // Step 2 - Read through the shared access, which won't close the database under the cursor
+        access.read(new DatabaseAccess.Read<Void>() {
+            @Override
+            public Void run(SQLiteDatabase db) throws IOException {
+                search(db, terms, offset, limit, consumer);
+                return null;
+            }
+        });
+    }
+
+    private static void search(SQLiteDatabase db, String[] terms, int offset, int limit,
+                               RecordConsumer<Person> consumer) throws IOException {
+        // Step 3 - Look the terms up in the full-text index, which holds the names as well
+        Cursor cursor = db.rawQuery(SQL_SEARCH, new String[]{
+                toMatchExpression(terms, ""), toMatchExpression(terms, "*"), terms[0],
+                String.valueOf(limit), String.valueOf(offset)});
+
+        try {
+            // Step 4 - Hand every row to the consumer
+            while(cursor.moveToNext()) {
+                consumer.accept(new Person(cursor.getInt(0), cursor.getString(1), cursor.getString(2)));
+            }
+        } finally {
+            // Step 5 - Close the cursor even if the consumer failed
+            cursor.close();
+        }
+    }
 
-        // Step 2 - Define the "WHERE" clause(s) and the where clause values array
-        String where = PersonEntry._ID + "= ?";
-        String[] whereArguments = {String.valueOf(person.getId())};
+    /**
+     * Splits a search query into its words, lower cased. Anything but letters and digits separates
+     * words, so no FTS query syntax can get through.
+     *
+     * @param query the search text.
+     * @return up to {@value MAX_SEARCH_TERMS} words.
+     * @throws IllegalArgumentException if the query has no word.
+     */
+    static String[] toSearchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length() && terms.size() < MAX_SEARCH_TERMS; i++) {
+            boolean wordChar = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(query.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("No word to search for in " + query);
+        }
+        return terms.toArray(new String[0]);
+    }
 
-        // Step 3 - Create a new map of values, holding the updated record
-        ContentValues values = new ContentValues();
-        values.put(PersonEntry.COLUMN_NAME_FIRST, person.getFirstName());
-        values.put(PersonEntry.COLUMN_NAME_LAST, person.getLastName());
+    /**
+     * @param suffix appended to every term, "*" to match words starting with it, "" for whole words.
+     * @return the FTS MATCH expression requiring every term, e.g. "jo* do*".
+     */
+    private static String toMatchExpression(String[] terms, String suffix) {
+        StringBuilder expression = new StringBuilder();
+        for (String term : terms) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append(term).append(suffix);
+        }
+        return expression.toString();
+    }
 
-        // Step 4 - Track how many records were affected by the update statement
-        int affected = database.update(
-                PersonEntry.TABLE_NAME,
-                values,
-                where,
-                whereArguments
-        ); // should at least affect +1 rows if 0 or -1 we will return false
+    /**
+     * Maps {@link Person}'s serialized field names to their table columns.
+     *
+     * @param fields the serialized field names, null for all columns.
+     * @return the projection to query with.
+     * @throws IllegalArgumentException if a field is not a {@link Person} field.
+     */
+    private static String[] toProjection(Set<String> fields) {
+        if (fields == null) {
+            return DEFAULT_PROJECTION;
+        }
+        List<String> projection = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            if (Person.SERIALIZED_ID.equals(field)) {
+                projection.add(PersonEntry._ID);
+            } else if (Person.SERIALIZED_FIRST_NAME.equals(field)) {
+                projection.add(PersonEntry.COLUMN_NAME_FIRST);
+            } else if (Person.SERIALIZED_LAST_NAME.equals(field)) {
+                projection.add(PersonEntry.COLUMN_NAME_LAST);
+            } else {
+                throw new IllegalArgumentException("Unknown Person field " + field);
+            }
+        }
+        return projection.toArray(new String[0]);
+    }
 
-        // Step 5 - Close the database
-        database.close();
+    @Override
+    public boolean update(final Person person) {
+        // Step 1 & 2 - Once it's the writer, bind the updated values and the record's id, tracking how many records were affected
+        int affected = access.write(new DatabaseAccess.Write<Integer>() {
+            @Override
+            public Integer run(SQLiteDatabase db) {
+                return executeUpdate(access.compileStatement(SQL_UPDATE_BY_ID), person);
+            }
+        }); // should at least affect +1 rows if 0 or -1 we will return false
 
         return affected > 0; // Return the result of update operation
     }
 
     @Override
-    public boolean delete(Person person) {
-        // Step 1 - Get writable database instance since we are deleting an existing record.
-        database = dbHelper.getWritableDatabase();
+    public boolean delete(final Person person) {
+        // Step 1 & 2 - Once it's the writer, bind the record's id, tracking how many records were affected by the delete statement
+        int affected = access.write(new DatabaseAccess.Write<Integer>() {
+            @Override
+            public Integer run(SQLiteDatabase db) {
+                return executeDelete(access.compileStatement(SQL_DELETE_BY_ID), person);
+            }
+        }); // should at least affect +1 rows if 0 or -1 we will return false
+
+        return affected > 0; // Return the result of delete operation
+    }
 
-        // Step 2 - Define the "WHERE" clause(s) and the where clause values array
-        String where = PersonEntry._ID + "= ?";
-        String[] whereArguments = {String.valueOf(person.getId())};
+    @Override
+    public long[] applyBatch(final List<BatchOperation<Person>> operations) {
+        // Step 1 & 2 - Once it's the writer, open a single transaction so the whole batch is committed with one fsync
+        return access.write(new DatabaseAccess.Write<long[]>() {
+            @Override
+            public long[] run(SQLiteDatabase db) {
+                long[] results = new long[operations.size()];
+
+                // Step 3 - Apply each operation in order, keeping its result
+                for (int i = 0; i < results.length; i++) {
+                    BatchOperation<Person> operation = operations.get(i);
+                    try {
+                        switch (operation.getType()) {
+                            case INSERT:
+                                results[i] = executeInsert(access.compileStatement(SQL_INSERT), operation.getRecord());
+                                break;
+                            case UPDATE:
+                                results[i] = executeUpdate(access.compileStatement(SQL_UPDATE_BY_ID), operation.getRecord());
+                                break;
+                            case DELETE:
+                                results[i] = executeDelete(access.compileStatement(SQL_DELETE_BY_ID), operation.getRecord());
+                                break;
+                        }
+                    } catch (SQLiteConstraintException e) {
+                        // SQLite aborted this statement alone, its changes and its triggers' being rolled back as if
+                        // to a savepoint taken before it (SQLiteDatabase ends the whole transaction on ROLLBACK TO).
+                        // The transaction is still open, so the other operations are still committed.
+                        Log.w(TAG, "Batch operation " + i + " (" + operation.getType() + ") failed", e);
+                        results[i] = -1;
+                    }
+                }
+
+                // Step 4 & 5 - Returning commits the transaction, throwing rolls it back
+                return results;
+            }
+        });
+    }
 
-        // Step 3 - Track how many records were affected by the update statement
-        int affected = database.delete(
-                PersonEntry.TABLE_NAME,
-                where,
-                whereArguments
-        ); // should at least affect +1 rows if 0 or -1 we will return false
+    /**
+     * Binds the given {@link Person} to a compiled {@link #SQL_INSERT} statement and executes it.
+     * Callers are responsible for making sure the statement is not used concurrently.
+     *
+     * @return the new row id, -1 on failure.
+     */
+    private static long executeInsert(SQLiteStatement statement, Person person) {
+        try {
+            bindText(statement, 1, person.getFirstName());
+            bindText(statement, 2, person.getLastName());
+            statement.bindLong(3, System.currentTimeMillis());
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings(); // Even if it failed, the statement is reused by the next write
+        }
+    }
 
-        // Step 4 - Close the database
-        database.close();
+    /**
+     * Binds the given {@link Person} to a compiled {@link #SQL_UPDATE_BY_ID} statement and executes it.
+     * Callers are responsible for making sure the statement is not used concurrently.
+     *
+     * @return the number of rows affected.
+     */
+    private static int executeUpdate(SQLiteStatement statement, Person person) {
+        try {
+            bindText(statement, 1, person.getFirstName());
+            bindText(statement, 2, person.getLastName());
+            statement.bindLong(3, System.currentTimeMillis());
+            statement.bindLong(4, person.getId());
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.clearBindings();
+        }
+    }
 
-        return affected > 0; // Return the result of delete operation
+    /**
+     * Binds the given {@link Person}'s id to a compiled {@link #SQL_DELETE_BY_ID} statement and executes it.
+     * Callers are responsible for making sure the statement is not used concurrently.
+     *
+     * @return the number of rows affected.
+     */
+    private static int executeDelete(SQLiteStatement statement, Person person) {
+        try {
+            statement.bindLong(1, person.getId());
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.clearBindings();
+        }
     }
 
     /**
-     * Closes and releases the {@link DatabaseHelper} instance.
+     * Binds a nullable {@link String} to a compiled statement, since
+     * {@link SQLiteStatement#bindString(int, String)} rejects null values.
      */
-    public void release() {
-        if (dbHelper != null) {
-            dbHelper.close();
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
         }
     }
 
+    /**
+     * Closes the {@link DatabaseAccess}, so the long-lived database connection and its compiled
+     * statements are closed once the reads and writes in flight are done.
+     */
+    @Override
+    public void release() {
+        access.close();
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.example.app.repository;
+
+import java.io.IOException;
+
+/**
+ * Callback used to stream records out of a {@link Repository} one at a time, instead of loading
+ * them all into memory first.
+ *
+ * @param <T> The Entity Type being streamed.
+ */
+public interface RecordConsumer<T> {
+
+    /**
+     * Receives the next record read from the database.
+     * @param record the record instance read.
+     * @throws IOException if the consumer fails writing the record, which stops the stream.
+     */
+    void accept(T record) throws IOException;
+}
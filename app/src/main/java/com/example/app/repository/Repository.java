@@ -1,6 +1,8 @@
 package com.example.app.repository;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This interface abstracts the default CRUD methods to be implemented by Concrete classes.
@@ -30,6 +32,37 @@ public interface Repository<T> {
      */
     List<T> findAll();
 
+    /**
+     * Streams all available {@link T} records to the given consumer without holding them in memory.
+     * @param consumer the {@link RecordConsumer} receiving each record as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     */
+    void findAll(RecordConsumer<T> consumer) throws IOException;
+
+    /**
+     * Streams one page of {@link T} records ordered by id, seeking past the given id instead of
+     * skipping rows, to the given consumer.
+     * @param afterId only records with an id greater than this value are returned, 0 to start from the first.
+     * @param limit the max number of records to return, 0 or less for no limit.
+     * @param fields the serialized field names to load, null to load all. Fields left out keep their default value.
+     * @param consumer the {@link RecordConsumer} receiving each record as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     * @throws IllegalArgumentException if any of the fields is unknown to the repository.
+     */
+    void findPage(int afterId, int limit, Set<String> fields, RecordConsumer<T> consumer) throws IOException;
+
+    /**
+     * Streams the {@link T} records matching a full-text search to the given consumer, best matches first.
+     * Implementations may only rank a bounded number of matches, so deep offsets return fewer records.
+     * @param query the search text, each of its words matches records with a word starting with it.
+     * @param offset the number of matching records to skip.
+     * @param limit the max number of records to return.
+     * @param consumer the {@link RecordConsumer} receiving each record as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     * @throws IllegalArgumentException if the query has no word to search for.
+     */
+    void search(String query, int offset, int limit, RecordConsumer<T> consumer) throws IOException;
+
     /**
      * Updates an existing record of {@link T} type.
      * @param record The updated record to be saved.
@@ -43,4 +76,19 @@ public interface Repository<T> {
      * @return boolean True if record was deleted false otherwise.
      */
     boolean delete(T record);
+
+    /**
+     * Applies a batch of inserts, updates and deletes of {@link T} records in a single transaction.
+     * Operations run in order, an operation that affects no record or fails on its own does not roll
+     * back the others. Failures of the transaction itself are thrown, none of the operations being applied.
+     * @param operations the {@link BatchOperation}s to apply.
+     * @return long array with one result per operation: the new primary key id for inserts, or the number
+     * of records affected for updates and deletes. -1 for an operation that failed and was rolled back.
+     */
+    long[] applyBatch(List<BatchOperation<T>> operations);
+
+    /**
+     * Releases any connection or resource held by the repository. It must not be used afterwards.
+     */
+    void release();
 }
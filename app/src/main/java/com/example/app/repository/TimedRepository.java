@@ -0,0 +1,195 @@
+package com.example.app.repository;
+
+import com.example.app.metrics.Counter;
+import com.example.app.metrics.LatencyHistogram;
+import com.example.app.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link Repository} decorator timing every operation of the wrapped repository into the
+ * "db_operation_duration_seconds" histograms, and counting the operations that threw into
+ * "db_operation_errors_total". Both are labeled with the repository and operation names.
+ *
+ * The streaming reads are timed until the last record is handed to the consumer, so they include
+ * the time spent by the consumer itself, e.g. writing the records to the Response.
+ */
+public class TimedRepository<T> implements Repository<T> {
+
+    private static final String OPERATION_DURATION = "db_operation_duration_seconds";
+    private static final String OPERATION_DURATION_HELP = "Time spent in repository operations.";
+    private static final String OPERATION_ERRORS = "db_operation_errors_total";
+    private static final String OPERATION_ERRORS_HELP = "Repository operations that threw an exception.";
+
+    private final Repository<T> delegate;
+    private final Operation insert;
+    private final Operation findById;
+    private final Operation findAll;
+    private final Operation findPage;
+    private final Operation search;
+    private final Operation update;
+    private final Operation delete;
+    private final Operation applyBatch;
+
+    /**
+     * Main constructor for this class, registers the operations' metrics on the given registry.
+     *
+     * @param delegate the {@link Repository} actually performing the operations.
+     * @param name the repository's name used as label, e.g. "person".
+     * @param registry the {@link MetricsRegistry} to register the metrics on.
+     */
+    public TimedRepository(Repository<T> delegate, String name, MetricsRegistry registry) {
+        this.delegate = delegate;
+        insert = new Operation(registry, name, "insert");
+        findById = new Operation(registry, name, "find_by_id");
+        findAll = new Operation(registry, name, "find_all");
+        findPage = new Operation(registry, name, "find_page");
+        search = new Operation(registry, name, "search");
+        update = new Operation(registry, name, "update");
+        delete = new Operation(registry, name, "delete");
+        applyBatch = new Operation(registry, name, "apply_batch");
+    }
+
+    @Override
+    public long insert(T record) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            long id = delegate.insert(record);
+            completed = true;
+            return id;
+        } finally {
+            insert.record(start, completed);
+        }
+    }
+
+    @Override
+    public T findById(int id) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            T record = delegate.findById(id);
+            completed = true;
+            return record;
+        } finally {
+            findById.record(start, completed);
+        }
+    }
+
+    @Override
+    public List<T> findAll() {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            List<T> records = delegate.findAll();
+            completed = true;
+            return records;
+        } finally {
+            findAll.record(start, completed);
+        }
+    }
+
+    @Override
+    public void findAll(RecordConsumer<T> consumer) throws IOException {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.findAll(consumer);
+            completed = true;
+        } finally {
+            findAll.record(start, completed);
+        }
+    }
+
+    @Override
+    public void findPage(int afterId, int limit, Set<String> fields, RecordConsumer<T> consumer) throws IOException {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.findPage(afterId, limit, fields, consumer);
+            completed = true;
+        } finally {
+            findPage.record(start, completed);
+        }
+    }
+
+    @Override
+    public void search(String query, int offset, int limit, RecordConsumer<T> consumer) throws IOException {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            delegate.search(query, offset, limit, consumer);
+            completed = true;
+        } finally {
+            search.record(start, completed);
+        }
+    }
+
+    @Override
+    public boolean update(T record) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            boolean updated = delegate.update(record);
+            completed = true;
+            return updated;
+        } finally {
+            update.record(start, completed);
+        }
+    }
+
+    @Override
+    public boolean delete(T record) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            boolean deleted = delegate.delete(record);
+            completed = true;
+            return deleted;
+        } finally {
+            delete.record(start, completed);
+        }
+    }
+
+    @Override
+    public long[] applyBatch(List<BatchOperation<T>> operations) {
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            long[] results = delegate.applyBatch(operations);
+            completed = true;
+            return results;
+        } finally {
+            applyBatch.record(start, completed);
+        }
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+    }
+
+    /**
+     * The metrics of a single operation, resolved once so recording doesn't look anything up.
+     */
+    private static final class Operation {
+        private final LatencyHistogram duration;
+        private final Counter errors;
+
+        private Operation(MetricsRegistry registry, String repository, String operation) {
+            String labels = MetricsRegistry.label("repository", repository) + ","
+                    + MetricsRegistry.label("operation", operation);
+            duration = registry.histogram(OPERATION_DURATION, OPERATION_DURATION_HELP, labels);
+            errors = registry.counter(OPERATION_ERRORS, OPERATION_ERRORS_HELP, labels);
+        }
+
+        private void record(long start, boolean completed) {
+            duration.record(System.nanoTime() - start);
+            if (!completed) {
+                errors.increment();
+            }
+        }
+    }
+}
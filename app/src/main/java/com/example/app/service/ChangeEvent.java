@@ -0,0 +1,46 @@
+package com.example.app.service;
+
+/**
+ * A record mutation published on a {@link ChangeFeed}.
+ *
+ * @param <T> The Entity Type of the mutated record.
+ */
+public class ChangeEvent<T> {
+
+    /**
+     * The kind of mutation.
+     */
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final T record;
+
+    ChangeEvent(long sequence, Type type, T record) {
+        this.sequence = sequence;
+        this.type = type;
+        this.record = record;
+    }
+
+    /**
+     * @return the event's position in its feed, starting at 1 and increasing by 1 with every event.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the record as written, only its id is set for deletes.
+     */
+    public T getRecord() {
+        return record;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.app.service;
+
+/**
+ * Bounded, in-memory feed of record mutations, kept in a ring buffer of the last N events.
+ *
+ * Publishing only stores the event and wakes the readers up, so writers never wait on them. Each
+ * reader keeps its own cursor, the sequence of the last event it has seen, and reads the events
+ * after it. A reader falling more than the buffer's capacity behind has missed events: it is told
+ * with {@link #LAGGED} and must start over from a full snapshot.
+ *
+ * Sequences restart at 1 along with the process, so they are only meaningful along with the
+ * feed's {@link #getEpoch()}.
+ *
+ * @param <T> The Entity Type of the mutated records.
+ */
+public class ChangeFeed<T> {
+
+    public static final int LAGGED = -1; // The events after the reader's cursor are gone.
+    public static final int CLOSED = -2; // The feed was closed, no more events will be published.
+
+    private final ChangeEvent<T>[] ring;
+    private final int mask; // ring.length - 1, ring.length being a power of two.
+    private final long epoch = System.currentTimeMillis(); // Tells sequences of different processes apart.
+    private long lastSequence; // Guarded by this, 0 until the first event.
+    private boolean closed; // Guarded by this.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param capacity the number of events kept for readers, rounded up to a power of two.
+     */
+    public ChangeFeed(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        @SuppressWarnings("unchecked") // Generic arrays can't be created, the ring only holds ChangeEvent<T>s
+        ChangeEvent<T>[] events = (ChangeEvent<T>[]) new ChangeEvent<?>[size];
+        ring = events;
+        mask = size - 1;
+    }
+
+    /**
+     * Appends an event, overwriting the oldest one once the buffer is full, and wakes the readers up.
+     *
+     * @param type the kind of mutation.
+     * @param record the record as written, only its id is needed for deletes.
+     * @return the event's sequence.
+     */
+    public synchronized long publish(ChangeEvent.Type type, T record) {
+        long sequence = ++lastSequence;
+        ring[(int) (sequence & mask)] = new ChangeEvent<>(sequence, type, record);
+        notifyAll();
+        return sequence;
+    }
+
+    /**
+     * Copies the events after the given cursor, waiting for one to be published if there are none.
+     *
+     * @param afterSequence the sequence of the last event the reader has seen.
+     * @param events receives the events in order, at most its length.
+     * @param timeoutMillis the max time to wait for an event, in milliseconds.
+     * @return the number of events copied, 0 on timeout, {@link #LAGGED} or {@link #CLOSED}.
+     * @throws InterruptedException if the reader's thread is interrupted while waiting.
+     */
+    public synchronized int read(long afterSequence, ChangeEvent<T>[] events, long timeoutMillis)
+            throws InterruptedException {
+        if (afterSequence == lastSequence && !closed) {
+            wait(timeoutMillis);
+        }
+        if (closed) {
+            return CLOSED;
+        }
+        if (!isRetained(afterSequence)) {
+            return LAGGED;
+        }
+        int count = (int) Math.min(lastSequence - afterSequence, events.length);
+        for (int i = 0; i < count; i++) {
+            events[i] = ring[(int) ((afterSequence + 1 + i) & mask)];
+        }
+        return count;
+    }
+
+    /**
+     * @param afterSequence a reader's cursor.
+     * @return true if every event after the cursor is still in the buffer.
+     */
+    public synchronized boolean isRetained(long afterSequence) {
+        return afterSequence >= 0 && afterSequence <= lastSequence && lastSequence - afterSequence <= ring.length;
+    }
+
+    /**
+     * @return the sequence of the last published event, 0 if there are none.
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, this feed was created.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Closes the feed, waking every reader up so they can end.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.app.service;
+
+import com.example.app.repository.RecordConsumer;
+
+import java.io.IOException;
+
+/**
+ * {@link RecordConsumer} encoding the records it receives into a single payload, e.g. a JSON array,
+ * so it can be built once and sent as is by every request asking for it. Each instance encodes a
+ * single payload.
+ *
+ * @param <T> The Entity Type being encoded.
+ */
+public interface PayloadEncoder<T> extends RecordConsumer<T> {
+
+    /**
+     * Ends the payload once every record was received.
+     * @return the encoded payload.
+     * @throws IOException if the payload can't be ended.
+     */
+    byte[] finish() throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.example.app.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link PayloadEncoder} giving up on a payload grown too large to be kept in memory,
+ * which stops the read feeding it. The {@link PersonService} remembers it for the data version.
+ */
+public class PayloadTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.app.service;
+
+import com.example.app.model.Person;
+import com.example.app.repository.BatchOperation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Person} insert, update or delete submitted to a {@link WriteBehindQueue}, tracked by its
+ * id until it's applied along with the rest of its group commit.
+ */
+public class PendingWrite {
+
+    /**
+     * Where the write stands.
+     */
+    public enum State {
+        PENDING, // Queued, or in a transaction not committed yet.
+        APPLIED, // Committed, see getResult().
+        FAILED // Rolled back, as it failed on its own or its transaction threw even once retried alone.
+    }
+
+    private final int id;
+    private final BatchOperation<Person> operation;
+    private final CompletableFuture<PendingWrite> completion = new CompletableFuture<>();
+    private volatile State state = State.PENDING;
+    private volatile long result; // Set before state leaves PENDING.
+
+    PendingWrite(int id, BatchOperation<Person> operation) {
+        this.id = id;
+        this.operation = operation;
+    }
+
+    /**
+     * @return the write's id, unique within its {@link WriteBehindQueue}.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public BatchOperation<Person> getOperation() {
+        return operation;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return once {@link State#APPLIED}, the new Person's ID for inserts, or the
+     * number of records affected for updates and deletes. 0 while pending.
+     */
+    public long getResult() {
+        return result;
+    }
+
+    /**
+     * Waits for the write's group commit to end.
+     *
+     * @param timeoutMillis the max time to wait.
+     * @return true if the write is no longer {@link State#PENDING}.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        try {
+            completion.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e); // Never completed exceptionally
+        }
+    }
+
+    /**
+     * @return a {@link CompletableFuture} completed with this write once it's no longer
+     * {@link State#PENDING}, on the thread committing it.
+     */
+    public CompletableFuture<PendingWrite> getCompletion() {
+        return completion;
+    }
+
+    void complete(State state, long result) {
+        this.result = result;
+        this.state = state;
+        completion.complete(this);
+    }
+}
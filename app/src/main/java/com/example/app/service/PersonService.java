@@ -2,27 +2,166 @@ package com.example.app.service;
 
 import android.content.Context;
 
+import com.example.app.metrics.Gauge;
+import com.example.app.metrics.MetricsRegistry;
 import com.example.app.model.Person;
+import com.example.app.repository.BatchOperation;
+import com.example.app.repository.IndexedPersonRepository;
 import com.example.app.repository.PersonRepository;
+import com.example.app.repository.RecordConsumer;
+import com.example.app.repository.Repository;
+import com.example.app.repository.TimedRepository;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * This class serves as abstraction between the HttpHandlers and the {@link PersonRepository} DAO.
  * Simplifies the interaction and avoids for web handlers to interact with database directly.
+ *
+ * Lookups by id are served through a bounded, read-through {@link RecordCache} of {@link Person}
+ * records. Every insert, update and delete made through this service keeps the cache consistent,
+ * and is published on the service's {@link ChangeFeed} once written. Writes are serialized, each one
+ * along with its publication, so events are published in the order they were committed.
+ *
+ * The feed's sequence doubles as the data version: it's bumped by every mutation, so handlers can
+ * tell whether the table, see {@link #getDataVersion()}, or a single record, see
+ * {@link #getPersonVersion(int)}, changed since a client last fetched it without querying SQLite.
+ *
+ * Every blocking method has an async counterpart, e.g. {@link #findPersonByIdAsync(int)}, running it
+ * on the service's database {@link Executor} and returning a {@link CompletableFuture}, so callers
+ * don't hold a thread of their own for the database round trip. Futures fail with the executor's
+ * {@link RejectedExecutionException} when it's full, instead of it being thrown.
+ *
+ * Identical concurrent async reads are coalesced by a {@link SingleFlight}: lookups of the same id,
+ * or reads of all Persons at the same data version, share a single query while it's in flight. The
+ * encoded payload of all Persons, see {@link #encodeAllPeopleAsync(long, Supplier)}, is also kept
+ * until the data version changes.
  */
 public class PersonService {
 
-    private PersonRepository personRepository;
+    static final int PERSON_CACHE_SIZE = 256; // Max number of Person records kept in memory.
+    private static final int CHANGE_FEED_CAPACITY = 1024; // Mutations kept for change feed readers to catch up.
+    private static final int MAX_ROW_VERSIONS = 4096; // Records whose own version is tracked.
+
+    // Runs the async methods' calls on the calling thread, for services built without a database executor.
+    private static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Repository<Person> personRepository;
+    private final Executor dbExecutor; // Runs the async methods' database calls.
+    // Held across each repository write and its recordChange, so changes are published in commit order.
+    private final Object writeLock = new Object();
+    private final RecordCache<Person> personCache = new RecordCache<>(PERSON_CACHE_SIZE);
+    private final ChangeFeed<Person> changeFeed = new ChangeFeed<>(CHANGE_FEED_CAPACITY);
+    // Version of the last mutation of each record, least recently mutated first. Guarded by itself.
+    private final LinkedHashMap<Integer, Long> rowVersions = new LinkedHashMap<>();
+    private long rowVersionFloor; // Highest version dropped from rowVersions, guarded by rowVersions.
+    private final SingleFlight<Integer, Person> personByIdFlight; // Async lookups by id in flight.
+    private final SingleFlight<Long, List<Person>> allPeopleFlight; // Async reads of all Persons in flight, by data version.
+    private final SingleFlight<Long, byte[]> allPeoplePayloadFlight; // Payloads of all Persons being encoded, by data version.
+    private volatile EncodedPayload allPeoplePayload; // Last payload of all Persons and its data version.
 
     /**
      * Main constructor for this class. Receives an instance of the Application's {@link Context} to
-     * be able to instantiate the {@link PersonRepository}.
+     * be able to instantiate the {@link PersonRepository}, timed into the default {@link MetricsRegistry}.
      *
      * @param context the Application's {@link Context} instance.
      */
     public PersonService(Context context) {
-        personRepository = new PersonRepository(context);
+        this(context, false);
+    }
+
+    /**
+     * Overloaded constructor that optionally keeps every {@link Person} in memory, see
+     * {@link IndexedPersonRepository}, for devices mostly serving reads.
+     *
+     * @param context the Application's {@link Context} instance.
+     * @param inMemoryIndex whether reads are served from memory instead of the database.
+     */
+    public PersonService(Context context, boolean inMemoryIndex) {
+        this(context, inMemoryIndex, CALLING_THREAD);
+    }
+
+    /**
+     * Overloaded constructor that also receives the {@link Executor} running the async methods'
+     * database calls.
+     *
+     * @param context the Application's {@link Context} instance.
+     * @param inMemoryIndex whether reads are served from memory instead of the database.
+     * @param dbExecutor the {@link Executor} running the async methods' database calls.
+     */
+    public PersonService(Context context, boolean inMemoryIndex, Executor dbExecutor) {
+        this(new TimedRepository<>(inMemoryIndex
+                ? new IndexedPersonRepository(new PersonRepository(context))
+                : new PersonRepository(context), "person", MetricsRegistry.getDefault()), dbExecutor);
+    }
+
+    /**
+     * Overloaded constructor that receives the {@link Repository} to work with, e.g. an in-memory
+     * one when running outside of Android.
+     *
+     * @param personRepository the {@link Repository} storing the {@link Person} records.
+     */
+    public PersonService(Repository<Person> personRepository) {
+        this(personRepository, CALLING_THREAD);
+    }
+
+    /**
+     * Overloaded constructor that receives the {@link Repository} to work with, and the
+     * {@link Executor} running the async methods' database calls.
+     *
+     * @param personRepository the {@link Repository} storing the {@link Person} records.
+     * @param dbExecutor the {@link Executor} running the async methods' database calls.
+     */
+    public PersonService(Repository<Person> personRepository, Executor dbExecutor) {
+        this.personRepository = personRepository;
+        this.dbExecutor = dbExecutor;
+        personByIdFlight = new SingleFlight<>(MetricsRegistry.getDefault(), "person_by_id");
+        allPeopleFlight = new SingleFlight<>(MetricsRegistry.getDefault(), "all_people");
+        allPeoplePayloadFlight = new SingleFlight<>(MetricsRegistry.getDefault(), "all_people_payload");
+        registerCacheGauges(MetricsRegistry.getDefault());
+    }
+
+    /**
+     * Exposes the {@link RecordCache}'s hits, misses and evictions, see {@link #getCacheHitCount()},
+     * so its size can be tuned from the "/metrics" endpoint. Replaces the gauges of any previous service.
+     *
+     * @param registry the {@link MetricsRegistry} to register the gauges on.
+     */
+    private void registerCacheGauges(MetricsRegistry registry) {
+        registry.gauge("person_cache_hits", "Lookups by id served from the Person cache since the service started.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return getCacheHitCount();
+            }
+        });
+        registry.gauge("person_cache_misses", "Lookups by id that had to query the database since the service started.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return getCacheMissCount();
+            }
+        });
+        registry.gauge("person_cache_evictions", "Persons evicted from the full Person cache since the service started.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return getCacheEvictionCount();
+            }
+        });
     }
 
     /**
@@ -34,7 +173,13 @@ public class PersonService {
      */
     public long addNewPerson(String firstName, String lastName) {
         Person person = new Person(firstName, lastName);
-        return personRepository.insert(person);
+        synchronized (writeLock) {
+            long id = personRepository.insert(person);
+            if (id > 0) {
+                recordChange(ChangeEvent.Type.INSERT, (int) id, firstName, lastName);
+            }
+            return id;
+        }
     }
 
     /**
@@ -46,14 +191,17 @@ public class PersonService {
      * @return boolean true if Person record was updated successfully, false otherwise.
      */
     public boolean updatePerson(int id, String firstName, String lastName) {
-        Person person = findPersonById(id);
+        // The update statement only affects existing rows, so no lookup is needed beforehand.
+        Person person = new Person(id, firstName, lastName);
 
-        if (person != null) {
-            person.setFirstName(firstName);
-            person.setLastName(lastName);
-            return personRepository.update(person);
-        } else {
-            return false;
+        synchronized (writeLock) {
+            if (personRepository.update(person)) {
+                recordChange(ChangeEvent.Type.UPDATE, id, firstName, lastName);
+                return true;
+            } else {
+                personCache.remove(id);
+                return false;
+            }
         }
     }
 
@@ -64,11 +212,59 @@ public class PersonService {
      * @return boolean true if Person record was deleted successfully, false otherwise.
      */
     public boolean deletePerson(int id) {
-        Person person = findPersonById(id);
-        if (person != null) {
-            return personRepository.delete(person);
-        } else {
-            return false;
+        // The delete statement only affects existing rows, so no lookup is needed beforehand.
+        Person person = new Person(id, null, null);
+        synchronized (writeLock) {
+            if (personRepository.delete(person)) {
+                recordChange(ChangeEvent.Type.DELETE, id, null, null);
+                return true;
+            } else {
+                personCache.remove(id);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Will apply a batch of {@link Person} inserts, updates and deletes in a single SQLite transaction
+     * through the {@link PersonRepository#applyBatch(List)} method.
+     *
+     * @param operations the {@link BatchOperation}s to apply, in order.
+     * @return long array with one result per operation: the new Person's ID for inserts, or the number
+     * of records affected for updates and deletes. -1 for an operation that failed and was rolled back.
+     */
+    public long[] applyBatch(List<BatchOperation<Person>> operations) {
+        synchronized (writeLock) {
+            long[] results = personRepository.applyBatch(operations);
+
+            // Keep the cache consistent with what was actually written, and publish it.
+            for (int i = 0; i < results.length; i++) {
+                Person person = operations.get(i).getRecord();
+                switch (operations.get(i).getType()) {
+                    case INSERT:
+                        if (results[i] > 0) {
+                            recordChange(ChangeEvent.Type.INSERT, (int) results[i],
+                                    person.getFirstName(), person.getLastName());
+                        }
+                        break;
+                    case UPDATE:
+                        if (results[i] > 0) {
+                            recordChange(ChangeEvent.Type.UPDATE, person.getId(),
+                                    person.getFirstName(), person.getLastName());
+                        } else {
+                            personCache.remove(person.getId());
+                        }
+                        break;
+                    case DELETE:
+                        if (results[i] > 0) {
+                            recordChange(ChangeEvent.Type.DELETE, person.getId(), null, null);
+                        } else {
+                            personCache.remove(person.getId());
+                        }
+                        break;
+                }
+            }
+            return results;
         }
     }
 
@@ -81,6 +277,43 @@ public class PersonService {
         return personRepository.findAll();
     }
 
+    /**
+     * Will stream all Person records from the SQLite database to the given consumer, one at a time.
+     *
+     * @param consumer the {@link RecordConsumer} receiving each {@link Person} as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     */
+    public void findAllPeople(RecordConsumer<Person> consumer) throws IOException {
+        personRepository.findAll(consumer);
+    }
+
+    /**
+     * Will stream one page of Person records, ordered by id, from the SQLite database to the given consumer.
+     *
+     * @param afterId only Persons with an id greater than this value are returned, 0 to start from the first.
+     * @param limit the max number of Persons to return, 0 or less for no limit.
+     * @param fields the {@link Person#SERIALIZED_FIELDS} to load, null to load all.
+     * @param consumer the {@link RecordConsumer} receiving each {@link Person} as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     */
+    public void findPeoplePage(int afterId, int limit, Set<String> fields, RecordConsumer<Person> consumer) throws IOException {
+        personRepository.findPage(afterId, limit, fields, consumer);
+    }
+
+    /**
+     * Will stream the Person records whose names match a full-text search, best matches first, to the given consumer.
+     *
+     * @param query the search text, each of its words matches names with a word starting with it.
+     * @param offset the number of matching Persons to skip.
+     * @param limit the max number of Persons to return.
+     * @param consumer the {@link RecordConsumer} receiving each {@link Person} as it is read.
+     * @throws IOException if the consumer fails handling a record.
+     * @throws IllegalArgumentException if the query has no word to search for.
+     */
+    public void searchPeople(String query, int offset, int limit, RecordConsumer<Person> consumer) throws IOException {
+        personRepository.search(query, offset, limit, consumer);
+    }
+
     /**
      * Will fetch an existing {@link Person} in the SQLite database using it's id.
      *
@@ -88,17 +321,352 @@ public class PersonService {
      * @return the {@link Person} instance representing the record if found, null otherwise
      */
     public Person findPersonById(int id) {
-        return personRepository.findById(id);
+        Person person = personCache.get(id);
+        return person != null ? person : loadPerson(id);
     }
 
     /**
-     * Closes and releases the {@link PersonRepository} instance.
+     * Async counterpart of {@link #addNewPerson(String, String)}.
+     *
+     * @return a {@link CompletableFuture} of the new Person's ID on the database.
+     */
+    public CompletableFuture<Long> addNewPersonAsync(final String firstName, final String lastName) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return addNewPerson(firstName, lastName);
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #updatePerson(int, String, String)}.
+     *
+     * @return a {@link CompletableFuture} of whether the Person record was updated.
+     */
+    public CompletableFuture<Boolean> updatePersonAsync(final int id, final String firstName, final String lastName) {
+        return supplyAsync(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return updatePerson(id, firstName, lastName);
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #deletePerson(int)}.
+     *
+     * @return a {@link CompletableFuture} of whether the Person record was deleted.
+     */
+    public CompletableFuture<Boolean> deletePersonAsync(final int id) {
+        return supplyAsync(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return deletePerson(id);
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #applyBatch(List)}.
+     *
+     * @return a {@link CompletableFuture} of the operations' results.
+     */
+    public CompletableFuture<long[]> applyBatchAsync(final List<BatchOperation<Person>> operations) {
+        return supplyAsync(new Supplier<long[]>() {
+            @Override
+            public long[] get() {
+                return applyBatch(operations);
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #findAllPeople()}, sharing the query of any identical call in
+     * flight at the same data version.
+     *
+     * @return a {@link CompletableFuture} of all the Person records, in an unmodifiable list since
+     * it's shared by the coalesced calls.
+     */
+    public CompletableFuture<List<Person>> findAllPeopleAsync() {
+        // Read the version before the data, so calls made after a mutation never share an older query
+        return allPeopleFlight.execute(getDataVersion(), new Supplier<CompletableFuture<List<Person>>>() {
+            @Override
+            public CompletableFuture<List<Person>> get() {
+                return supplyAsync(new Supplier<List<Person>>() {
+                    @Override
+                    public List<Person> get() {
+                        return Collections.unmodifiableList(findAllPeople());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Encodes all Person records into a single payload on the database executor, e.g. the JSON array
+     * sent by "/names", so callers are handed finished bytes and each one sends them to its own
+     * client. The payload is shared by the identical calls made while it's encoded, and kept until
+     * the data version changes. So is the encoder giving up on it with a
+     * {@link PayloadTooLargeException}, later calls at the same version aren't encoded again.
+     *
+     * @param version the data version, read by the caller before calling, the payload is never older.
+     * @param encoders creates the {@link PayloadEncoder} encoding the payload, when it's not kept.
+     * @return a {@link CompletableFuture} of the payload, already completed if it's kept, of null if
+     * it's too large to be kept. It fails with any other {@link IOException} the encoder threw.
+     */
+    public CompletableFuture<byte[]> encodeAllPeopleAsync(final long version,
+                                                          final Supplier<? extends PayloadEncoder<Person>> encoders) {
+        EncodedPayload kept = allPeoplePayload;
+        if (kept != null && kept.version == version) {
+            return CompletableFuture.completedFuture(kept.payload);
+        }
+        return allPeoplePayloadFlight.execute(version, new Supplier<CompletableFuture<byte[]>>() {
+            @Override
+            public CompletableFuture<byte[]> get() {
+                return supplyAsync(new Supplier<byte[]>() {
+                    @Override
+                    public byte[] get() {
+                        try {
+                            byte[] payload;
+                            try {
+                                PayloadEncoder<Person> encoder = encoders.get();
+                                findAllPeople(encoder);
+                                payload = encoder.finish();
+                            } catch (PayloadTooLargeException e) {
+                                payload = null; // Kept too, so it's not encoded again at this version
+                            }
+                            EncodedPayload kept = allPeoplePayload;
+                            if (kept == null || kept.version < version) {
+                                allPeoplePayload = new EncodedPayload(version, payload);
+                            }
+                            return payload;
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #findPeoplePage(int, int, Set, RecordConsumer)}, the consumer is
+     * called on the database executor.
+     *
+     * @return a {@link CompletableFuture} completed once the last Person was handed to the consumer,
+     * failed with the {@link IOException} if the consumer threw one.
+     */
+    public CompletableFuture<Void> findPeoplePageAsync(final int afterId, final int limit, final Set<String> fields,
+                                                      final RecordConsumer<Person> consumer) {
+        return supplyAsync(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                try {
+                    findPeoplePage(afterId, limit, fields, consumer);
+                    return null;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #searchPeople(String, int, int, RecordConsumer)}, the consumer is
+     * called on the database executor.
+     *
+     * @return a {@link CompletableFuture} completed once the last Person was handed to the consumer,
+     * failed with the {@link IOException} if the consumer threw one, or the
+     * {@link IllegalArgumentException} if the query has no word to search for.
+     */
+    public CompletableFuture<Void> searchPeopleAsync(final String query, final int offset, final int limit,
+                                                    final RecordConsumer<Person> consumer) {
+        return supplyAsync(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                try {
+                    searchPeople(query, offset, limit, consumer);
+                    return null;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Async counterpart of {@link #findPersonById(int)}. Cached Persons are returned in an already
+     * completed future, without going through the database executor, otherwise the lookup shares
+     * the query of any identical call in flight.
+     *
+     * @return a {@link CompletableFuture} of the Person, null if not found.
+     */
+    public CompletableFuture<Person> findPersonByIdAsync(final int id) {
+        Person cached = personCache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return personByIdFlight.execute(id, new Supplier<CompletableFuture<Person>>() {
+            @Override
+            public CompletableFuture<Person> get() {
+                return supplyAsync(new Supplier<Person>() {
+                    @Override
+                    public Person get() {
+                        // Not findPersonById(id), which would count a second cache miss
+                        return loadPerson(id);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads a Person missing from the cache, then caches it unless the record changed meanwhile: the
+     * read may have seen it before the change, and would otherwise replace the fresher copy cached
+     * by the change.
+     *
+     * @param id the int ID of the person to be fetched.
+     * @return the {@link Person} instance representing the record if found, null otherwise
+     */
+    private Person loadPerson(int id) {
+        long version = getPersonVersion(id); // Read before the record, like the data version
+        Person person = personRepository.findById(id);
+        if (person != null) {
+            synchronized (rowVersions) {
+                if (getPersonVersion(id) == version) {
+                    personCache.put(id, person);
+                }
+            }
+        }
+        return person;
+    }
+
+    /**
+     * Runs a call on the database executor, failing the returned future instead of throwing if the
+     * executor refuses it.
+     */
+    private <R> CompletableFuture<R> supplyAsync(Supplier<R> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, dbExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<R> refused = new CompletableFuture<>();
+            refused.completeExceptionally(e);
+            return refused;
+        }
+    }
+
+    /**
+     * @return the number of {@link #findPersonById(int)} calls served from the in-memory cache.
+     */
+    public int getCacheHitCount() {
+        return personCache.hitCount();
+    }
+
+    /**
+     * @return the number of {@link #findPersonById(int)} calls that had to query the database.
+     */
+    public int getCacheMissCount() {
+        return personCache.missCount();
+    }
+
+    /**
+     * @return the number of {@link Person} records evicted from the cache to stay within its size.
+     */
+    public int getCacheEvictionCount() {
+        return personCache.evictionCount();
+    }
+
+    /**
+     * Publishes a mutation already written to the database, bumping the data version and the
+     * record's own version, and updates the cache along with them. Called under the writeLock,
+     * right after the write.
+     *
+     * The published and cached {@link Person} is a copy of its own, the callers' instances may still
+     * be changed through their setters.
+     *
+     * @param type the kind of mutation.
+     * @param id the id of the mutated {@link Person}.
+     * @param firstName the first name as written, null for deletes.
+     * @param lastName the last name as written, null for deletes.
+     */
+    private void recordChange(ChangeEvent.Type type, int id, String firstName, String lastName) {
+        Person person = new Person(id, firstName, lastName);
+        personByIdFlight.forget(id); // A lookup in flight may have read the record before the change
+        synchronized (rowVersions) {
+            long version = changeFeed.publish(type, person);
+            // Under the same lock as the version bump, see loadPerson(int)
+            if (type == ChangeEvent.Type.DELETE) {
+                personCache.remove(person.getId());
+            } else {
+                personCache.put(person.getId(), person);
+            }
+            rowVersions.remove(person.getId()); // Re-inserted last, as the most recently mutated
+            rowVersions.put(person.getId(), version);
+            if (rowVersions.size() > MAX_ROW_VERSIONS) {
+                Iterator<Map.Entry<Integer, Long>> eldest = rowVersions.entrySet().iterator();
+                rowVersionFloor = Math.max(rowVersionFloor, eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the whole Person table. It only grows, bumped after each mutation is
+     * written, so reading it before querying the table tags the result with a version that is
+     * never newer than the data. Versions restart along with the process, see {@link ChangeFeed#getEpoch()}.
+     *
+     * @return the data version, 0 if nothing changed since the service started.
+     */
+    public long getDataVersion() {
+        return changeFeed.getLastSequence();
+    }
+
+    /**
+     * Returns the version of a single Person record, which only changes when that record is
+     * inserted, updated or deleted. Only the most recently mutated records are tracked, the others
+     * share the highest version dropped so far, so their version may change without them changing.
+     *
+     * @param id the int ID of the Person.
+     * @return the record's version, 0 if it didn't change since the service started.
+     */
+    public long getPersonVersion(int id) {
+        synchronized (rowVersions) {
+            Long version = rowVersions.get(id);
+            return version != null ? version : rowVersionFloor;
+        }
+    }
+
+    /**
+     * @return the {@link ChangeFeed} every {@link Person} insert, update and delete is published on.
+     */
+    public ChangeFeed<Person> getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Closes the {@link ChangeFeed}, then closes and releases the {@link Repository} instance.
      */
     public void cleanUp() {
+        changeFeed.close();
         if (personRepository != null) {
             personRepository.release();
         }
         personRepository = null;
+        personCache.evictAll();
+        allPeoplePayload = null;
     }
 
+    /**
+     * The encoded payload of all Persons, along with the data version it was read at.
+     */
+    private static final class EncodedPayload {
+        private final long version;
+        private final byte[] payload; // null if it was too large to be kept
+
+        private EncodedPayload(long version, byte[] payload) {
+            this.version = version;
+            this.payload = payload;
+        }
+    }
 }
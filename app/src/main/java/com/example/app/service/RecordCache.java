@@ -0,0 +1,76 @@
+package com.example.app.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread-safe cache of records by id, evicting the least recently used one when full.
+ *
+ * Stands in for the framework's {@link android.util.LruCache}, which relies on a hidden
+ * {@link LinkedHashMap} method, so the service layer runs on a plain JVM as well, e.g. in the
+ * benchmarks and unit tests.
+ *
+ * @param <T> the Type of the cached records.
+ */
+final class RecordCache<T> {
+
+    private final int maxSize; // Records kept before evicting the least recently used one.
+    private final LinkedHashMap<Integer, T> records; // Cached records, in access order.
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    /**
+     * @param maxSize the max number of records kept.
+     */
+    RecordCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.records = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                if (size() > RecordCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached record, null if it isn't cached.
+     */
+    synchronized T get(int id) {
+        T record = records.get(id);
+        if (record != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return record;
+    }
+
+    synchronized void put(int id, T record) {
+        records.put(id, record);
+    }
+
+    synchronized void remove(int id) {
+        records.remove(id);
+    }
+
+    synchronized void evictAll() {
+        records.clear();
+    }
+
+    synchronized int hitCount() {
+        return hitCount;
+    }
+
+    synchronized int missCount() {
+        return missCount;
+    }
+
+    synchronized int evictionCount() {
+        return evictionCount;
+    }
+}
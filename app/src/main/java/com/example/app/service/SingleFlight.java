@@ -0,0 +1,90 @@
+package com.example.app.service;
+
+import com.example.app.metrics.Counter;
+import com.example.app.metrics.MetricsRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls: while a call for a key is in flight, further calls for the
+ * same key don't run, they share the in-flight call's future instead. Once it completes the key is
+ * free again, so results are never reused after the fact, unlike with a cache.
+ *
+ * Calls are counted into "single_flight_calls_total", and those that shared another call's result
+ * into "single_flight_coalesced_total", both labeled with the flight's name.
+ *
+ * @param <K> the type of the keys telling identical calls apart.
+ * @param <V> the type of the calls' results.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter calls; // Calls made, coalesced or not.
+    private final Counter coalesced; // Calls that shared the result of one in flight.
+
+    /**
+     * Main constructor for this class, registers the flight's counters on the given registry.
+     *
+     * @param registry the {@link MetricsRegistry} to register the counters on.
+     * @param name the flight's name used as label, e.g. "person_by_id".
+     */
+    public SingleFlight(MetricsRegistry registry, String name) {
+        String labels = MetricsRegistry.label("flight", name);
+        calls = registry.counter("single_flight_calls_total", "Calls made through a single flight.", labels);
+        coalesced = registry.counter("single_flight_coalesced_total",
+                "Calls that shared the result of an identical call in flight.", labels);
+    }
+
+    /**
+     * Runs the call, unless one for the same key is in flight, in which case its future is returned.
+     *
+     * @param key the key telling identical calls apart.
+     * @param call the call to run, returning the future of its result.
+     * @return the future of the call's result, shared by every caller of the flight. Callers must
+     * not complete it themselves.
+     */
+    public CompletableFuture<V> execute(final K key, Supplier<CompletableFuture<V>> call) {
+        calls.increment();
+        final CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            return flight;
+        }
+        result.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(V value, Throwable error) {
+                // Freed before completing, so calls made by the continuations start a new flight
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(value);
+                }
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * Stops sharing the call in flight for a key, e.g. once the data it reads was changed, so later
+     * calls see the change. The call itself keeps running for those already sharing it.
+     *
+     * @param key the key of the call in flight.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+}
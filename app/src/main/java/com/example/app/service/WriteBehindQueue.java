@@ -0,0 +1,237 @@
+package com.example.app.service;
+
+import android.util.Log;
+
+import com.example.app.metrics.Counter;
+import com.example.app.metrics.Gauge;
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.model.Person;
+import com.example.app.repository.BatchOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue for {@link Person} inserts, updates and deletes.
+ *
+ * Writes are queued instead of being committed by the request thread, and a single writer thread
+ * applies them through {@link PersonService#applyBatch(List)}, group committed: a transaction, and
+ * its fsync, is shared by every write queued within maxDelayMillis of the first one, up to
+ * maxBatchSize writes. Being the only writer, it never waits on SQLite's lock either.
+ *
+ * A write failing is rolled back without the others sharing its transaction, see
+ * {@link PersonService#applyBatch(List)}, and if the transaction as a whole fails its writes are
+ * retried in a transaction each.
+ *
+ * Submitted writes are tracked by id, see {@link #find(int)}, until twice the queue's capacity of
+ * newer writes have been submitted. When the queue is full writes are refused, not blocked on.
+ */
+public class WriteBehindQueue {
+
+    private static final String TAG = WriteBehindQueue.class.getName()+"_TAG"; // Logging TAG
+    private static final long IDLE_POLL_MILLIS = 100; // Writer wake up interval while idle, to notice close().
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000; // Max time close() waits for queued writes.
+
+    private final PersonService personService;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Map<Integer, PendingWrite> tracked; // Most recent writes by id, guarded by itself.
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final Counter commits; // Group commits run.
+    private final Counter applied; // Writes committed.
+    private final Counter failed; // Writes rolled back, on their own or along with their group commit.
+
+    /**
+     * Main constructor for this class, starts the writer thread.
+     *
+     * @param personService the {@link PersonService} applying the writes.
+     * @param capacity the max number of writes waiting to be committed before new ones are refused.
+     * @param maxBatchSize the max number of writes committed in a single transaction.
+     * @param maxDelayMillis the max time a write waits for others to share its transaction.
+     * @param registry the {@link MetricsRegistry} to register the queue's metrics on.
+     */
+    public WriteBehindQueue(PersonService personService, int capacity, int maxBatchSize, long maxDelayMillis,
+                            MetricsRegistry registry) {
+        this.personService = personService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        final int maxTracked = capacity * 2;
+        this.tracked = new LinkedHashMap<Integer, PendingWrite>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PendingWrite> eldest) {
+                return size() > maxTracked;
+            }
+        };
+
+        commits = registry.counter("write_behind_commits_total", "Group commits run by the write-behind queue.", "");
+        applied = registry.counter("write_behind_applied_total", "Writes committed by the write-behind queue.", "");
+        failed = registry.counter("write_behind_failed_total", "Writes rolled back by the write-behind queue.", "");
+        registry.gauge("write_behind_queue_depth", "Writes waiting to be committed.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return queue.size();
+            }
+        });
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "write-behind");
+        writer.start();
+    }
+
+    /**
+     * Queues a write, returning right away.
+     *
+     * @param operation the {@link BatchOperation} to apply.
+     * @return the {@link PendingWrite} tracking it, null if the queue is full or closed.
+     */
+    public PendingWrite submit(BatchOperation<Person> operation) {
+        if (closed) {
+            return null;
+        }
+        PendingWrite write = new PendingWrite(lastId.incrementAndGet(), operation);
+        synchronized (tracked) {
+            tracked.put(write.getId(), write);
+        }
+        if (!queue.offer(write)) {
+            synchronized (tracked) {
+                tracked.remove(write.getId());
+            }
+            return null;
+        }
+        return write;
+    }
+
+    /**
+     * @param id the id of a submitted write.
+     * @return the {@link PendingWrite}, null if unknown or no longer tracked.
+     */
+    public PendingWrite find(int id) {
+        synchronized (tracked) {
+            return tracked.get(id);
+        }
+    }
+
+    /**
+     * @return the number of writes waiting to be committed.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Refuses new writes, then waits for the queued ones to be committed, so the
+     * {@link PersonService} can be cleaned up afterwards.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Writes submitted while closing, after the writer was done, are failed rather than left pending
+        List<PendingWrite> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (PendingWrite write : leftover) {
+            write.complete(PendingWrite.State.FAILED, 0);
+        }
+    }
+
+    /**
+     * The writer thread's loop: waits for a first write, gathers the ones following it until the
+     * batch is full or its delay is over, then commits them together.
+     */
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return; // Nothing left to commit
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == maxBatchSize || remaining <= 0 || closed) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Not expected, the writes not committed yet are failed rather than left pending forever
+            closed = true;
+            queue.drainTo(batch);
+            for (PendingWrite write : batch) {
+                write.complete(PendingWrite.State.FAILED, 0);
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of writes in a single transaction, then completes each of them. A write failing on
+     * its own is rolled back alone, while if the transaction itself fails the writes are retried one
+     * transaction each, so only the ones still failing are.
+     */
+    private void commit(List<PendingWrite> batch) {
+        List<BatchOperation<Person>> operations = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            operations.add(write.getOperation());
+        }
+        long[] results;
+        try {
+            results = personService.applyBatch(operations);
+        } catch (RuntimeException e) {
+            // The transaction was rolled back, none of the writes was applied
+            Log.e(TAG, "Group commit of " + batch.size() + " writes failed", e);
+            if (batch.size() > 1) {
+                for (PendingWrite write : batch) {
+                    commit(Collections.singletonList(write));
+                }
+                return;
+            }
+            batch.get(0).complete(PendingWrite.State.FAILED, 0);
+            failed.increment();
+            return;
+        }
+        int rolledBack = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] < 0) {
+                batch.get(i).complete(PendingWrite.State.FAILED, 0);
+                rolledBack++;
+            } else {
+                batch.get(i).complete(PendingWrite.State.APPLIED, results[i]);
+            }
+        }
+        commits.increment();
+        applied.add(results.length - rolledBack);
+        failed.add(rolledBack);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.app.web;
+
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.web.base.BaseHttpHandler;
+import com.example.app.web.base.Route;
+import com.example.app.web.base.RouteMatch;
+import com.example.app.web.base.Router;
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.HttpRequest;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.app.web.util.HttpConstants.PROMETHEUS_TEXT_MIME;
+import static com.example.app.web.util.HttpConstants.STATUS_SUCCESS;
+
+
+/**
+ * MetricsHandler exposes a {@link MetricsRegistry} on the "/metrics" endpoint, in the Prometheus
+ * text format, for a scraper to collect.
+ */
+public class MetricsHandler extends BaseHttpHandler {
+
+    public static final String ENDPOINT = "/metrics";
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024; // Initial size of the exported text buffer.
+
+    private final MetricsRegistry registry;
+    private final Router router = new Router()
+            .add(HttpMethod.GET, ENDPOINT, new Route() { // GET http://ipaddress:5000/metrics
+                @Override
+                public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                    doGetMetricsResponse(exchange, request);
+                }
+            });
+
+    /**
+     * Main constructor for this Handler.
+     *
+     * @param registry the {@link MetricsRegistry} to expose.
+     */
+    public MetricsHandler(MetricsRegistry registry) {
+        super(ENDPOINT);
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+        dispatch(router, httpExchange, new HttpRequest(httpExchange));
+    }
+
+    /**
+     * Handles the GET request made to the "/metrics" endpoint. The metrics are exported to memory
+     * first, so the response is sent with its Content-Length.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private void doGetMetricsResponse(HttpExchange exchange, HttpRequest request) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        registry.writeTo(writer);
+        writer.flush();
+
+        OutputStream os = startFixedLengthResponse(exchange, STATUS_SUCCESS, PROMETHEUS_TEXT_MIME, buffer.size());
+        try {
+            buffer.writeTo(os);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -3,37 +3,143 @@ package com.example.app.web;
 import android.content.Context;
 
 import com.example.app.model.Person;
+import com.example.app.repository.BatchOperation;
+import com.example.app.repository.PersonRepository;
+import com.example.app.repository.RecordConsumer;
+import com.example.app.service.PayloadEncoder;
+import com.example.app.service.PayloadTooLargeException;
+import com.example.app.service.PendingWrite;
 import com.example.app.service.PersonService;
+import com.example.app.service.WriteBehindQueue;
+import com.example.app.web.base.AsyncRoute;
 import com.example.app.web.base.BaseHttpHandler;
+import com.example.app.web.base.BodyParseException;
+import com.example.app.web.base.HandOffOutputStream;
+import com.example.app.web.base.PersonFormMapper;
+import com.example.app.web.base.PersonJsonCodec;
+import com.example.app.web.base.Route;
+import com.example.app.web.base.RouteMatch;
+import com.example.app.web.base.Router;
+import com.example.app.web.base.Utf8JsonWriter;
+import com.example.app.web.util.model.BulkOperation;
+import com.example.app.web.util.model.BulkResult;
+import com.example.app.web.util.model.HttpMethod;
 import com.example.app.web.util.model.HttpRequest;
 import com.example.app.web.util.model.HttpResponse;
+import com.example.app.web.util.model.WriteStatus;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import static com.example.app.web.util.HttpConstants.ALLOWED_METHODS;
-import static com.example.app.web.util.HttpConstants.CONTENT_TYPE;
-import static com.example.app.web.util.HttpConstants.HEADER_ALLOW;
+import static com.example.app.web.util.HttpConstants.CACHE_CONTROL_NO_CACHE;
+import static com.example.app.web.util.HttpConstants.HEADER_CACHE_CONTROL;
+import static com.example.app.web.util.HttpConstants.HEADER_ETAG;
+import static com.example.app.web.util.HttpConstants.HEADER_LOCATION;
+import static com.example.app.web.util.HttpConstants.HEADER_PREFER;
+import static com.example.app.web.util.HttpConstants.HEADER_PREFERENCE_APPLIED;
+import static com.example.app.web.util.HttpConstants.HEADER_RETRY_AFTER;
 import static com.example.app.web.util.HttpConstants.JSON_MIME;
 import static com.example.app.web.util.HttpConstants.MESSAGE_BAD_REQUEST;
 import static com.example.app.web.util.HttpConstants.MESSAGE_NOT_FOUND;
-import static com.example.app.web.util.HttpConstants.NO_RESPONSE_LENGTH;
+import static com.example.app.web.util.HttpConstants.PREFER_RESPOND_ASYNC;
+import static com.example.app.web.util.HttpConstants.STATUS_ACCEPTED;
 import static com.example.app.web.util.HttpConstants.STATUS_BAD_REQUEST;
 import static com.example.app.web.util.HttpConstants.STATUS_INTERNAL_SERVER_ERROR;
 import static com.example.app.web.util.HttpConstants.STATUS_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.STATUS_NOT_MODIFIED;
+import static com.example.app.web.util.HttpConstants.STATUS_SERVICE_UNAVAILABLE;
 import static com.example.app.web.util.HttpConstants.STATUS_SUCCESS;
-import static com.example.app.web.util.HttpConstants.STATUS_METHOD_NOT_ALLOWED;
 
 
 /**
  * NamesHandler handles all GET, POST, PUT and DELETE HTTP request methods for the "/names" endpoint.
+ *
+ * Requests are dispatched by a {@link Router}, so unknown paths, e.g. "/names/abc" or "/names/1/x",
+ * are answered with 404 Not Found and unsupported methods with 405 Method Not Allowed.
+ *
+ * Writes are either applied through the {@link PersonService}, or group committed through a
+ * {@link WriteBehindQueue}, see {@link #NamesHandler(PersonService, WriteBehindQueue, Executor)}.
+ *
+ * Routes touching the database are {@link AsyncRoute}s: the request's thread parses it and hands the
+ * work to the {@link PersonService}'s async methods, then returns, so requests waiting on the
+ * database don't hold a request thread each. Once they're done the response is sent on the response
+ * executor, never by the database executor's threads, which a slow client would otherwise hold.
+ * Pages too large to be buffered are handed over to it while they're read, a few chunks at a time.
  */
 public class NamesHandler extends BaseHttpHandler {
 
     public static final String ENDPOINT = "/names";
+    public static final String BULK_ENDPOINT = ENDPOINT + "/_bulk";
+    public static final String SEARCH_ENDPOINT = ENDPOINT + "/search";
+    public static final String WRITES_ENDPOINT = ENDPOINT + "/_writes";
+    private static final String WRITE_ROUTE = WRITES_ENDPOINT + "/{id:int}"; // Route template of a queued write.
+    private static final String ID_ROUTE = ENDPOINT + "/{id:int}"; // Route template of a single Person.
 
+    private static final String PARAM_AFTER_ID = "after_id"; // Keyset pagination cursor query parameter.
+    private static final String PARAM_LIMIT = "limit"; // Page size query parameter.
+    private static final String PARAM_FIELDS = "fields"; // Field projection query parameter.
+    private static final String PARAM_QUERY = "q"; // Search text query parameter.
+    private static final String PARAM_OFFSET = "offset"; // Search results to skip query parameter.
+    private static final int MAX_PAGE_SIZE = 1000; // Max Persons returned by a paginated request.
+    private static final int DEFAULT_SEARCH_LIMIT = 20; // Search results returned when "limit" is not sent.
+    private static final int MAX_SEARCH_LIMIT = 100; // Upper bound for the search "limit" query parameter.
+    // Upper bound for the search "offset" query parameter, so a full page stays within the ranked matches.
+    private static final int MAX_SEARCH_OFFSET = PersonRepository.MAX_SEARCH_RESULTS - MAX_SEARCH_LIMIT;
+    private static final int MAX_BULK_OPERATIONS = 10000; // Upper bound for operations in a single bulk request.
+    private static final long MAX_BULK_BODY_SIZE = 2 * 1024 * 1024; // Upper bound for a bulk request's body, in bytes.
+    private static final int STREAM_FLUSH_SIZE = 8 * 1024; // Bytes of encoded Persons buffered before each write.
+    private static final int STREAM_HAND_OFF_CHUNKS = 8; // Chunks of a streamed page read ahead of the client.
+    private static final long STREAM_WRITE_TIMEOUT_MILLIS = 30000; // Max wait for the client to take a streamed page's next chunk.
+    // Max wait for a client sharing a "/names" stream to take its next chunk, before it's dropped so the others go on.
+    private static final long SHARED_STREAM_WRITE_TIMEOUT_MILLIS = 5000;
+    private static final long WRITE_ACK_TIMEOUT_MILLIS = 5000; // Max wait for a queued write's commit before answering 202.
+    private static final String WRITE_RETRY_AFTER_SECONDS = "1"; // Retry-After sent when the write queue is full.
+    private static final int MAX_SHARED_PAYLOAD_SIZE = 4 * 1024 * 1024; // Larger "/names" payloads are streamed to each client, not shared.
+
+    // Response of the requests answered before going async, already sent.
+    private static final CompletableFuture<Void> SENT = CompletableFuture.completedFuture(null);
+    // Sends responses on the thread completing their work, when there's no response executor.
+    private static final Executor COMPLETING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Router router = createRouter();
+    private final String etagPrefix; // Opening quote and data version epoch shared by all ETags.
+    // Creates the encoders of the "/names" payload built once by the PersonService, see AllNamesEncoder.
+    private final Supplier<AllNamesEncoder> allNamesEncoders = new Supplier<AllNamesEncoder>() {
+        @Override
+        public AllNamesEncoder get() {
+            return new AllNamesEncoder();
+        }
+    };
+    // Last "/names" stream of a payload too large to be kept, joined by identical requests until it's read.
+    private volatile AllNamesStream allNamesStream;
     private PersonService personService;
+    private WriteBehindQueue writeQueue; // Queue writes go through, null to commit them on the request thread.
+    private final Executor responseExecutor; // Sends the responses once the database calls are done.
+    private ScheduledExecutorService writeTimeoutExecutor; // Times out the wait for queued writes' commits.
 
     /**
      * Main constructor for this Handler. It will create a new instance of {@link PersonService} and
@@ -42,266 +148,1234 @@ public class NamesHandler extends BaseHttpHandler {
      * @param context the main Application's {@link Context} instance.
      */
     public NamesHandler(Context context){
-        super(ENDPOINT);
-        personService = new PersonService(context);
+        this(new PersonService(context));
+    }
+
+    /**
+     * Overloaded constructor that receives the {@link PersonService} to work with.
+     *
+     * @param personService the {@link PersonService} handling the Person records.
+     */
+    public NamesHandler(PersonService personService) {
+        this(personService, null, COMPLETING_THREAD);
+    }
+
+    /**
+     * Overloaded constructor that receives the {@link PersonService} to work with, the
+     * {@link WriteBehindQueue} POST, PUT and DELETE requests go through, and the {@link Executor}
+     * sending the responses, e.g. the HTTP server's.
+     *
+     * Writes are then group committed by the queue's writer thread. Requests wait for their write's
+     * commit and are answered as usual, unless they're sent with a "Prefer: respond-async" header, or
+     * the commit takes too long, in which case they're answered right away with 202 Accepted and the
+     * write's status, to be polled at "/names/_writes/{id}".
+     *
+     * @param personService the {@link PersonService} handling the Person records.
+     * @param writeQueue the {@link WriteBehindQueue} applying the writes, null to apply them synchronously.
+     * @param responseExecutor the {@link Executor} sending the responses once the database calls are
+     *                         done, so neither the database executor nor the writer thread wait on a client.
+     */
+    public NamesHandler(PersonService personService, WriteBehindQueue writeQueue, Executor responseExecutor) {
+        super(ENDPOINT, new PersonJsonCodec(GSON_CODEC));
+        registerFormMapper(Person.class, new PersonFormMapper());
+        this.personService = personService;
+        this.writeQueue = writeQueue;
+        this.responseExecutor = responseExecutor;
+        if (writeQueue != null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "names-write-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true); // Timeouts of committed writes aren't kept around
+            writeTimeoutExecutor = executor;
+        }
+        this.etagPrefix = "\"" + personService.getChangeFeed().getEpoch() + "-";
     }
 
     @Override
     public void handle(HttpExchange httpExchange) throws IOException {
-        final HttpRequest httpRequest = new HttpRequest(httpExchange);
-        switch (httpRequest.getRequestMethod()) {
-            case GET: // responds to GET http://ipaddress:5000/names OR GET http://ipaddress:5000/names/{id}
-                handleGetRequest(httpExchange, httpRequest);
-                break;
-            case POST: // responds to POST request to http://ipaddress:5000/names
-                handlePostRequest(httpExchange, httpRequest);
-                break;
-            case PUT: // responds to PUT request to http://ipaddress:5000/names/{id}
-                handlePutRequest(httpExchange, httpRequest);
-                break;
-            case DELETE:
-                // TODO - Handle DELETE request from JS JQuery function call
-                handleDeleteRequest(httpExchange, httpRequest);
-                break;
-            default:
-                httpRequest.getHeaders().set(HEADER_ALLOW, ALLOWED_METHODS);
-                httpExchange.sendResponseHeaders(STATUS_METHOD_NOT_ALLOWED, NO_RESPONSE_LENGTH);
-                break;
-        }
+        dispatch(router, httpExchange, new HttpRequest(httpExchange));
+    }
+
+    /**
+     * Registers this handler's routes, each mapped to the method handling it.
+     *
+     * @return the {@link Router} holding the routes.
+     */
+    private Router createRouter() {
+        return new Router()
+                .add(HttpMethod.GET, ENDPOINT, new AsyncRoute() { // GET http://ipaddress:5000/names
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return doGetAllNamesResponse(exchange, request);
+                    }
+                })
+                .add(HttpMethod.GET, SEARCH_ENDPOINT, new AsyncRoute() { // GET http://ipaddress:5000/names/search?q=
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return doSearchNamesResponse(exchange, request);
+                    }
+                })
+                .add(HttpMethod.GET, ID_ROUTE, new AsyncRoute() { // GET http://ipaddress:5000/names/{id}
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return doGetNameWithIdResponse(exchange, request, match.getInt(0));
+                    }
+                })
+                .add(HttpMethod.GET, WRITE_ROUTE, new Route() { // GET http://ipaddress:5000/names/_writes/{id}
+                    @Override
+                    public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        doGetWriteStatusResponse(exchange, request, match.getInt(0));
+                    }
+                })
+                .add(HttpMethod.POST, ENDPOINT, new AsyncRoute() { // POST http://ipaddress:5000/names
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return handlePostRequest(exchange, request);
+                    }
+                })
+                .add(HttpMethod.POST, BULK_ENDPOINT, new AsyncRoute() { // POST http://ipaddress:5000/names/_bulk
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return handleBulkRequest(exchange, request);
+                    }
+                })
+                .add(HttpMethod.PUT, ID_ROUTE, new AsyncRoute() { // PUT http://ipaddress:5000/names/{id}
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return handlePutRequest(exchange, request, match.getInt(0));
+                    }
+                })
+                .add(HttpMethod.DELETE, ID_ROUTE, new AsyncRoute() { // DELETE http://ipaddress:5000/names/{id}
+                    @Override
+                    public CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                        return handleDeleteRequest(exchange, request, match.getInt(0));
+                    }
+                });
     }
 
     /**
-     * Helper method that decides if this is a "GET ALL" or "GET BY ID" request.
+     * Handles the GET request made to the "/names" endpoint and retrieves all Persons in the system.
+     *
+     * Supports keyset pagination through the optional "after_id" and "limit" query parameters, and
+     * field projection through the optional "fields" comma separated query parameter, e.g.
+     * "/names?after_id=40&limit=20&fields=id,first_name". Both are applied by the SQL query itself.
+     * Sending any of them makes the request paginated, returning at most {@value MAX_PAGE_SIZE}
+     * Persons, even without a limit. Only "/names" without parameters returns all of them.
+     *
+     * Rows are encoded as they're read from the database cursor, and pages too large to be buffered
+     * are sent with chunked transfer encoding while they're read, a few chunks ahead of the client,
+     * so memory use stays flat regardless of the number of Persons stored.
+     *
+     * Responses carry the table's data version as ETag, a client sending it back in If-None-Match
+     * gets a 304 Not Modified without SQLite being queried. The unpaginated payload of all Persons
+     * is encoded once by the {@link PersonService}, away from any client, and kept until the data
+     * version changes: the identical requests received while it's encoded wait for it, then each one
+     * sends it to its own client. Payloads over {@value MAX_SHARED_PAYLOAD_SIZE} bytes are streamed
+     * instead, the identical requests received before the read starts sharing it.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
      * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @return a {@link CompletableFuture} completed once the response is sent.
      * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    private void handleGetRequest(HttpExchange exchange, HttpRequest request) throws IOException {
-        if (request.getRequestPath().equals(ENDPOINT)) {
-            doGetAllNamesResponse(exchange, request);
-        } else {
-           doGetNameWithIdResponse(exchange, request, getFirstPathParameter(request.getRequestPath()));
+    private CompletableFuture<?> doGetAllNamesResponse(final HttpExchange exchange, HttpRequest request) throws IOException {
+        final int afterId; // last id seen by the client, 0 to start from the first Person
+        final int limit; // max number of Persons to return, 0 for all when not paginated
+        final Set<String> fields; // fields to return, null for all
+        try {
+            Map<String, String> parameters = getQueryParameters(request.getRequestQuery());
+            afterId = parseNonNegativeInt(parameters.get(PARAM_AFTER_ID));
+            int requestedLimit = parseNonNegativeInt(parameters.get(PARAM_LIMIT));
+            fields = parseFields(parameters.get(PARAM_FIELDS));
+            boolean paginated = parameters.containsKey(PARAM_AFTER_ID) || parameters.containsKey(PARAM_LIMIT)
+                    || fields != null;
+            limit = !paginated ? 0 : requestedLimit == 0 ? MAX_PAGE_SIZE : Math.min(requestedLimit, MAX_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            // Client sent a malformed query parameter respond with BAD REQUEST
+            sendResponse(exchange, STATUS_BAD_REQUEST, JSON_MIME, JSON_BAD_REQUEST);
+            return SENT;
+        }
+
+        // Read the version before the data, so it's never newer than the data sent along with it
+        final long version = personService.getDataVersion();
+        if (sendNotModified(exchange, etag(version))) {
+            return SENT;
+        }
+
+        if (afterId != 0 || limit != 0 || fields != null) {
+            return writePage(exchange, afterId, limit, fields);
         }
+        CompletableFuture<byte[]> payload = personService.encodeAllPeopleAsync(version, allNamesEncoders);
+        BiFunction<byte[], Throwable, CompletableFuture<Void>> send = new BiFunction<byte[], Throwable, CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> apply(byte[] body, Throwable error) {
+                if (error != null) {
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                }
+                if (body == null) {
+                    return streamAllNames(exchange, version); // Too large to be kept
+                }
+                try {
+                    sendResponse(exchange, STATUS_SUCCESS, JSON_MIME, body);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return SENT;
+            }
+        };
+        // Kept payloads are sent right away, others once encoded, never on the database executor
+        return (payload.isDone() ? payload.handle(send) : payload.handleAsync(send, responseExecutor))
+                .thenCompose(new Function<CompletableFuture<Void>, CompletionStage<Void>>() {
+                    @Override
+                    public CompletionStage<Void> apply(CompletableFuture<Void> sent) {
+                        return sent;
+                    }
+                });
     }
 
     /**
-     * Handles the GET request made to the "/names" endpoint and retrieves all Persons in the system.
+     * Streams the JSON Array of all Persons, too large to be kept, joining the stream of the
+     * identical requests waiting for their read to start, or starting one.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
-     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
-     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     * @param version the data version read before the data.
+     * @return a {@link CompletableFuture} completed once the response is sent.
      */
-    private void doGetAllNamesResponse(HttpExchange exchange, HttpRequest request) throws IOException {
-        String response; // will wold the json response to be sent back to client
-        request.getHeaders().set(CONTENT_TYPE, JSON_MIME); // set response type as JSON
-        response = parseToJson(personService.findAllPeople()); // JSON Array with all Persons available
-        exchange.sendResponseHeaders(STATUS_SUCCESS, response.length()); // Response SUCCESS 200
+    private CompletableFuture<Void> streamAllNames(HttpExchange exchange, long version) {
+        AllNamesStream stream = allNamesStream;
+        if (stream != null && stream.version == version) {
+            CompletableFuture<Void> joined = stream.join(exchange);
+            if (joined != null) {
+                return joined;
+            }
+        }
+        final AllNamesStream started = new AllNamesStream(version);
+        CompletableFuture<Void> response = started.join(exchange);
+        allNamesStream = started;
+        personService.findPeoplePageAsync(0, 0, null, started).handle(new BiFunction<Void, Throwable, Void>() {
+            @Override
+            public Void apply(Void page, Throwable error) {
+                started.end(error);
+                return null;
+            }
+        });
+        return response;
+    }
 
-        // Actually write the json response to the response body.
-        request.getResponseBody().write(response.getBytes());
-        // Close the output stream
-        request.getResponseBody().close();
+    /**
+     * Encodes the JSON Array with the requested page of Persons as each row is read, then sends it
+     * on the response executor.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param afterId last id seen by the client, 0 to start from the first Person.
+     * @param limit max number of Persons to return, 0 for all.
+     * @param fields fields to return, null for all.
+     * @return a {@link CompletableFuture} completed once the page is sent.
+     */
+    private CompletableFuture<Void> writePage(HttpExchange exchange, int afterId, int limit, Set<String> fields) {
+        final PageWriter pageWriter = new PageWriter(exchange, fields);
+        return personService.findPeoplePageAsync(afterId, limit, fields, pageWriter).handle(new BiFunction<Void, Throwable, Void>() {
+            @Override
+            public Void apply(Void page, Throwable error) {
+                pageWriter.end(error);
+                return null;
+            }
+        }).thenComposeAsync(new Function<Void, CompletionStage<Void>>() {
+            @Override
+            public CompletionStage<Void> apply(Void page) {
+                try {
+                    return pageWriter.send();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, responseExecutor);
     }
 
     /**
-     * Handles the GET request made to the "/names/{id}" endpoint. Expects the {id} path parameter
-     * to be of type Integer.
+     * Handles the GET request made to the "/names/search" endpoint and retrieves the Persons whose
+     * names match the "q" query parameter, e.g. "/names/search?q=jo%20do" matches "John Doe".
      *
-     * If the ID is found will retrieve the Person associated to it.
+     * Each word of the query matches names with a word starting with it, through the database's
+     * full-text index. Results are ranked, exact name matches first, then the closest completions,
+     * and paginated through the optional "offset" and "limit" query parameters, bounded so the
+     * search cost stays bounded too. Like "/names", responses carry the data version as ETag.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
      * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @return a {@link CompletableFuture} completed once the response is sent.
      * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    private void doGetNameWithIdResponse(HttpExchange exchange, HttpRequest request, String id) throws IOException {
-        String response; // will wold the json response to be sent back to client
-        request.getHeaders().set(CONTENT_TYPE, JSON_MIME); // set response type as JSON
+    private CompletableFuture<?> doSearchNamesResponse(final HttpExchange exchange, HttpRequest request) throws IOException {
+        final String query; // text to search for
+        final int offset; // matching Persons to skip
+        final int limit; // max number of Persons to return
         try {
-            // Find the requested person by its id
-            Person person = personService.findPersonById(Integer.parseInt(id));
+            Map<String, String> parameters = getQueryParameters(request.getRequestQuery());
+            query = parameters.get(PARAM_QUERY);
+            offset = parseNonNegativeInt(parameters.get(PARAM_OFFSET));
+            String limitValue = parameters.get(PARAM_LIMIT);
+            limit = limitValue == null ? DEFAULT_SEARCH_LIMIT : Math.min(parseNonNegativeInt(limitValue), MAX_SEARCH_LIMIT);
+            if (query == null || offset > MAX_SEARCH_OFFSET) {
+                throw new IllegalArgumentException("Missing query or offset too large");
+            }
+        } catch (IllegalArgumentException e) {
+            // Client sent a malformed query parameter respond with BAD REQUEST
+            sendResponse(exchange, STATUS_BAD_REQUEST, JSON_MIME, JSON_BAD_REQUEST);
+            return SENT;
+        }
+
+        // Read the version before the data, so it's never newer than the data sent along with it
+        if (sendNotModified(exchange, etag(personService.getDataVersion()))) {
+            return SENT;
+        }
+
+        // Encode the JSON Array with the matching Persons as each row is read, then send it
+        final PageWriter pageWriter = new PageWriter(exchange, null);
+        return personService.searchPeopleAsync(query, offset, limit, pageWriter).handle(new BiFunction<Void, Throwable, Boolean>() {
+            @Override
+            public Boolean apply(Void page, Throwable error) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof IllegalArgumentException) {
+                    return false; // The query has no word to search for, nothing was read
+                }
+                pageWriter.end(error); // Other failures are answered by dispatch()
+                return true;
+            }
+        }).thenComposeAsync(new Function<Boolean, CompletionStage<Void>>() {
+            @Override
+            public CompletionStage<Void> apply(Boolean searched) {
+                try {
+                    if (!searched) {
+                        exchange.getResponseHeaders().remove(HEADER_ETAG);
+                        sendResponse(exchange, STATUS_BAD_REQUEST, JSON_MIME, JSON_BAD_REQUEST);
+                        return SENT;
+                    }
+                    return pageWriter.send();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, responseExecutor);
+    }
+
+    /**
+     * Sets the ETag and Cache-Control response headers, then answers with 304 Not Modified if the
+     * client's copy is current.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param etag the resource's current entity tag.
+     * @return true if the 304 Not Modified response was sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private boolean sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        exchange.getResponseHeaders().set(HEADER_ETAG, etag);
+        exchange.getResponseHeaders().set(HEADER_CACHE_CONTROL, CACHE_CONTROL_NO_CACHE); // always revalidate
+        if (isNotModified(exchange, etag)) {
+            sendEmptyResponse(exchange, STATUS_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
 
-            if (person != null) {
-                // person was found let's send the result back
-                response = parseToJson(person);
-                exchange.sendResponseHeaders(STATUS_SUCCESS, response.length());
+    /**
+     * @return the entity tag of a data version, e.g. "1697040000000-42" quotes included.
+     */
+    private String etag(long version) {
+        return etagPrefix + version + "\"";
+    }
+
+    /**
+     * Continuation sending a response once a {@link CompletableFuture} completes, an I/O error failing
+     * the future it returns.
+     */
+    private abstract static class Respond<T> implements Function<T, Void> {
+        @Override
+        public final Void apply(T result) {
+            try {
+                respond(result);
+                return null;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        abstract void respond(T result) throws IOException;
+    }
+
+    /**
+     * Sends a response once the given work is done: right away on the calling thread if it already
+     * is, e.g. a cached Person, on the response executor otherwise, never on the thread completing it.
+     *
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     */
+    private <T> CompletableFuture<Void> respond(CompletableFuture<T> work, Respond<T> respond) {
+        return work.isDone() ? work.thenApply(respond) : work.thenApplyAsync(respond, responseExecutor);
+    }
+
+    /**
+     * Encodes the payload of all Persons, the JSON array sent by "/names", for the
+     * {@link PersonService} to build once on the database executor. Gives up on payloads growing
+     * over MAX_SHARED_PAYLOAD_SIZE bytes, which are streamed to each client instead.
+     */
+    private static final class AllNamesEncoder implements PayloadEncoder<Person> {
+        private final Utf8JsonWriter writer = new Utf8JsonWriter(STREAM_FLUSH_SIZE);
+        private boolean first = true;
+
+        private AllNamesEncoder() {
+            writer.writeByte('[');
+        }
+
+        @Override
+        public void accept(Person person) throws IOException {
+            if (!first) writer.writeByte(',');
+            first = false;
+            PersonJsonCodec.writePerson(writer, person, null);
+            if (writer.size() > MAX_SHARED_PAYLOAD_SIZE) {
+                throw new PayloadTooLargeException("Payload over " + MAX_SHARED_PAYLOAD_SIZE + " bytes"); // Stops the read
+            }
+        }
+
+        @Override
+        public byte[] finish() {
+            writer.writeByte(']');
+            return writer.toByteArray();
+        }
+    }
+
+    /**
+     * Starts a chunked response on the response executor, which sends the chunks handed over to it
+     * by the database executor while the next ones are read, at most STREAM_HAND_OFF_CHUNKS ahead of
+     * the client. Sends it right away instead when responses are sent on the completing thread.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param writeTimeoutMillis the max wait for the client to take the next chunk.
+     * @return the {@link ChunkedStream} the response's chunks are written to.
+     * @throws IOException thrown if the response can't be started right away.
+     */
+    private ChunkedStream startStreaming(final HttpExchange exchange, long writeTimeoutMillis) throws IOException {
+        if (responseExecutor == COMPLETING_THREAD) {
+            OutputStream responseBody = startChunkedResponse(exchange, STATUS_SUCCESS, JSON_MIME); // Response SUCCESS 200
+            return new ChunkedStream(responseBody, new CompletableFuture<Void>()); // Sent once closed
+        }
+        final HandOffOutputStream handOff = new HandOffOutputStream(STREAM_HAND_OFF_CHUNKS, writeTimeoutMillis);
+        CompletableFuture<Void> sent = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                boolean sent = false;
+                try {
+                    OutputStream responseBody = startChunkedResponse(exchange, STATUS_SUCCESS, JSON_MIME); // Response SUCCESS 200
+                    handOff.drainTo(responseBody);
+                    responseBody.close();
+                    sent = true;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    if (!sent) {
+                        handOff.cancel(); // Fails the read's next chunk
+                    }
+                }
+            }
+        }, responseExecutor);
+        return new ChunkedStream(handOff, sent);
+    }
+
+    /**
+     * A chunked response being sent, see {@link #startStreaming(HttpExchange, long)}.
+     */
+    private static final class ChunkedStream {
+        private final OutputStream os; // Where the chunks go, a HandOffOutputStream unless sent right away.
+        private final CompletableFuture<Void> sent; // Completed once the response is sent.
+
+        private ChunkedStream(OutputStream os, CompletableFuture<Void> sent) {
+            this.os = os;
+            this.sent = sent;
+        }
+
+        /**
+         * Ends the response, once its last chunk was written.
+         */
+        private void close() throws IOException {
+            os.close();
+            if (!(os instanceof HandOffOutputStream)) {
+                sent.complete(null);
+            }
+        }
+
+        /**
+         * Abandons the response, nothing more is sent.
+         *
+         * @param cause the failure it's abandoned for.
+         */
+        private void cancel(Throwable cause) {
+            if (os instanceof HandOffOutputStream) {
+                ((HandOffOutputStream) os).cancel(); // Fails the response on the response executor
             } else {
-                // person was not found let's respond with 404 Not Found
-                HttpResponse httpResponse = new HttpResponse(STATUS_NOT_FOUND, MESSAGE_NOT_FOUND);
-                response = parseToJson(httpResponse);
-                exchange.sendResponseHeaders(STATUS_NOT_FOUND, response.length());
+                sent.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Encodes a page of Persons as a JSON array while they are read on the database executor,
+     * buffering up to STREAM_FLUSH_SIZE bytes. A page fitting in the buffer is sent once read, with
+     * its Content-Length. A larger one is streamed in chunks of STREAM_FLUSH_SIZE bytes, see
+     * {@link #startStreaming(HttpExchange, long)}.
+     */
+    private final class PageWriter implements RecordConsumer<Person> {
+        private final HttpExchange exchange;
+        private final Set<String> fields; // fields to write, null for all
+        private final Utf8JsonWriter writer = new Utf8JsonWriter(STREAM_FLUSH_SIZE + STREAM_FLUSH_SIZE / 4);
+        private ChunkedStream stream; // Where the streamed page's chunks go, null while it's buffered.
+        private boolean first = true;
+
+        private PageWriter(HttpExchange exchange, Set<String> fields) {
+            this.exchange = exchange;
+            this.fields = fields;
+            writer.writeByte('[');
+        }
+
+        @Override
+        public void accept(Person person) throws IOException {
+            if (!first) writer.writeByte(',');
+            first = false;
+            PersonJsonCodec.writePerson(writer, person, fields);
+            if (writer.size() >= STREAM_FLUSH_SIZE) {
+                if (stream == null) {
+                    stream = startStreaming(exchange, STREAM_WRITE_TIMEOUT_MILLIS);
+                }
+                writer.writeTo(stream.os);
+                writer.reset();
+            }
+        }
+
+        /**
+         * Ends the page once read, on the database executor: writes the end of the array, handing it
+         * over if the page is streamed. Abandons the page instead if the read failed.
+         *
+         * @param error the read's failure, null if it succeeded.
+         * @throws CompletionException wrapping the read's failure, or the one ending the page.
+         */
+        private void end(Throwable error) {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                try {
+                    writer.writeByte(']');
+                    if (stream != null) {
+                        writer.writeTo(stream.os);
+                        stream.close();
+                    }
+                    return;
+                } catch (IOException e) {
+                    cause = e;
+                }
             }
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
+            if (stream != null) {
+                stream.cancel(cause);
+            }
+            throw new CompletionException(cause);
+        }
 
-            // Close the output stream
-            request.getResponseBody().close();
-        } catch (NumberFormatException e) {
-            // Client requested an unhandled GET PATH parameter respond with BAD REQUEST
-            HttpResponse httpResponse = new HttpResponse(STATUS_BAD_REQUEST, MESSAGE_BAD_REQUEST);
-            response = parseToJson(httpResponse);
-            exchange.sendResponseHeaders(STATUS_BAD_REQUEST, response.length());
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
-            // Close the output stream
-            request.getResponseBody().close();
-            // Log error to console
-            e.printStackTrace();
+        /**
+         * Sends the ended page, on the response executor: the buffered page with its Content-Length,
+         * while a streamed one is already on its way.
+         *
+         * @return a {@link CompletableFuture} completed once the page is sent.
+         */
+        private CompletableFuture<Void> send() throws IOException {
+            if (stream != null) {
+                return stream.sent;
+            }
+            OutputStream responseBody = startFixedLengthResponse(exchange, STATUS_SUCCESS, JSON_MIME, writer.size());
+            writer.writeTo(responseBody);
+            responseBody.close();
+            return SENT;
         }
     }
 
+    /**
+     * Streams the JSON array of all Persons, too large to be kept, to every request joining it
+     * before its read starts on the database executor, each one through its own
+     * {@link ChunkedStream}. They're sent at the pace of the slowest client, one not taking a chunk
+     * within SHARED_STREAM_WRITE_TIMEOUT_MILLIS is dropped so the others go on. The read stops once
+     * every client is gone.
+     */
+    private final class AllNamesStream implements RecordConsumer<Person> {
+        private final long version; // data version read before the data
+        private final List<HttpExchange> exchanges = new ArrayList<>(); // joined requests, guarded by this
+        private final List<CompletableFuture<Void>> responses = new ArrayList<>(); // their responses, guarded by this
+        private final List<ChunkedStream> streams = new ArrayList<>(); // their streams still being sent, null if dropped
+        private final Utf8JsonWriter writer = new Utf8JsonWriter(STREAM_FLUSH_SIZE + STREAM_FLUSH_SIZE / 4);
+        private boolean started; // set once the read started, guarded by this
+        private boolean first = true;
+
+        private AllNamesStream(long version) {
+            this.version = version;
+            writer.writeByte('[');
+        }
+
+        /**
+         * Joins the stream, unless its read already started.
+         *
+         * @param exchange the {@link HttpExchange} containing the Response instance.
+         * @return a {@link CompletableFuture} completed once the response is sent, null if too late.
+         */
+        private synchronized CompletableFuture<Void> join(HttpExchange exchange) {
+            if (started) {
+                return null;
+            }
+            CompletableFuture<Void> response = new CompletableFuture<>();
+            exchanges.add(exchange);
+            responses.add(response);
+            return response;
+        }
+
+        @Override
+        public void accept(Person person) throws IOException {
+            start();
+            if (!first) writer.writeByte(',');
+            first = false;
+            PersonJsonCodec.writePerson(writer, person, null);
+            if (writer.size() >= STREAM_FLUSH_SIZE) {
+                writeChunk();
+                writer.reset();
+            }
+        }
+
+        /**
+         * Starts every joined request's response, once, on the database executor.
+         */
+        private void start() {
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+            for (int i = 0; i < exchanges.size(); i++) {
+                final CompletableFuture<Void> response = responses.get(i);
+                try {
+                    ChunkedStream stream = startStreaming(exchanges.get(i), SHARED_STREAM_WRITE_TIMEOUT_MILLIS);
+                    stream.sent.whenComplete(new BiConsumer<Void, Throwable>() {
+                        @Override
+                        public void accept(Void sent, Throwable error) {
+                            if (error == null) {
+                                response.complete(null);
+                            } else {
+                                response.completeExceptionally(error);
+                            }
+                        }
+                    });
+                    streams.add(stream);
+                } catch (IOException e) {
+                    response.completeExceptionally(e);
+                    streams.add(null);
+                }
+            }
+        }
+
+        /**
+         * Writes the buffered chunk to every client still there, dropping those failing it.
+         *
+         * @throws IOException if every client is gone, which stops the read.
+         */
+        private void writeChunk() throws IOException {
+            boolean written = false;
+            for (int i = 0; i < streams.size(); i++) {
+                ChunkedStream stream = streams.get(i);
+                if (stream == null) {
+                    continue;
+                }
+                try {
+                    writer.writeTo(stream.os);
+                    written = true;
+                } catch (IOException e) {
+                    stream.cancel(e);
+                    streams.set(i, null);
+                }
+            }
+            if (!written) {
+                throw new IOException("Every client sharing the stream is gone");
+            }
+        }
+
+        /**
+         * Ends the stream once read, on the database executor: writes the end of the array to every
+         * client still there. Abandons every response instead if the read failed.
+         *
+         * @param error the read's failure, null if it succeeded.
+         */
+        private void end(Throwable error) {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause != null) {
+                for (ChunkedStream stream : streams) {
+                    if (stream != null) {
+                        stream.cancel(cause);
+                    }
+                }
+                for (CompletableFuture<Void> response : responses) {
+                    response.completeExceptionally(cause); // Those never started too, e.g. the read was refused
+                }
+                return;
+            }
+            start(); // Nothing was read if the table was emptied meanwhile
+            writer.writeByte(']');
+            try {
+                writeChunk();
+            } catch (IOException e) {
+                return; // Every client is gone, their responses already failed
+            }
+            for (ChunkedStream stream : streams) {
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        stream.cancel(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses an optional non negative integer query parameter.
+     *
+     * @param value the raw parameter value, may be null.
+     * @return the parsed value, 0 if the parameter was not sent.
+     * @throws IllegalArgumentException if the value is not a non negative integer.
+     */
+    private static int parseNonNegativeInt(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int parsed = Integer.parseInt(value); // NumberFormatException is an IllegalArgumentException
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses the optional comma separated "fields" query parameter.
+     *
+     * @param value the raw parameter value, may be null.
+     * @return the requested {@link Person#SERIALIZED_FIELDS}, null if the parameter was not sent.
+     * @throws IllegalArgumentException if a field is not a {@link Person} field.
+     */
+    private static Set<String> parseFields(String value) {
+        if (value == null) {
+            return null;
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : value.split(",")) {
+            if (!Person.SERIALIZED_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field " + field);
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * Handles the GET request made to the "/names/{id}" endpoint.
+     *
+     * If the ID is found will retrieve the Person associated to it.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param id the {id} path parameter.
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private CompletableFuture<?> doGetNameWithIdResponse(final HttpExchange exchange, HttpRequest request, int id) throws IOException {
+        // The client's copy is current, no need to look the person up
+        if (sendNotModified(exchange, etag(personService.getPersonVersion(id)))) {
+            return SENT;
+        }
+
+        // Find the requested person by its id
+        return respond(personService.findPersonByIdAsync(id), new Respond<Person>() {
+            @Override
+            void respond(Person person) throws IOException {
+                byte[] response; // will wold the json response to be sent back to client
+                int status; // the response's status code
+
+                if (person != null) {
+                    // person was found let's send the result back
+                    response = toJson(person);
+                    status = STATUS_SUCCESS;
+                } else {
+                    // person was not found let's respond with 404 Not Found
+                    response = JSON_NOT_FOUND;
+                    status = STATUS_NOT_FOUND;
+                    exchange.getResponseHeaders().remove(HEADER_ETAG);
+                }
+                // Actually write the json response, framed with its byte length
+                sendResponse(exchange, status, JSON_MIME, response);
+            }
+        });
+    }
+
     /**
      * Handles the POST request made to the "/names" endpoint to create a new Person record.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
      * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @return a {@link CompletableFuture} completed once the response is sent.
      * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    private void handlePostRequest(HttpExchange exchange, HttpRequest request) throws IOException {
-        request.getHeaders().set(CONTENT_TYPE, JSON_MIME); // set response type as JSON
+    private CompletableFuture<?> handlePostRequest(final HttpExchange exchange, HttpRequest request) throws IOException {
+        // Retrieve POST's form or JSON body.
+        Person person;
+        try {
+            person = parseBody(request, Person.class);
+        } catch (BodyParseException e) {
+            sendBodyParseError(exchange, request, e);
+            return SENT;
+        }
 
-        // Retrieve POST's body parameters.
-        Map<String, String> parameters = getBodyParameters(request.getRequestBody());
+        if (writeQueue != null) {
+            return submitWrite(exchange, new BatchOperation<>(BatchOperation.Type.INSERT,
+                    new Person(person.getFirstName(), person.getLastName())));
+        }
 
         // Save new Person to the database.
-        long id = personService.addNewPerson(parameters.get(Person.SERIALIZED_FIRST_NAME),
-                parameters.get(Person.SERIALIZED_LAST_NAME));
+        return respond(personService.addNewPersonAsync(person.getFirstName(), person.getLastName()), new Respond<Long>() {
+            @Override
+            void respond(Long id) throws IOException {
+                HttpResponse httpResponse; // Holds the result Response to sent back to client.
+                String message; // Holds the result message of the operation.
+                byte[] response; // Holds the raw response to be sent back.
+                int status; // Holds the response's status code.
+
+                if(id > 0) { // We got a positive ID, Person was created successfully
+                    message = "New person added successfully";
+                    httpResponse = new HttpResponse(STATUS_SUCCESS, message);
+                    response = toJson(httpResponse);
+                    status = STATUS_SUCCESS;
+                } else { // We got a negative ID, an error happened and Person record was not created.
+                    message = "An error occurred trying to add new Person.";
+                    httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
+                    response = toJson(httpResponse);
+                    status = STATUS_INTERNAL_SERVER_ERROR;
+                }
+
+                // Actually write the json response, framed with its byte length
+                sendResponse(exchange, status, JSON_MIME, response);
+            }
+        });
+    }
+
+    /**
+     * Answers a request whose body could not be parsed with the exception's status code.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param e the {@link BodyParseException} thrown while parsing the body.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private void sendBodyParseError(HttpExchange exchange, HttpRequest request, BodyParseException e) throws IOException {
+        sendResponse(exchange, e.getStatus(), JSON_MIME, toJson(new HttpResponse(e.getStatus(), e.getMessage())));
+    }
 
-        HttpResponse httpResponse; // Holds the result Response to sent back to client.
-        String message; // Holds the result message of the operation.
-        String response; // Holds the raw response to be sent back.
+    /**
+     * Handles the POST request made to the "/names/_bulk" endpoint. Expects a JSON array of
+     * {@link BulkOperation}s, e.g. [{"op": "create", "first_name": "Jane", "last_name": "Doe"},
+     * {"op": "update", "id": 3, ...}, {"op": "delete", "id": 4}].
+     *
+     * All valid operations are applied in a single SQLite transaction and a JSON array with one
+     * {@link BulkResult} per received operation, in the same order, is sent back. The body is parsed
+     * one operation at a time, bodies with more than {@value MAX_BULK_OPERATIONS} operations or
+     * {@value MAX_BULK_BODY_SIZE} bytes being refused with 413 Payload Too Large as soon as read.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private CompletableFuture<?> handleBulkRequest(final HttpExchange exchange, HttpRequest request) throws IOException {
+        final List<BulkOperation> items;
+        try {
+            items = parseBodyArray(request, BulkOperation.class, MAX_BULK_OPERATIONS, MAX_BULK_BODY_SIZE);
+        } catch (BodyParseException e) {
+            // Client sent an empty, malformed or too large body
+            sendBodyParseError(exchange, request, e);
+            return SENT;
+        }
 
-        if(id > 0) { // We got a positive ID, Person was created successfully
-            message = "New person added successfully";
-            httpResponse = new HttpResponse(STATUS_SUCCESS, message);
-            response = parseToJson(httpResponse);
-            exchange.sendResponseHeaders(STATUS_SUCCESS, response.length());
-        } else { // We got a negative ID, an error happened and Person record was not created.
-            message = "An error occurred trying to add new Person.";
-            httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
-            response = parseToJson(httpResponse);
-            exchange.sendResponseHeaders(STATUS_INTERNAL_SERVER_ERROR, response.length());
+        // Map the valid items to repository operations, rejecting the invalid ones right away
+        final BulkResult[] results = new BulkResult[items.size()];
+        List<BatchOperation<Person>> operations = new ArrayList<>(items.size());
+        final int[] itemIndexes = new int[items.size()]; // index of the item each operation came from
+        for (int i = 0; i < results.length; i++) {
+            BulkOperation item = items.get(i);
+            BatchOperation<Person> operation = toBatchOperation(item);
+            if (operation == null) {
+                results[i] = new BulkResult(item == null ? null : item.getOp(),
+                        item == null ? 0 : item.getId(), STATUS_BAD_REQUEST, MESSAGE_BAD_REQUEST);
+            } else {
+                itemIndexes[operations.size()] = i;
+                operations.add(operation);
+            }
         }
 
-        // Actually write the json response to the response body.
-        request.getResponseBody().write(response.getBytes());
-        // Close the output stream
-        request.getResponseBody().close();
+        // Apply every valid operation in a single transaction
+        return respond(personService.applyBatchAsync(operations), new Respond<long[]>() {
+            @Override
+            void respond(long[] batchResults) throws IOException {
+                for (int j = 0; j < batchResults.length; j++) {
+                    BulkOperation item = items.get(itemIndexes[j]);
+                    long result = batchResults[j];
+                    if (BulkOperation.OP_CREATE.equals(item.getOp())) {
+                        results[itemIndexes[j]] = result > 0
+                                ? new BulkResult(item.getOp(), result, STATUS_SUCCESS, "New person added successfully")
+                                : new BulkResult(item.getOp(), 0, STATUS_INTERNAL_SERVER_ERROR, "An error occurred trying to add new Person.");
+                    } else if (result > 0) {
+                        results[itemIndexes[j]] = new BulkResult(item.getOp(), item.getId(), STATUS_SUCCESS,
+                                BulkOperation.OP_UPDATE.equals(item.getOp()) ? "Person updated successfully." : "Person deleted successfully.");
+                    } else if (result < 0) {
+                        results[itemIndexes[j]] = new BulkResult(item.getOp(), item.getId(), STATUS_INTERNAL_SERVER_ERROR,
+                                BulkOperation.OP_UPDATE.equals(item.getOp()) ? "An error occurred trying to update Person." : "An error occurred trying to delete Person.");
+                    } else {
+                        results[itemIndexes[j]] = new BulkResult(item.getOp(), item.getId(), STATUS_NOT_FOUND, MESSAGE_NOT_FOUND);
+                    }
+                }
+
+                // Actually write the json response, framed with its byte length
+                sendResponse(exchange, STATUS_SUCCESS, JSON_MIME, toJson(results));
+            }
+        });
+    }
+
+    /**
+     * Maps a received {@link BulkOperation} to the {@link BatchOperation} applied by the repository.
+     *
+     * @param item the {@link BulkOperation} received, may be null.
+     * @return the matching {@link BatchOperation}, null if the item is not valid.
+     */
+    private static BatchOperation<Person> toBatchOperation(BulkOperation item) {
+        if (item == null || item.getOp() == null) {
+            return null;
+        }
+        switch (item.getOp()) {
+            case BulkOperation.OP_CREATE:
+                return new BatchOperation<>(BatchOperation.Type.INSERT,
+                        new Person(item.getFirstName(), item.getLastName()));
+            case BulkOperation.OP_UPDATE:
+                return item.getId() <= 0 ? null : new BatchOperation<>(BatchOperation.Type.UPDATE,
+                        new Person(item.getId(), item.getFirstName(), item.getLastName()));
+            case BulkOperation.OP_DELETE:
+                return item.getId() <= 0 ? null : new BatchOperation<>(BatchOperation.Type.DELETE,
+                        new Person(item.getId(), null, null));
+            default:
+                return null;
+        }
     }
 
     /**
-     * Handles the PUT request made to the "/names/{id}" endpoint. Expects the {id} path parameter.
+     * Handles the PUT request made to the "/names/{id}" endpoint.
      *
      * If the ID is found, the Person associated to it will be updated with the provided values.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
      * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param id the {id} path parameter.
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private CompletableFuture<?> handlePutRequest(final HttpExchange exchange, HttpRequest request, final int id) throws IOException {
+        // Retrieve PUT's form or JSON body.
+        Person person;
+        try {
+            person = parseBody(request, Person.class);
+        } catch (BodyParseException e) {
+            sendBodyParseError(exchange, request, e);
+            return SENT;
+        }
+        final String firstName = person.getFirstName();
+        final String lastName = person.getLastName();
+
+        if (writeQueue != null) {
+            // The write's result tells whether the person exists, no need to look it up
+            return submitWrite(exchange, new BatchOperation<>(BatchOperation.Type.UPDATE, new Person(id, firstName, lastName)));
+        }
+
+        // Look the person up, then update it if found, null standing for not found
+        return respond(personService.findPersonByIdAsync(id).thenCompose(new Function<Person, CompletionStage<Boolean>>() {
+            @Override
+            public CompletionStage<Boolean> apply(Person found) {
+                return found == null ? CompletableFuture.<Boolean>completedFuture(null)
+                        : personService.updatePersonAsync(id, firstName, lastName);
+            }
+        }), new Respond<Boolean>() {
+            @Override
+            void respond(Boolean updated) throws IOException {
+                byte[] response; // will wold the json response to be sent back to client
+                HttpResponse httpResponse; // Holds the result Response to sent back to client.
+                String message; // Holds the result message of the operation.
+                int status; // the response's status code
+
+                if (updated != null) {
+                    if(updated) {
+                        message = "Person updated successfully.";
+                        httpResponse = new HttpResponse(STATUS_SUCCESS, message);
+                        response = toJson(httpResponse);
+                        status = STATUS_SUCCESS;
+                    } else {
+                        message = "An error occurred trying to update Person.";
+                        httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
+                        response = toJson(httpResponse);
+                        status = STATUS_INTERNAL_SERVER_ERROR;
+                    }
+                } else {
+                    // person was not found let's respond with 404 Not Found
+                    response = JSON_NOT_FOUND;
+                    status = STATUS_NOT_FOUND;
+                }
+                // Actually write the json response, framed with its byte length
+                sendResponse(exchange, status, JSON_MIME, response);
+            }
+        });
+    }
+
+    /**
+     * Handles the DELETE request made to the "/names/{id}" endpoint.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param id the {id} path parameter.
+     * @return a {@link CompletableFuture} completed once the response is sent.
      * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    private void handlePutRequest(HttpExchange exchange, HttpRequest request) throws IOException {
-        String response; // will wold the json response to be sent back to client
-        HttpResponse httpResponse; // Holds the result Response to sent back to client.
-        String message; // Holds the result message of the operation.
-        request.getHeaders().set(CONTENT_TYPE, JSON_MIME); // set response type as JSON
+    private CompletableFuture<?> handleDeleteRequest(final HttpExchange exchange, HttpRequest request, final int id) throws IOException {
+        if (writeQueue != null) {
+            // The write's result tells whether the person exists, no need to look it up
+            return submitWrite(exchange, new BatchOperation<>(BatchOperation.Type.DELETE, new Person(id, null, null)));
+        }
 
-        Map<String, String> parameters = getBodyParameters(request.getRequestBody());
-        String firstName = parameters.get(Person.SERIALIZED_FIRST_NAME);
-        String lastName = parameters.get(Person.SERIALIZED_LAST_NAME);
+        // Look the person up, then delete it if found, null standing for not found
+        return respond(personService.findPersonByIdAsync(id).thenCompose(new Function<Person, CompletionStage<Boolean>>() {
+            @Override
+            public CompletionStage<Boolean> apply(Person found) {
+                return found == null ? CompletableFuture.<Boolean>completedFuture(null)
+                        : personService.deletePersonAsync(id);
+            }
+        }), new Respond<Boolean>() {
+            @Override
+            void respond(Boolean deleted) throws IOException {
+                byte[] response; // will wold the json response to be sent back to client
+                HttpResponse httpResponse; // Holds the result Response to sent back to client.
+                String message; // Holds the result message of the operation.
+                int status; // the response's status code
 
-        try {
-            int id = Integer.parseInt(getFirstPathParameter(request.getRequestPath()));
-            if (personService.findPersonById(id) != null) {
-                if(personService.updatePerson(id, firstName, lastName)) {
-                    message = "Person updated successfully.";
-                    httpResponse = new HttpResponse(STATUS_SUCCESS, message);
-                    response = parseToJson(httpResponse);
-                    exchange.sendResponseHeaders(STATUS_SUCCESS, response.length());
+                if (deleted != null) {
+                    if(deleted) {
+                        message = "Person deleted successfully.";
+                        httpResponse = new HttpResponse(STATUS_SUCCESS, message);
+                        response = toJson(httpResponse);
+                        status = STATUS_SUCCESS;
+                    } else {
+                        message = "An error occurred trying to update Person.";
+                        httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
+                        response = toJson(httpResponse);
+                        status = STATUS_INTERNAL_SERVER_ERROR;
+                    }
                 } else {
-                    message = "An error occurred trying to update Person.";
-                    httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
-                    response = parseToJson(httpResponse);
-                    exchange.sendResponseHeaders(STATUS_INTERNAL_SERVER_ERROR, response.length());
+                    // person was not found let's respond with 404 Not Found
+                    response = JSON_NOT_FOUND;
+                    status = STATUS_NOT_FOUND;
                 }
-            } else {
-                // person was not found let's respond with 404 Not Found
-                httpResponse = new HttpResponse(STATUS_NOT_FOUND, MESSAGE_NOT_FOUND);
-                response = parseToJson(httpResponse);
-                exchange.sendResponseHeaders(STATUS_NOT_FOUND, response.length());
+                // Actually write the json response, framed with its byte length
+                sendResponse(exchange, status, JSON_MIME, response);
             }
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
+        });
+    }
+
+    /**
+     * Queues a write on the {@link WriteBehindQueue}, then answers with its result once committed,
+     * or with 202 Accepted and its {@link WriteStatus} if the client prefers not to wait, or the
+     * commit takes longer than {@value WRITE_ACK_TIMEOUT_MILLIS} ms. A full queue is answered with
+     * 503 Service Unavailable.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param operation the {@link BatchOperation} to apply.
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private CompletableFuture<?> submitWrite(final HttpExchange exchange, BatchOperation<Person> operation) throws IOException {
+        final PendingWrite write = writeQueue.submit(operation);
+        if (write == null) {
+            exchange.getResponseHeaders().set(HEADER_RETRY_AFTER, WRITE_RETRY_AFTER_SECONDS);
+            sendResponse(exchange, STATUS_SERVICE_UNAVAILABLE, JSON_MIME,
+                    toJson(new HttpResponse(STATUS_SERVICE_UNAVAILABLE, "Too many pending writes.")));
+            return SENT;
+        }
+
+        if (prefersRespondAsync(exchange)) {
+            sendWriteResponse(exchange, write, true);
+            return SENT;
+        }
 
-            // Close the output stream
-            request.getResponseBody().close();
-        } catch (NumberFormatException e) {
-            // Client requested an unhandled GET PATH parameter respond with BAD REQUEST
-            httpResponse = new HttpResponse(STATUS_BAD_REQUEST, MESSAGE_BAD_REQUEST);
-            response = parseToJson(httpResponse); // Prepare Response message
-            exchange.sendResponseHeaders(STATUS_BAD_REQUEST, response.length()); // Send Headers
+        // Answered once committed, or once the timeout is over, whichever comes first. The timeout
+        // completes a copy of the write's completion, so it's never seen as committed by others.
+        final CompletableFuture<PendingWrite> acknowledged = write.getCompletion().thenApply(new Function<PendingWrite, PendingWrite>() {
+            @Override
+            public PendingWrite apply(PendingWrite committed) {
+                return committed;
+            }
+        });
+        final ScheduledFuture<?> timeout = writeTimeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                acknowledged.complete(write);
+            }
+        }, WRITE_ACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        // Answered on the response executor, so neither the writer thread nor the timeout one wait on a client
+        return acknowledged.thenApplyAsync(new Respond<PendingWrite>() {
+            @Override
+            void respond(PendingWrite acknowledgedWrite) throws IOException {
+                timeout.cancel(false);
+                sendWriteResponse(exchange, acknowledgedWrite, false);
+            }
+        }, responseExecutor);
+    }
 
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
-            // Close the output stream
-            request.getResponseBody().close();
-            // Log error to console
-            e.printStackTrace();
+    /**
+     * Answers a queued write's request with its result if it's no longer pending, with 202
+     * Accepted, its Location and {@link WriteStatus} otherwise.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param write the {@link PendingWrite} to answer with.
+     * @param respondAsync whether the client sent a "Prefer: respond-async" header.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private void sendWriteResponse(HttpExchange exchange, PendingWrite write, boolean respondAsync) throws IOException {
+        if (write.getState() == PendingWrite.State.PENDING) {
+            if (respondAsync) {
+                exchange.getResponseHeaders().set(HEADER_PREFERENCE_APPLIED, PREFER_RESPOND_ASYNC);
+            }
+            exchange.getResponseHeaders().set(HEADER_LOCATION, WRITES_ENDPOINT + "/" + write.getId());
+            sendResponse(exchange, STATUS_ACCEPTED, JSON_MIME, toJson(toWriteStatus(write)));
+        } else {
+            int status = getWriteStatusCode(write);
+            sendResponse(exchange, status, JSON_MIME, toJson(new HttpResponse(status, getWriteMessage(write))));
         }
     }
 
     /**
-     * Handles the PUT request made to the "/names/{id}" endpoint. Expects the {id} path parameter.
+     * Handles the GET request made to the "/names/_writes/{id}" endpoint, answering with the
+     * {@link WriteStatus} of a write queued by an earlier POST, PUT or DELETE request.
      *
      * @param exchange the {@link HttpExchange} containing the Response instance.
      * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param id the {id} path parameter, the write's id.
      * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    private void handleDeleteRequest(HttpExchange exchange, HttpRequest request) throws IOException {
-        String response; // will wold the json response to be sent back to client
-        HttpResponse httpResponse; // Holds the result Response to sent back to client.
-        String message; // Holds the result message of the operation.
-        request.getHeaders().set(CONTENT_TYPE, JSON_MIME); // set response type as JSON
-        try {
-            int id = Integer.parseInt(getFirstPathParameter(request.getRequestPath()));
-            if (personService.findPersonById(id) != null) {
-                if(personService.deletePerson(id)) {
-                    message = "Person deleted successfully.";
-                    httpResponse = new HttpResponse(STATUS_SUCCESS, message);
-                    response = parseToJson(httpResponse);
-                    exchange.sendResponseHeaders(STATUS_SUCCESS, response.length());
-                } else {
-                    message = "An error occurred trying to update Person.";
-                    httpResponse = new HttpResponse(STATUS_INTERNAL_SERVER_ERROR, message);
-                    response = parseToJson(httpResponse);
-                    exchange.sendResponseHeaders(STATUS_INTERNAL_SERVER_ERROR, response.length());
+    private void doGetWriteStatusResponse(HttpExchange exchange, HttpRequest request, int id) throws IOException {
+        PendingWrite write = writeQueue == null ? null : writeQueue.find(id);
+        if (write == null) {
+            // unknown, or too old to be tracked anymore, let's respond with 404 Not Found
+            sendResponse(exchange, STATUS_NOT_FOUND, JSON_MIME, JSON_NOT_FOUND);
+            return;
+        }
+        sendResponse(exchange, STATUS_SUCCESS, JSON_MIME, toJson(toWriteStatus(write)));
+    }
+
+    /**
+     * @return whether the request carries a "Prefer: respond-async" header.
+     */
+    private static boolean prefersRespondAsync(HttpExchange exchange) {
+        List<String> values = exchange.getRequestHeaders().get(HEADER_PREFER);
+        if (values != null) {
+            for (String value : values) {
+                for (String preference : value.split(",")) {
+                    if (preference.trim().equalsIgnoreCase(PREFER_RESPOND_ASYNC)) {
+                        return true;
+                    }
                 }
-            } else {
-                // person was not found let's respond with 404 Not Found
-                httpResponse = new HttpResponse(STATUS_NOT_FOUND, MESSAGE_NOT_FOUND);
-                response = parseToJson(httpResponse);
-                exchange.sendResponseHeaders(STATUS_NOT_FOUND, response.length());
-            }
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
-
-            // Close the output stream
-            request.getResponseBody().close();
-        } catch (NumberFormatException e) {
-            // Client requested an unhandled GET PATH parameter respond with BAD REQUEST
-            httpResponse = new HttpResponse(STATUS_BAD_REQUEST, MESSAGE_BAD_REQUEST);
-            response = parseToJson(httpResponse); // Prepare Response message
-            exchange.sendResponseHeaders(STATUS_BAD_REQUEST, response.length()); // Send Headers
-            // Actually write the json response to the response body.
-            request.getResponseBody().write(response.getBytes());
-            // Close the output stream
-            request.getResponseBody().close();
-            // Log error to console
-            e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    private static WriteStatus toWriteStatus(PendingWrite write) {
+        BatchOperation<Person> operation = write.getOperation();
+        String op;
+        switch (operation.getType()) {
+            case INSERT:
+                op = BulkOperation.OP_CREATE;
+                break;
+            case UPDATE:
+                op = BulkOperation.OP_UPDATE;
+                break;
+            default:
+                op = BulkOperation.OP_DELETE;
+                break;
+        }
+        long id = operation.getType() == BatchOperation.Type.INSERT ? Math.max(write.getResult(), 0) : operation.getRecord().getId();
+        switch (write.getState()) {
+            case PENDING:
+                return new WriteStatus(write.getId(), op, WriteStatus.STATUS_PENDING, id, STATUS_ACCEPTED, "Write queued.");
+            case APPLIED:
+                return new WriteStatus(write.getId(), op, WriteStatus.STATUS_APPLIED, id, getWriteStatusCode(write), getWriteMessage(write));
+            default:
+                return new WriteStatus(write.getId(), op, WriteStatus.STATUS_FAILED, id, getWriteStatusCode(write), getWriteMessage(write));
+        }
+    }
+
+    /**
+     * @return the status code the write's request would have been answered with if applied
+     * synchronously, the write must not be pending.
+     */
+    private static int getWriteStatusCode(PendingWrite write) {
+        if (write.getState() == PendingWrite.State.FAILED) {
+            return STATUS_INTERNAL_SERVER_ERROR;
+        } else if (write.getResult() > 0) {
+            return STATUS_SUCCESS;
+        } else if (write.getOperation().getType() == BatchOperation.Type.INSERT) {
+            return STATUS_INTERNAL_SERVER_ERROR;
+        } else {
+            return STATUS_NOT_FOUND; // updates and deletes affecting no record
         }
     }
 
+    /**
+     * @return the message the write's request would have been answered with if applied
+     * synchronously, the write must not be pending.
+     */
+    private static String getWriteMessage(PendingWrite write) {
+        int status = getWriteStatusCode(write);
+        if (status == STATUS_NOT_FOUND) {
+            return MESSAGE_NOT_FOUND;
+        }
+        switch (write.getOperation().getType()) {
+            case INSERT:
+                return status == STATUS_SUCCESS ? "New person added successfully" : "An error occurred trying to add new Person.";
+            case UPDATE:
+                return status == STATUS_SUCCESS ? "Person updated successfully." : "An error occurred trying to update Person.";
+            default:
+                return status == STATUS_SUCCESS ? "Person deleted successfully." : "An error occurred trying to delete Person.";
+        }
+    }
+
+    /**
+     * Closes the {@link WriteBehindQueue}, once its queued writes are committed, then cleans up the
+     * {@link PersonService}.
+     */
     @Override
     public void tearDown() {
         super.tearDown();
+        if (writeQueue != null) {
+            writeQueue.close();
+            writeTimeoutExecutor.shutdown(); // After the queue, so its last writes don't time out
+        }
+        writeQueue = null;
+        writeTimeoutExecutor = null;
         if (personService != null) {
             personService.cleanUp();
         }
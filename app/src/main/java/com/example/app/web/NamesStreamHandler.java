@@ -0,0 +1,315 @@
+package com.example.app.web;
+
+import com.example.app.metrics.Counter;
+import com.example.app.metrics.Gauge;
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.model.Person;
+import com.example.app.service.ChangeEvent;
+import com.example.app.service.ChangeFeed;
+import com.example.app.web.base.BaseHttpHandler;
+import com.example.app.web.base.PersonJsonCodec;
+import com.example.app.web.base.Route;
+import com.example.app.web.base.RouteMatch;
+import com.example.app.web.base.Router;
+import com.example.app.web.base.Utf8JsonWriter;
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.HttpRequest;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.app.web.util.HttpConstants.CACHE_CONTROL_NO_CACHE;
+import static com.example.app.web.util.HttpConstants.EVENT_STREAM_MIME;
+import static com.example.app.web.util.HttpConstants.HEADER_CACHE_CONTROL;
+import static com.example.app.web.util.HttpConstants.HEADER_LAST_EVENT_ID;
+import static com.example.app.web.util.HttpConstants.STATUS_SUCCESS;
+
+
+/**
+ * NamesStreamHandler serves the "/names/stream" endpoint: a Server-Sent Events stream of the Person
+ * inserts, updates and deletes published on a {@link ChangeFeed}, e.g.
+ *
+ * <pre>
+ * id: 1697040000000-42
+ * event: update
+ * data: {"id":7,"first_name":"Jane","last_name":"Doe"}
+ * </pre>
+ *
+ * Deletes only carry the id. A client reconnecting with the Last-Event-ID header, or the
+ * "last_event_id" query parameter, resumes right after that event. When that's not possible, e.g.
+ * the events were already dropped from the feed or the service restarted, a "reset" event is sent
+ * first: the client must fetch "/names" again before applying the next events.
+ *
+ * Each stream holds a thread for as long as it is open, so the handler should run on its own
+ * bounded executor. A client reading slower than the events are published is disconnected once
+ * it falls behind the feed's capacity, it never slows the writers down. A client that stops reading
+ * altogether would block its stream's write forever once the socket's buffers are full: a watchdog
+ * interrupts any write blocked past its deadline, which closes the socket's channel and fails the
+ * write, ending the stream.
+ */
+public class NamesStreamHandler extends BaseHttpHandler {
+
+    public static final String ENDPOINT = NamesHandler.ENDPOINT + "/stream";
+    private static final String PARAM_LAST_EVENT_ID = "last_event_id"; // For clients that can't set headers.
+    private static final long HEARTBEAT_MILLIS = 15000; // Idle time before a comment keeps the connection alive.
+    private static final int RETRY_MILLIS = 3000; // Reconnection delay advised to the clients.
+    private static final int MAX_EVENTS_PER_WRITE = 64; // Events read from the feed and written at once.
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024; // Initial size of each stream's buffer.
+    private static final long WRITE_TIMEOUT_MILLIS = 30000; // Max time a write may wait on a client not reading.
+
+    private static final byte[] HEARTBEAT = ascii(":\n\n");
+    private static final byte[] EVENT_INSERT = ascii("\nevent: insert\ndata: ");
+    private static final byte[] EVENT_UPDATE = ascii("\nevent: update\ndata: ");
+    private static final byte[] EVENT_DELETE = ascii("\nevent: delete\ndata: ");
+    private static final byte[] EVENT_RESET = ascii("\nevent: reset\ndata: {}\n\n");
+    private static final byte[] EVENT_END = ascii("\n\n");
+
+    private final ChangeFeed<Person> changeFeed;
+    private final byte[] idPrefix; // "id: <epoch>-", followed by each event's sequence.
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final Counter droppedStreams; // Streams closed because the client fell behind.
+    private final long writeTimeoutMillis;
+    private final ScheduledThreadPoolExecutor writeWatchdog; // Interrupts the writes blocked past their deadline.
+    private final Router router = new Router()
+            .add(HttpMethod.GET, ENDPOINT, new Route() { // GET http://ipaddress:5000/names/stream
+                @Override
+                public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+                    doGetStreamResponse(exchange, request);
+                }
+            });
+
+    /**
+     * Main constructor for this Handler.
+     *
+     * @param changeFeed the {@link ChangeFeed} the Person mutations are published on.
+     */
+    public NamesStreamHandler(ChangeFeed<Person> changeFeed) {
+        this(changeFeed, WRITE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Overloaded constructor that receives the max time a write may be blocked on a client.
+     *
+     * @param changeFeed the {@link ChangeFeed} the Person mutations are published on.
+     * @param writeTimeoutMillis the max time, in milliseconds, a write may wait for the client to
+     *                           read, its stream is closed after that.
+     */
+    public NamesStreamHandler(ChangeFeed<Person> changeFeed, long writeTimeoutMillis) {
+        super(ENDPOINT);
+        this.changeFeed = changeFeed;
+        this.idPrefix = ascii("id: " + changeFeed.getEpoch() + "-");
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        writeWatchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "names-stream-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writeWatchdog.setRemoveOnCancelPolicy(true); // Deadlines of completed writes aren't kept around
+
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        droppedStreams = registry.counter("names_stream_dropped_total",
+                "Event streams closed because the client fell behind.", "");
+        registry.gauge("names_stream_open", "Open event streams.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return openStreams.get();
+            }
+        });
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+        dispatch(router, httpExchange, new HttpRequest(httpExchange));
+    }
+
+    /**
+     * Handles the GET request made to the "/names/stream" endpoint, writing the events as they are
+     * published until the client disconnects, falls behind or the feed is closed.
+     *
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private void doGetStreamResponse(HttpExchange exchange, HttpRequest request) throws IOException {
+        String lastEventId = exchange.getRequestHeaders().getFirst(HEADER_LAST_EVENT_ID);
+        if (lastEventId == null) {
+            lastEventId = getQueryParameters(request.getRequestQuery()).get(PARAM_LAST_EVENT_ID);
+        }
+        long cursor = resolveCursor(lastEventId);
+
+        request.getHeaders().set(HEADER_CACHE_CONTROL, CACHE_CONTROL_NO_CACHE);
+        OutputStream os = startChunkedResponse(exchange, STATUS_SUCCESS, EVENT_STREAM_MIME);
+        Utf8JsonWriter writer = new Utf8JsonWriter(INITIAL_BUFFER_SIZE);
+        @SuppressWarnings("unchecked")
+        ChangeEvent<Person>[] events = (ChangeEvent<Person>[]) new ChangeEvent<?>[MAX_EVENTS_PER_WRITE];
+        openStreams.incrementAndGet();
+        try {
+            writer.writeRaw(ascii("retry: " + RETRY_MILLIS + "\n\n"));
+            if (cursor < 0) {
+                // The client's state can't be caught up with events, it has to start over
+                cursor = changeFeed.getLastSequence();
+                writeId(writer, cursor);
+                writer.writeRaw(EVENT_RESET);
+            }
+            write(writer, os);
+
+            while (true) {
+                writer.reset();
+                int count = changeFeed.read(cursor, events, HEARTBEAT_MILLIS);
+                if (count == ChangeFeed.CLOSED) {
+                    break;
+                }
+                if (count == ChangeFeed.LAGGED) {
+                    // Disconnect, the client resumes with a reset when it reconnects
+                    droppedStreams.increment();
+                    break;
+                }
+                if (count == 0) {
+                    writer.writeRaw(HEARTBEAT);
+                }
+                for (int i = 0; i < count; i++) {
+                    writeEvent(writer, events[i]);
+                    cursor = events[i].getSequence();
+                    events[i] = null;
+                }
+                write(writer, os);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // The executor is shutting down
+        } catch (IOException e) {
+            // The client went away, the usual way for a stream to end: release the connection quietly
+            exchange.close();
+            return;
+        } finally {
+            openStreams.decrementAndGet();
+        }
+        os.close();
+    }
+
+    /**
+     * Writes and flushes the buffered events, interrupting the stream's thread if the client doesn't
+     * take them in time. The socket's channel is closed on interrupt, failing the blocked write.
+     *
+     * @throws IOException thrown if the write failed or timed out.
+     */
+    private void write(Utf8JsonWriter writer, OutputStream os) throws IOException {
+        WriteDeadline deadline = new WriteDeadline(Thread.currentThread());
+        ScheduledFuture<?> timeout = writeWatchdog.schedule(deadline, writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        boolean written = false;
+        try {
+            writer.writeTo(os);
+            os.flush();
+            written = true;
+        } finally {
+            timeout.cancel(false);
+            if (deadline.finish()) {
+                Thread.interrupted(); // Only meant for this write, not for the rest of the stream
+                if (!written) {
+                    droppedStreams.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a Last-Event-ID, "<epoch>-<sequence>", to the feed's cursor to resume from.
+     *
+     * @param lastEventId the Last-Event-ID sent by the client, null if it's a new client.
+     * @return the sequence of the last event the client has seen, the feed's last one for a new
+     * client, or -1 if the events after it are not in the feed anymore.
+     */
+    private long resolveCursor(String lastEventId) {
+        if (lastEventId == null || lastEventId.isEmpty()) {
+            return changeFeed.getLastSequence(); // Only the events from now on
+        }
+        int separator = lastEventId.indexOf('-');
+        try {
+            if (separator > 0 && Long.parseLong(lastEventId.substring(0, separator)) == changeFeed.getEpoch()) {
+                long sequence = Long.parseLong(lastEventId.substring(separator + 1));
+                if (changeFeed.isRetained(sequence)) {
+                    return sequence;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Not one of our ids, start over
+        }
+        return -1;
+    }
+
+    private void writeEvent(Utf8JsonWriter writer, ChangeEvent<Person> event) {
+        writeId(writer, event.getSequence());
+        switch (event.getType()) {
+            case INSERT:
+                writer.writeRaw(EVENT_INSERT);
+                break;
+            case UPDATE:
+                writer.writeRaw(EVENT_UPDATE);
+                break;
+            case DELETE:
+                writer.writeRaw(EVENT_DELETE);
+                break;
+        }
+        // JSON strings escape line breaks, so the data always fits in a single line
+        PersonJsonCodec.writePerson(writer, event.getRecord(), null);
+        writer.writeRaw(EVENT_END);
+    }
+
+    private void writeId(Utf8JsonWriter writer, long sequence) {
+        writer.writeRaw(idPrefix);
+        writer.writeNumber(sequence);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Stops the write watchdog, once the {@link ChangeFeed} is closed and the streams ended.
+     */
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        writeWatchdog.shutdownNow();
+    }
+
+    /**
+     * Interrupts a stream's thread if it's still writing once the deadline is reached.
+     */
+    private static final class WriteDeadline implements Runnable {
+        private final Thread writer;
+        private boolean writing = true; // Guarded by this.
+        private boolean expired; // Guarded by this.
+
+        WriteDeadline(Thread writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (writing) {
+                expired = true;
+                writer.interrupt();
+            }
+        }
+
+        /**
+         * Marks the write as done, the deadline can't interrupt the thread afterwards.
+         *
+         * @return true if the deadline was reached and the thread interrupted.
+         */
+        synchronized boolean finish() {
+            writing = false;
+            return expired;
+        }
+    }
+}
@@ -3,58 +3,252 @@ package com.example.app.web;
 import android.content.res.AssetManager;
 
 import com.example.app.web.base.BaseHttpHandler;
-import com.example.app.web.util.HtmlReaderUtil;
+import com.example.app.web.util.AssetStreamUtil;
+import com.example.app.web.util.StaticAssetCache;
+import com.example.app.web.util.model.ByteRange;
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.StaticAsset;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
+import static com.example.app.web.util.HttpConstants.CACHE_CONTROL_NO_CACHE;
 import static com.example.app.web.util.HttpConstants.CONTENT_TYPE;
-import static com.example.app.web.util.HttpConstants.HTML_MIME;
-import static com.example.app.web.util.HttpConstants.JS_EXTENSION;
-import static com.example.app.web.util.HttpConstants.JS_MIME;
+import static com.example.app.web.util.HttpConstants.ENCODING_GZIP;
+import static com.example.app.web.util.HttpConstants.HEADER_ACCEPT_ENCODING;
+import static com.example.app.web.util.HttpConstants.HEADER_ACCEPT_RANGES;
+import static com.example.app.web.util.HttpConstants.HEADER_CACHE_CONTROL;
+import static com.example.app.web.util.HttpConstants.HEADER_CONTENT_ENCODING;
+import static com.example.app.web.util.HttpConstants.HEADER_CONTENT_RANGE;
+import static com.example.app.web.util.HttpConstants.HEADER_ETAG;
+import static com.example.app.web.util.HttpConstants.HEADER_IF_RANGE;
+import static com.example.app.web.util.HttpConstants.HEADER_RANGE;
+import static com.example.app.web.util.HttpConstants.HEADER_VARY;
 import static com.example.app.web.util.HttpConstants.MESSAGE_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.RANGE_UNIT_BYTES;
 import static com.example.app.web.util.HttpConstants.STATUS_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.STATUS_NOT_MODIFIED;
+import static com.example.app.web.util.HttpConstants.STATUS_PARTIAL_CONTENT;
+import static com.example.app.web.util.HttpConstants.STATUS_RANGE_NOT_SATISFIABLE;
 import static com.example.app.web.util.HttpConstants.STATUS_SUCCESS;
 
 
 /**
- * This HttpHandler serves as the Root handler and serves the main page (i.e. index page).
+ * This HttpHandler serves as the Root handler and serves the main page (i.e. index page) along
+ * with the rest of the static assets under the web root.
+ *
+ * Assets are preloaded into a {@link StaticAssetCache} when the handler is created, and served
+ * with their Content-Length, ETag revalidation (304 Not Modified) and their pre-compressed gzip
+ * variant to clients accepting it. Single byte ranges are supported through the Range header,
+ * always over the identity encoding. Assets too large to be kept in memory are streamed as raw bytes.
  */
 public class RootHandler extends BaseHttpHandler {
 
     public static final String ENDPOINT = "/";
     private static final String INDEX_FILE = "/index.html";
+    private static final byte[] NOT_FOUND_RESPONSE = MESSAGE_NOT_FOUND.getBytes();
+    private static final String RANGE_PREFIX = RANGE_UNIT_BYTES + "=";
+    private static final ByteRange UNSATISFIABLE_RANGE = new ByteRange(-1, -1);
 
-    private AssetManager assetManager;
+    private final AssetManager assetManager;
+    private final StaticAssetCache assetCache;
 
-    public RootHandler(AssetManager assetManager) {
+    /**
+     * Main constructor for this Handler. Loads all the web root's assets into memory.
+     *
+     * @param assetManager the {@link AssetManager} to read the web root's assets from.
+     * @throws IOException thrown if there's an error reading the assets.
+     */
+    public RootHandler(AssetManager assetManager) throws IOException {
         super(ENDPOINT);
         this.assetManager = assetManager;
+        this.assetCache = StaticAssetCache.load(assetManager, WEB_ROOT);
     }
 
     @Override
     public void handle(HttpExchange httpExchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            serveAsset(httpExchange);
+        } finally {
+            // All assets share the endpoint as route, so the number of series doesn't grow with them
+            recordRequest(ENDPOINT, HttpMethod.fromName(httpExchange.getRequestMethod()), httpExchange, start);
+        }
+    }
+
+    /**
+     * Serves the requested asset, or 404 Not Found if it's not under the web root.
+     *
+     * @param httpExchange the {@link HttpExchange} of the request.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    private void serveAsset(HttpExchange httpExchange) throws IOException {
         final String pathRequested = httpExchange.getRequestURI().getPath();
+        final Headers requestHeaders = httpExchange.getRequestHeaders();
         final Headers responseHeaders = httpExchange.getResponseHeaders();
-        String response;
-        OutputStream os = httpExchange.getResponseBody();
-        if(pathRequested.equals(ENDPOINT)) {
-            responseHeaders.set(CONTENT_TYPE, HTML_MIME);
-            response = HtmlReaderUtil.readFile(assetManager.open(WEB_ROOT + INDEX_FILE));
-            httpExchange.sendResponseHeaders(STATUS_SUCCESS, 0);
-        } else if(pathRequested.contains(JS_EXTENSION)){
-            responseHeaders.set(CONTENT_TYPE, JS_MIME);
-            response = HtmlReaderUtil.readFile(assetManager.open(WEB_ROOT+ pathRequested));
-            httpExchange.sendResponseHeaders(STATUS_SUCCESS, 0);
+
+        StaticAsset asset = assetCache.get(pathRequested.equals(ENDPOINT) ? INDEX_FILE : pathRequested);
+        if (asset == null) {
+            sendResponse(httpExchange, STATUS_NOT_FOUND, null, NOT_FOUND_RESPONSE);
+            return;
+        }
+
+        // A Range only applies if the client's copy, if any, is still the current one
+        String rangeHeader = requestHeaders.getFirst(HEADER_RANGE);
+        String ifRange = requestHeaders.getFirst(HEADER_IF_RANGE);
+        boolean rangeRequested = rangeHeader != null && (ifRange == null || ifRange.equals(asset.getEtag()));
+
+        // Pick the gzip variant if the client accepts it and it's worth it
+        boolean gzip = !rangeRequested && asset.hasGzipContent()
+                && acceptsGzip(requestHeaders.get(HEADER_ACCEPT_ENCODING));
+        String etag = gzip ? asset.getGzipEtag() : asset.getEtag();
+
+        responseHeaders.set(CONTENT_TYPE, asset.getContentType());
+        responseHeaders.set(HEADER_ETAG, etag);
+        responseHeaders.set(HEADER_ACCEPT_RANGES, RANGE_UNIT_BYTES);
+        responseHeaders.set(HEADER_CACHE_CONTROL, CACHE_CONTROL_NO_CACHE); // always revalidate using the ETag
+        if (asset.hasGzipContent()) {
+            responseHeaders.set(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        }
+
+        // The client already has this version, respond with 304 Not Modified and no body
+        if (isNotModified(httpExchange, etag)) {
+            sendEmptyResponse(httpExchange, STATUS_NOT_MODIFIED);
+            return;
+        }
+
+        if (gzip) {
+            // Pre-compressed variant, always held in memory
+            responseHeaders.set(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+            sendResponse(httpExchange, STATUS_SUCCESS, null, asset.getGzipContent());
+            return;
+        }
+
+        ByteRange range = rangeRequested ? parseRange(rangeHeader, asset.getLength()) : null;
+        if (range == UNSATISFIABLE_RANGE) {
+            responseHeaders.set(HEADER_CONTENT_RANGE, RANGE_UNIT_BYTES + " */" + asset.getLength());
+            sendEmptyResponse(httpExchange, STATUS_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        int status = STATUS_SUCCESS;
+        long offset = 0;
+        long length = asset.getLength();
+        if (range != null) {
+            status = STATUS_PARTIAL_CONTENT;
+            offset = range.getStart();
+            length = range.getLength();
+            responseHeaders.set(HEADER_CONTENT_RANGE, RANGE_UNIT_BYTES + " " + range.getStart() + "-"
+                    + range.getEnd() + "/" + asset.getLength());
+        }
+
+        if (asset.isInMemory()) {
+            sendResponse(httpExchange, status, null, asset.getContent(), (int) offset, (int) length);
         } else {
-            response = MESSAGE_NOT_FOUND;
-            httpExchange.sendResponseHeaders(STATUS_NOT_FOUND, response.length());
+            OutputStream os = startFixedLengthResponse(httpExchange, status, null, length);
+            try {
+                AssetStreamUtil.copyAsset(assetManager, asset.getAssetPath(), os, offset, length);
+            } finally {
+                os.close();
+            }
+        }
+    }
+
+    /**
+     * Tells whether the Accept-Encoding headers allow a gzip encoded response, i.e. they list
+     * "gzip", or failing that "*", with a non zero quality value.
+     *
+     * @param headers the Accept-Encoding header values, null if absent.
+     * @return true if gzip is acceptable.
+     */
+    private static boolean acceptsGzip(List<String> headers) {
+        if (headers == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String header : headers) {
+            for (String coding : header.split(",")) {
+                int semicolon = coding.indexOf(';');
+                String name = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim();
+                boolean accepted = semicolon < 0 || qualityOf(coding.substring(semicolon + 1)) > 0;
+                if (name.equalsIgnoreCase(ENCODING_GZIP)) {
+                    return accepted; // an explicit entry overrides "*"
+                }
+                if (name.equals("*")) {
+                    wildcard = accepted;
+                }
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Reads the "q" parameter out of a coding's parameters, e.g. "q=0.5".
+     *
+     * @param params the parameters following the coding's first semicolon.
+     * @return the quality value, 1 if absent, or 0 if malformed.
+     */
+    private static double qualityOf(String params) {
+        for (String param : params.split(";")) {
+            int equals = param.indexOf('=');
+            if (equals >= 0 && param.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                try {
+                    return Double.parseDouble(param.substring(equals + 1).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Resolves a "bytes=start-end", "bytes=start-" or "bytes=-suffixLength" Range header against
+     * the asset's length.
+     *
+     * @param header the Range header value.
+     * @param length the asset's length in bytes.
+     * @return the resolved {@link ByteRange}, {@link #UNSATISFIABLE_RANGE} if it falls outside the
+     * asset, or null if the header is malformed or asks for several ranges, in which case it is ignored.
+     */
+    private static ByteRange parseRange(String header, long length) {
+        if (!header.startsWith(RANGE_PREFIX) || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring(RANGE_PREFIX.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            long start;
+            long end;
+            if (first.isEmpty()) { // suffix range, the last N bytes
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0 || length == 0) {
+                    return UNSATISFIABLE_RANGE;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start >= length) {
+                    return UNSATISFIABLE_RANGE;
+                }
+                if (end < start) {
+                    return null;
+                }
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        os.write(response.getBytes());
-        os.flush();
-        os.close();
     }
 
 }
@@ -0,0 +1,42 @@
+package com.example.app.web.base;
+
+import com.example.app.web.util.model.HttpRequest;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A {@link Route} completing its requests asynchronously: {@link #handleAsync} returns as soon as
+ * the work is handed off, e.g. to the database executor, and the response is sent by whichever
+ * thread completes it. {@link BaseHttpHandler#dispatch} records the request once the returned
+ * future completes, and answers it if the future failed before a response was sent.
+ */
+public abstract class AsyncRoute implements Route {
+
+    /**
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param match the {@link RouteMatch} holding the path parameters parsed from the request's path.
+     * @return a {@link CompletableFuture} completed once the response is sent.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    public abstract CompletableFuture<?> handleAsync(HttpExchange exchange, HttpRequest request, RouteMatch match)
+            throws IOException;
+
+    /**
+     * Handles the request, blocking until its response is sent.
+     */
+    @Override
+    public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException {
+        try {
+            handleAsync(exchange, request, match).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -1,24 +1,81 @@
 package com.example.app.web.base;
 
+import android.util.Log;
+
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.web.util.AssetStreamUtil;
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.HttpRequest;
+import com.example.app.web.util.model.HttpResponse;
 import com.google.gson.Gson;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import static com.example.app.web.util.HttpConstants.CHUNKED_RESPONSE_LENGTH;
+import static com.example.app.web.util.HttpConstants.CONNECTION_CLOSE;
+import static com.example.app.web.util.HttpConstants.CONNECTION_KEEP_ALIVE;
+import static com.example.app.web.util.HttpConstants.CONTENT_TYPE;
+import static com.example.app.web.util.HttpConstants.HEADER_ALLOW;
+import static com.example.app.web.util.HttpConstants.HEADER_CONNECTION;
+import static com.example.app.web.util.HttpConstants.HEADER_IF_NONE_MATCH;
+import static com.example.app.web.util.HttpConstants.HEADER_RETRY_AFTER;
+import static com.example.app.web.util.HttpConstants.JSON_MIME;
+import static com.example.app.web.util.HttpConstants.MESSAGE_BAD_REQUEST;
+import static com.example.app.web.util.HttpConstants.MESSAGE_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.NO_RESPONSE_LENGTH;
+import static com.example.app.web.util.HttpConstants.PROTOCOL_HTTP_1_0;
+import static com.example.app.web.util.HttpConstants.STATUS_BAD_REQUEST;
+import static com.example.app.web.util.HttpConstants.STATUS_INTERNAL_SERVER_ERROR;
+import static com.example.app.web.util.HttpConstants.STATUS_METHOD_NOT_ALLOWED;
+import static com.example.app.web.util.HttpConstants.STATUS_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.STATUS_SERVICE_UNAVAILABLE;
 
+/**
+ * Base class of the service's handlers, providing JSON mapping, body and query parsing, routing and
+ * response framing.
+ *
+ * Responses should be sent through {@link #sendResponse}, {@link #sendEmptyResponse},
+ * {@link #startFixedLengthResponse} or {@link #startChunkedResponse}. They frame the body with its
+ * byte length, drain the unread Request body and answer the Connection header, so the client can
+ * send its next request on the same connection.
+ */
 public abstract class BaseHttpHandler implements HttpHandler  {
 
+    private static final String TAG = BaseHttpHandler.class.getName()+"_TAG"; // Logging TAG
     protected static final String WEB_ROOT = "www";
+    private static final String WEAK_ETAG_PREFIX = "W/"; // Marks a weak entity tag.
+    private static final int MAX_DRAIN_SIZE = 64 * 1024; // Unread body bytes discarded to keep a connection open.
+    protected static final String UNMATCHED_ROUTE = "unmatched"; // Metrics route label of unknown paths.
+    private static final String ASYNC_RETRY_AFTER_SECONDS = "1"; // Retry-After sent when async work is refused.
+
+    private static final Gson GSON = new Gson(); // Thread safe, shared by all handlers.
+    protected static final JsonCodec GSON_CODEC = new GsonJsonCodec(GSON); // Default JSON codec.
+
+    // Status message responses, encoded once
+    protected static final byte[] JSON_BAD_REQUEST = GSON_CODEC.toJson(new HttpResponse(STATUS_BAD_REQUEST, MESSAGE_BAD_REQUEST));
+    protected static final byte[] JSON_NOT_FOUND = GSON_CODEC.toJson(new HttpResponse(STATUS_NOT_FOUND, MESSAGE_NOT_FOUND));
 
-    private Gson gson; // Assist with parsing POJOs to JSON strings
+    private JsonCodec jsonCodec; // Assist with parsing POJOs to and from JSON bytes
+    private RequestBodyParser bodyParser; // Parses form and JSON Request bodies
     private String handlersEndpointPath; // The endpoint associated to the Handler's child instance.
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getDefault(); // Records request latencies.
 
     public BaseHttpHandler() {
-        gson = new Gson();
+        this(null, GSON_CODEC);
     }
 
     /**
@@ -27,7 +84,19 @@ public abstract class BaseHttpHandler implements HttpHandler  {
      * @param endpointPath {@link String} value for the endpoint
      */
     public BaseHttpHandler(String endpointPath) {
-        this();
+        this(endpointPath, GSON_CODEC);
+    }
+
+    /**
+     * Overloaded constructor that receives the endpoint associated to the HttpHandler and the
+     * {@link JsonCodec} to use instead of the default Gson one.
+     *
+     * @param endpointPath {@link String} value for the endpoint
+     * @param jsonCodec the {@link JsonCodec} parsing this handler's objects to and from JSON.
+     */
+    public BaseHttpHandler(String endpointPath, JsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+        bodyParser = new RequestBodyParser(RequestBodyParser.DEFAULT_MAX_BODY_SIZE, GSON);
         handlersEndpointPath = endpointPath;
     }
 
@@ -37,52 +106,397 @@ public abstract class BaseHttpHandler implements HttpHandler  {
     }
 
     /**
-     * Generic helper method to parse objects into JSON Strings
+     * Generic helper method to parse objects into JSON, through the handler's {@link JsonCodec}.
      *
      * @param input the object to be parsed
      * @param <T> the Type of the object to be parsed
-     * @return {@link String} representing the JSON
+     * @return the UTF-8 encoded JSON bytes.
      */
-    protected <T> String parseToJson(T input) {
-        return gson.toJson(input);
+    protected <T> byte[] toJson(T input) {
+        return jsonCodec.toJson(input);
     }
 
     /**
-     * Helps return the first Path parameter passed on a given GET/PUT request.
+     * Generic helper method to parse a UTF-8 JSON stream, e.g. a Request's body, into an object.
      *
-     * @param path the URI representing the path requested.
-     * @return {@link String} representing the parameter in the first place.
+     * @param inputStream the {@link InputStream} holding the JSON.
+     * @param type the {@link Class} of the object to be parsed
+     * @param <T> the Type of the object to be parsed
+     * @return the parsed object, null if the stream was empty.
+     * @throws com.google.gson.JsonParseException if the stream is not valid JSON for the given type.
      */
-    protected String getFirstPathParameter(String path) {
-        return path.substring(handlersEndpointPath.length() + 1);
+    protected <T> T parseFromJson(InputStream inputStream, Class<T> type) {
+        return jsonCodec.fromJson(inputStream, type);
     }
 
     /**
-     * Helps to extract all parameters from a RequestBody instance.
+     * Dispatches the request to the {@link Route} matching its method and path. Requests to an
+     * unknown path are answered with 404 Not Found, and those to a known path with an unsupported
+     * method with 405 Method Not Allowed and the Allow header.
+     *
+     * Every request is recorded with its route's template, see {@link #recordRequest}, those of an
+     * {@link AsyncRoute} once the future it returned completes.
      *
-     * @param requestBody the {@link InputStream} representing the Request's body.
-     * @return {@link Map<String, String>} parameter's key and value String map.
+     * @param router the {@link Router} holding the handler's routes.
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
      */
-    protected Map<String, String> getBodyParameters(InputStream requestBody) {
-        Map<String, String> parameters = new LinkedHashMap<>();
+    protected void dispatch(Router router, HttpExchange exchange, HttpRequest request) throws IOException {
+        long start = System.nanoTime();
+        RouteMatch match = router.match(request.getRequestMethod(), request.getRequestPath());
+        boolean async = false; // whether the request is recorded once its future completes instead
+        try {
+            switch (match.getStatus()) {
+                case FOUND:
+                    if (match.getRoute() instanceof AsyncRoute) {
+                        CompletableFuture<?> future = ((AsyncRoute) match.getRoute()).handleAsync(exchange, request, match);
+                        completeAsync(future, match.getTemplate(), request.getRequestMethod(), exchange, start);
+                        async = true;
+                    } else {
+                        match.getRoute().handle(exchange, request, match);
+                    }
+                    break;
+                case METHOD_NOT_ALLOWED:
+                    request.getHeaders().set(HEADER_ALLOW, match.getAllowedMethods());
+                    sendEmptyResponse(exchange, STATUS_METHOD_NOT_ALLOWED);
+                    break;
+                default:
+                    sendResponse(exchange, STATUS_NOT_FOUND, JSON_MIME, JSON_NOT_FOUND);
+                    break;
+            }
+        } finally {
+            if (!async) {
+                String route = match.getTemplate();
+                recordRequest(route == null ? UNMATCHED_ROUTE : route, request.getRequestMethod(), exchange, start);
+            }
+        }
+    }
+
+    /**
+     * Records an {@link AsyncRoute}'s request once its future completes. If it failed before a
+     * response was sent, the request is answered with 503 Service Unavailable when the executor
+     * refused the work, 500 Internal Server Error otherwise. The exchange is closed either way.
+     */
+    private void completeAsync(CompletableFuture<?> future, final String route, final HttpMethod method,
+                               final HttpExchange exchange, final long start) {
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable error) {
+                try {
+                    if (error != null) {
+                        failAsync(exchange, error instanceof CompletionException ? error.getCause() : error);
+                    }
+                } finally {
+                    recordRequest(route, method, exchange, start);
+                }
+            }
+        });
+    }
+
+    private void failAsync(HttpExchange exchange, Throwable error) {
+        try {
+            if (exchange.getResponseCode() < 0) { // nothing was sent yet
+                if (error instanceof RejectedExecutionException) {
+                    exchange.getResponseHeaders().set(HEADER_RETRY_AFTER, ASYNC_RETRY_AFTER_SECONDS);
+                    sendEmptyResponse(exchange, STATUS_SERVICE_UNAVAILABLE);
+                    return;
+                }
+                Log.e(TAG, "Handling " + exchange.getRequestURI() + " failed", error);
+                sendEmptyResponse(exchange, STATUS_INTERNAL_SERVER_ERROR);
+                return;
+            }
+            if (!(error instanceof IOException)) {
+                Log.e(TAG, "Handling " + exchange.getRequestURI() + " failed after responding", error);
+            }
+        } catch (IOException e) {
+            // The client is gone, closing the exchange below releases its connection
+        }
+        exchange.close();
+    }
+
+    /**
+     * Records a handled request's latency in the "http_request_duration_seconds" histograms. Nothing
+     * is allocated once the route, method and status have been seen.
+     *
+     * @param route the route's template, never the actual path, to keep the number of series bounded.
+     * @param method the request's {@link HttpMethod}, null if it's not one the service handles.
+     * @param exchange the {@link HttpExchange} holding the response's status, recorded as 500 if
+     *                 the handler failed before sending one.
+     * @param startNanos the {@link System#nanoTime()} at which handling the request started.
+     */
+    protected void recordRequest(String route, HttpMethod method, HttpExchange exchange, long startNanos) {
+        metricsRegistry.requests(route).record(method, exchange.getResponseCode(), System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Tells whether the client's copy of the resource is current, in which case it should be
+     * answered with 304 Not Modified and no body.
+     *
+     * @param exchange the {@link HttpExchange} holding the If-None-Match request header.
+     * @param etag the current entity tag of the resource, quotes included.
+     * @return true if If-None-Match is "*" or lists the given entity tag, weak or not.
+     */
+    protected static boolean isNotModified(HttpExchange exchange, String etag) {
+        List<String> headers = exchange.getRequestHeaders().get(HEADER_IF_NONE_MATCH);
+        if (headers == null) {
+            return false;
+        }
+        String opaqueTag = etag.startsWith(WEAK_ETAG_PREFIX) ? etag.substring(WEAK_ETAG_PREFIX.length()) : etag;
+        for (String header : headers) {
+            if (header.trim().equals("*") || listsEntityTag(header, opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks for an entity tag in a comma separated list of possibly weak entity tags, e.g.
+     * {@code "a", W/"b"}, using the weak comparison If-None-Match calls for.
+     *
+     * @param list the entity tag list.
+     * @param opaqueTag the quoted entity tag to look for, without its "W/" prefix.
+     * @return true if the list holds the entity tag.
+     */
+    private static boolean listsEntityTag(String list, String opaqueTag) {
+        int i = 0;
+        while (i < list.length()) {
+            char c = list.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            if (list.startsWith(WEAK_ETAG_PREFIX, i)) {
+                i += WEAK_ETAG_PREFIX.length();
+            }
+            if (i >= list.length() || list.charAt(i) != '"') {
+                return false; // malformed, ignore the rest
+            }
+            int end = list.indexOf('"', i + 1);
+            if (end < 0) {
+                return false;
+            }
+            if (list.regionMatches(i, opaqueTag, 0, opaqueTag.length()) && end + 1 - i == opaqueTag.length()) {
+                return true;
+            }
+            i = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Sends a complete response, framed with its byte length, and closes the exchange.
+     *
+     * @param exchange the {@link HttpExchange} to respond to.
+     * @param status the response's status code.
+     * @param contentType the Content-Type header, null if already set or for none.
+     * @param body the encoded response body.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    protected void sendResponse(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        sendResponse(exchange, status, contentType, body, 0, body.length);
+    }
+
+    /**
+     * Sends a slice of a byte array as a complete response, framed with its length, and closes the exchange.
+     *
+     * @param exchange the {@link HttpExchange} to respond to.
+     * @param status the response's status code.
+     * @param contentType the Content-Type header, null if already set or for none.
+     * @param body the array holding the encoded response body.
+     * @param offset the index of the body's first byte in the array.
+     * @param length the body's length in bytes.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    protected void sendResponse(HttpExchange exchange, int status, String contentType, byte[] body,
+                                int offset, int length) throws IOException {
+        OutputStream os = startFixedLengthResponse(exchange, status, contentType, length);
+        try {
+            os.write(body, offset, length);
+        } finally {
+            os.close();
+        }
+    }
 
-        Scanner scanner = new Scanner(requestBody).useDelimiter("\\A");
-        String contents = scanner.next();
-        String[] inputs = contents.split("&");
+    /**
+     * Sends a response without body, e.g. 304 Not Modified, and closes the exchange.
+     *
+     * @param exchange the {@link HttpExchange} to respond to.
+     * @param status the response's status code.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    protected void sendEmptyResponse(HttpExchange exchange, int status) throws IOException {
+        startFixedLengthResponse(exchange, status, null, 0).close();
+    }
 
-        for(String input:inputs) {
-            String[] keyValue = input.split("=");
-            parameters.put(keyValue[0], keyValue[1]);
+    /**
+     * Sends the headers of a response whose body length is known up front, e.g. a file streamed
+     * from disk.
+     *
+     * @param exchange the {@link HttpExchange} to respond to.
+     * @param status the response's status code.
+     * @param contentType the Content-Type header, null if already set or for none.
+     * @param length the body's length in bytes, 0 for none.
+     * @return the response body's {@link OutputStream}, exactly {@code length} bytes must be written
+     * to it before closing it.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    protected OutputStream startFixedLengthResponse(HttpExchange exchange, int status, String contentType,
+                                                    long length) throws IOException {
+        prepareResponse(exchange, contentType);
+        // A length of 0 would mean chunked encoding, empty bodies are sent without one instead
+        exchange.sendResponseHeaders(status, length == 0 ? NO_RESPONSE_LENGTH : length);
+        return exchange.getResponseBody();
+    }
+
+    /**
+     * Sends the headers of a response whose body is streamed with chunked transfer encoding. Prefer
+     * a fixed length response when the body can be buffered, HTTP/1.0 clients don't support chunks.
+     *
+     * @param exchange the {@link HttpExchange} to respond to.
+     * @param status the response's status code.
+     * @param contentType the Content-Type header, null if already set or for none.
+     * @return the response body's {@link OutputStream}, to be closed once the whole body is written.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    protected OutputStream startChunkedResponse(HttpExchange exchange, int status, String contentType) throws IOException {
+        prepareResponse(exchange, contentType);
+        exchange.sendResponseHeaders(status, CHUNKED_RESPONSE_LENGTH);
+        return exchange.getResponseBody();
+    }
+
+    /**
+     * Sets the Content-Type and Connection headers, draining what's left of the Request body first:
+     * the next request on the connection can only be read once this one's body has been consumed.
+     *
+     * The connection is kept open unless the client asked to close it, sent an HTTP/1.0 request
+     * without asking to keep it alive, or left more than {@link #MAX_DRAIN_SIZE} body bytes unread.
+     * Those are answered with "Connection: close", HTTP/1.0 clients keeping it alive with "keep-alive".
+     */
+    private static void prepareResponse(HttpExchange exchange, String contentType) {
+        Headers headers = exchange.getResponseHeaders();
+        if (contentType != null) {
+            headers.set(CONTENT_TYPE, contentType);
         }
+        String connection = exchange.getRequestHeaders().getFirst(HEADER_CONNECTION);
+        boolean http10 = PROTOCOL_HTTP_1_0.equals(exchange.getProtocol());
+        boolean keepAlive = http10
+                ? CONNECTION_KEEP_ALIVE.equalsIgnoreCase(connection)
+                : !CONNECTION_CLOSE.equalsIgnoreCase(connection);
+        if (!drainRequestBody(exchange.getRequestBody()) || !keepAlive) {
+            headers.set(HEADER_CONNECTION, CONNECTION_CLOSE);
+        } else if (http10) {
+            headers.set(HEADER_CONNECTION, CONNECTION_KEEP_ALIVE);
+        }
+    }
 
+    /**
+     * Reads and discards what's left of a Request body, up to {@link #MAX_DRAIN_SIZE} bytes.
+     *
+     * @return true if the body was fully consumed, false if it's too large or couldn't be read.
+     */
+    private static boolean drainRequestBody(InputStream body) {
+        try {
+            if (body.read() < 0) {
+                return true; // Already consumed, or there was none: the usual case
+            }
+            byte[] buffer = AssetStreamUtil.BUFFER_POOL.acquire();
+            try {
+                int drained = 1;
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_SIZE) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                AssetStreamUtil.BUFFER_POOL.release(buffer);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Helps to extract all parameters from a Request's raw query string, e.g. "limit=10&after_id=5".
+     *
+     * @param rawQuery the raw, still URL encoded, query string. May be null.
+     * @return {@link Map<String, String>} decoded parameter's key and value String map.
+     */
+    protected Map<String, String> getQueryParameters(String rawQuery) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+
+        try {
+            for (String input : rawQuery.split("&")) {
+                int separator = input.indexOf('=');
+                if (separator < 0) {
+                    parameters.put(URLDecoder.decode(input, "UTF-8"), "");
+                } else {
+                    parameters.put(URLDecoder.decode(input.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(input.substring(separator + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
         return parameters;
     }
 
+    /**
+     * Helps to map a Request's form or JSON body to an object, see {@link RequestBodyParser#parse}.
+     *
+     * @param request the {@link HttpRequest} holding the body and its Content-Type.
+     * @param type the {@link Class} of the object to map the body to.
+     * @param <T> the Type of the object to map the body to.
+     * @return the mapped object, never null.
+     * @throws BodyParseException if the body is too large (413) or malformed (400).
+     * @throws IOException thrown if an I/O error is encountered while reading the stream.
+     */
+    protected <T> T parseBody(HttpRequest request, Class<T> type) throws BodyParseException, IOException {
+        return bodyParser.parse(request.getRequestBody(), request.getRequestContentType(), type);
+    }
+
+    /**
+     * Registers how form bodies are mapped to objects of the given type, see
+     * {@link RequestBodyParser#registerFormMapper}.
+     *
+     * @param type the {@link Class} of the objects built.
+     * @param mapper the {@link FormMapper} building them.
+     * @param <T> the Type of the objects built.
+     */
+    protected <T> void registerFormMapper(Class<T> type, FormMapper<T> mapper) {
+        bodyParser.registerFormMapper(type, mapper);
+    }
+
+    /**
+     * Helps to map a Request's JSON array body to a list of objects, see {@link RequestBodyParser#parseArray}.
+     *
+     * @param request the {@link HttpRequest} holding the body.
+     * @param type the {@link Class} of the array's elements.
+     * @param maxItems the max number of elements accepted.
+     * @param maxBytes the max number of bytes accepted in the body.
+     * @param <T> the Type of the array's elements.
+     * @return the mapped elements, in order, including null ones.
+     * @throws BodyParseException if the body is too large (413) or malformed (400).
+     * @throws IOException thrown if an I/O error is encountered while reading the stream.
+     */
+    protected <T> List<T> parseBodyArray(HttpRequest request, Class<T> type, int maxItems, long maxBytes)
+            throws BodyParseException, IOException {
+        return bodyParser.parseArray(request.getRequestBody(), type, maxItems, maxBytes);
+    }
+
     /**
      * Provides the skeleton to handle clean up tasks and memory release calls.
      */
     public void tearDown() {
-        gson = null;
+        jsonCodec = null;
+        bodyParser = null;
     }
 
 }
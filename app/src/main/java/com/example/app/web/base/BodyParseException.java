@@ -0,0 +1,29 @@
+package com.example.app.web.base;
+
+/**
+ * Thrown by the {@link RequestBodyParser} when a Request's body can't be parsed. Carries the HTTP
+ * status code the client should be answered with.
+ */
+public class BodyParseException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status; // HTTP status code to answer the request with.
+
+    public BodyParseException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public BodyParseException(int status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    /**
+     * @return the HTTP status code to answer the request with, e.g. 400 or 413.
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.app.web.base;
+
+import java.util.Map;
+
+/**
+ * This interface abstracts how the {@link RequestBodyParser} builds an object out of a form body's
+ * decoded fields, without going through reflection.
+ *
+ * Implementations must be thread safe since a single instance is shared by all requests.
+ *
+ * @param <T> the Type of the objects built.
+ */
+public interface FormMapper<T> {
+
+    /**
+     * Builds an object out of the given form fields, ignoring the ones it doesn't know.
+     * @param fields the decoded form fields, by name.
+     * @return the built object, never null.
+     * @throws BodyParseException if a field's value is malformed (400).
+     */
+    T fromForm(Map<String, String> fields) throws BodyParseException;
+}
@@ -0,0 +1,46 @@
+package com.example.app.web.base;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default {@link JsonCodec}, encoding and decoding any object through {@link Gson}'s reflection
+ * based mapping.
+ */
+public class GsonJsonCodec implements JsonCodec {
+
+    private final Gson gson;
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param gson the {@link Gson} instance to map objects with, it's thread safe and can be shared.
+     */
+    public GsonJsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public byte[] toJson(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void writeJson(Object value, OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        gson.toJson(value, writer);
+        writer.flush();
+    }
+
+    @Override
+    public <T> T fromJson(InputStream inputStream, Class<T> type) {
+        return gson.fromJson(new InputStreamReader(inputStream, StandardCharsets.UTF_8), type);
+    }
+}
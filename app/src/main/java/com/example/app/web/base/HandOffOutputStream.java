@@ -0,0 +1,131 @@
+package com.example.app.web.base;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OutputStream} handing what's written to it over to another thread, which writes it to the
+ * actual stream, e.g. a response body encoded on the database executor and sent by a request thread.
+ *
+ * At most capacity writes wait to be sent, past them writers block until the other thread catches
+ * up, or the timeout is over and the client is deemed too slow. A stalled client so holds a bounded
+ * amount of memory, and the writing thread for a bounded time. Either side failing makes the other
+ * side's next call fail. Each side is meant to be used by a single thread.
+ */
+public final class HandOffOutputStream extends OutputStream {
+
+    private static final byte[] END = new byte[0]; // Handed over by close() and cancel(), ends drainTo().
+
+    private final BlockingQueue<byte[]> chunks;
+    private final long timeoutNanos;
+    private volatile boolean cancelled; // Set once either side failed.
+    private boolean closed;
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param capacity the max number of writes waiting to be sent before writers block.
+     * @param timeoutMillis the max time a writer blocks for.
+     */
+    public HandOffOutputStream(int capacity, long timeoutMillis) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Hands a copy of the bytes over, waiting for room if needed.
+     *
+     * @throws IOException if the other side failed, this stream was cancelled or closed, or there
+     * was no room before the timeout was over.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len > 0) {
+            handOver(Arrays.copyOfRange(b, off, off + len));
+        }
+    }
+
+    /**
+     * Hands the end of the stream over, once.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            handOver(END);
+        }
+    }
+
+    /**
+     * Abandons the stream, from either side: what's left is dropped, and the other side's next call
+     * fails.
+     */
+    public void cancel() {
+        cancelled = true;
+        do {
+            chunks.clear(); // Frees a blocked writer, which then sees the cancellation
+        } while (!chunks.offer(END)); // Wakes the thread draining, which sees it too
+    }
+
+    /**
+     * Writes what's handed over to the given stream, on the thread sending it, until this stream is
+     * closed. The given stream is left open.
+     *
+     * @param outputStream the actual stream.
+     * @throws IOException if writing to the given stream failed, cancelling this one, or the other
+     * side cancelled it.
+     */
+    public void drainTo(OutputStream outputStream) throws IOException {
+        try {
+            while (true) {
+                byte[] chunk = chunks.take();
+                if (cancelled) {
+                    throw new IOException("Stream cancelled");
+                }
+                if (chunk == END) {
+                    return;
+                }
+                outputStream.write(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Interrupted while draining");
+        } catch (IOException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    private void handOver(byte[] chunk) throws IOException {
+        try {
+            if (cancelled) {
+                throw new IOException("Stream cancelled");
+            }
+            if (!chunks.offer(chunk, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                cancel();
+                throw new IOException("Timed out handing over the stream, the client is too slow");
+            }
+            if (cancelled) {
+                throw new IOException("Stream cancelled"); // While waiting for room
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Interrupted while handing over the stream");
+        }
+    }
+}
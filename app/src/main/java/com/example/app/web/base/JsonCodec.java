@@ -0,0 +1,39 @@
+package com.example.app.web.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * This interface abstracts how the HttpHandlers encode objects to JSON, and decode them back.
+ * JSON is always encoded as UTF-8 bytes, ready to be written to a Response's body.
+ *
+ * Implementations must be thread safe since a single instance is shared by all requests.
+ */
+public interface JsonCodec {
+
+    /**
+     * Encodes the given object as JSON.
+     * @param value the object to be encoded.
+     * @return the UTF-8 encoded JSON bytes.
+     */
+    byte[] toJson(Object value);
+
+    /**
+     * Encodes the given object as JSON straight into the given stream.
+     * @param value the object to be encoded.
+     * @param outputStream the {@link OutputStream} to write the UTF-8 encoded JSON to.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    void writeJson(Object value, OutputStream outputStream) throws IOException;
+
+    /**
+     * Decodes an object of the given type from a UTF-8 JSON stream.
+     * @param inputStream the {@link InputStream} holding the JSON.
+     * @param type the {@link Class} of the object to be decoded.
+     * @param <T> the Type of the object to be decoded.
+     * @return the decoded object, null if the stream was empty.
+     * @throws com.google.gson.JsonParseException if the stream is not valid JSON for the given type.
+     */
+    <T> T fromJson(InputStream inputStream, Class<T> type);
+}
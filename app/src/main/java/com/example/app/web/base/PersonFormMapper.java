@@ -0,0 +1,28 @@
+package com.example.app.web.base;
+
+import com.example.app.model.Person;
+
+import java.util.Map;
+
+import static com.example.app.web.util.HttpConstants.STATUS_BAD_REQUEST;
+
+/**
+ * Hand-written {@link FormMapper} building a {@link Person} out of its serialized field names, e.g.
+ * "first_name=Jane&last_name=Doe", matching the default {@link com.google.gson.Gson} mapping.
+ */
+public class PersonFormMapper implements FormMapper<Person> {
+
+    @Override
+    public Person fromForm(Map<String, String> fields) throws BodyParseException {
+        String id = fields.get(Person.SERIALIZED_ID);
+        int parsedId = 0;
+        if (id != null) {
+            try {
+                parsedId = Integer.parseInt(id.trim());
+            } catch (NumberFormatException e) {
+                throw new BodyParseException(STATUS_BAD_REQUEST, "Malformed body for Person", e);
+            }
+        }
+        return new Person(parsedId, fields.get(Person.SERIALIZED_FIRST_NAME), fields.get(Person.SERIALIZED_LAST_NAME));
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.app.web.base;
+
+import com.example.app.model.Person;
+import com.example.app.web.util.model.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hand-written {@link JsonCodec} encoding {@link Person}, {@link Person} arrays and lists, and
+ * {@link HttpResponse} objects straight into UTF-8 bytes, without reflection nor an intermediate
+ * {@link String}. Every other type, and all decoding, is left to the fallback codec.
+ *
+ * The output matches the default {@link com.google.gson.Gson} mapping, null fields are left out.
+ */
+public class PersonJsonCodec implements JsonCodec {
+
+    private static final int INITIAL_BUFFER_SIZE = 512; // Initial size of each thread's writer buffer.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024; // Larger buffers are not kept for reuse.
+
+    private static final byte[] NAME_ID = Utf8JsonWriter.encodeName(Person.SERIALIZED_ID);
+    private static final byte[] NAME_FIRST_NAME = Utf8JsonWriter.encodeName(Person.SERIALIZED_FIRST_NAME);
+    private static final byte[] NAME_LAST_NAME = Utf8JsonWriter.encodeName(Person.SERIALIZED_LAST_NAME);
+    private static final byte[] NAME_CODE = Utf8JsonWriter.encodeName(HttpResponse.SERIALIZED_CODE);
+    private static final byte[] NAME_MESSAGE = Utf8JsonWriter.encodeName(HttpResponse.SERIALIZED_MESSAGE);
+
+    private final JsonCodec fallback; // Handles every type not written by hand.
+    private final ThreadLocal<Utf8JsonWriter> writers = new ThreadLocal<>(); // Reusable writer per thread.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param fallback the {@link JsonCodec} handling every other type, usually a {@link GsonJsonCodec}.
+     */
+    public PersonJsonCodec(JsonCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] toJson(Object value) {
+        Utf8JsonWriter writer = getWriter();
+        return write(writer, value) ? writer.toByteArray() : fallback.toJson(value);
+    }
+
+    @Override
+    public void writeJson(Object value, OutputStream outputStream) throws IOException {
+        Utf8JsonWriter writer = getWriter();
+        if (write(writer, value)) {
+            writer.writeTo(outputStream);
+        } else {
+            fallback.writeJson(value, outputStream);
+        }
+    }
+
+    @Override
+    public <T> T fromJson(InputStream inputStream, Class<T> type) {
+        return fallback.fromJson(inputStream, type);
+    }
+
+    /**
+     * Writes a {@link Person} as a JSON object, restricted to the requested fields.
+     *
+     * @param writer the {@link Utf8JsonWriter} to write to.
+     * @param person the {@link Person} to be written.
+     * @param fields the serialized field names to write, null for all but the null ones.
+     */
+    public static void writePerson(Utf8JsonWriter writer, Person person, Set<String> fields) {
+        boolean first = true;
+        writer.writeByte('{');
+        if (fields == null || fields.contains(Person.SERIALIZED_ID)) {
+            writer.writeRaw(NAME_ID);
+            writer.writeNumber(person.getId());
+            first = false;
+        }
+        if (fields == null ? person.getFirstName() != null : fields.contains(Person.SERIALIZED_FIRST_NAME)) {
+            if (!first) writer.writeByte(',');
+            writer.writeRaw(NAME_FIRST_NAME);
+            writer.writeString(person.getFirstName());
+            first = false;
+        }
+        if (fields == null ? person.getLastName() != null : fields.contains(Person.SERIALIZED_LAST_NAME)) {
+            if (!first) writer.writeByte(',');
+            writer.writeRaw(NAME_LAST_NAME);
+            writer.writeString(person.getLastName());
+        }
+        writer.writeByte('}');
+    }
+
+    /**
+     * Writes an {@link HttpResponse} as a JSON object.
+     *
+     * @param writer the {@link Utf8JsonWriter} to write to.
+     * @param response the {@link HttpResponse} to be written.
+     */
+    public static void writeHttpResponse(Utf8JsonWriter writer, HttpResponse response) {
+        writer.writeByte('{');
+        writer.writeRaw(NAME_CODE);
+        writer.writeNumber(response.getCode());
+        if (response.getMessage() != null) {
+            writer.writeByte(',');
+            writer.writeRaw(NAME_MESSAGE);
+            writer.writeString(response.getMessage());
+        }
+        writer.writeByte('}');
+    }
+
+    /**
+     * Writes the given value if it's one of the types handled by hand.
+     *
+     * @return true if the value was written, false if it must be left to the fallback codec.
+     */
+    private static boolean write(Utf8JsonWriter writer, Object value) {
+        if (value instanceof Person) {
+            writePerson(writer, (Person) value, null);
+        } else if (value instanceof HttpResponse) {
+            writeHttpResponse(writer, (HttpResponse) value);
+        } else if (value instanceof Person[]) {
+            Person[] people = (Person[]) value;
+            writer.writeByte('[');
+            for (int i = 0; i < people.length; i++) {
+                if (i > 0) writer.writeByte(',');
+                writeNullablePerson(writer, people[i]);
+            }
+            writer.writeByte(']');
+        } else if (value instanceof List && isPersonList((List<?>) value)) {
+            List<?> people = (List<?>) value;
+            writer.writeByte('[');
+            for (int i = 0; i < people.size(); i++) {
+                if (i > 0) writer.writeByte(',');
+                writeNullablePerson(writer, (Person) people.get(i));
+            }
+            writer.writeByte(']');
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeNullablePerson(Utf8JsonWriter writer, Person person) {
+        if (person == null) {
+            writer.writeNull();
+        } else {
+            writePerson(writer, person, null);
+        }
+    }
+
+    private static boolean isPersonList(List<?> list) {
+        for (int i = 0; i < list.size(); i++) {
+            Object element = list.get(i);
+            if (element != null && !(element instanceof Person)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return this thread's {@link Utf8JsonWriter}, reset and ready to be written to.
+     */
+    private Utf8JsonWriter getWriter() {
+        Utf8JsonWriter writer = writers.get();
+        if (writer == null || writer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            writer = new Utf8JsonWriter(INITIAL_BUFFER_SIZE);
+            writers.set(writer);
+        }
+        writer.reset();
+        return writer;
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.app.web.base;
+
+import com.example.app.web.util.AssetStreamUtil;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.example.app.web.util.HttpConstants.JSON_MIME;
+import static com.example.app.web.util.HttpConstants.STATUS_BAD_REQUEST;
+import static com.example.app.web.util.HttpConstants.STATUS_PAYLOAD_TOO_LARGE;
+
+/**
+ * Parses "application/x-www-form-urlencoded" and "application/json" Request bodies.
+ *
+ * Bodies are read into a pooled byte buffer, only grown for bodies that don't fit, up to a
+ * configurable max size. Form fields are percent-decoded in place, and mapped to objects by the
+ * {@link FormMapper} registered for their type, so the only allocations left are the resulting values.
+ */
+public class RequestBodyParser {
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024; // 64 KiB
+
+    private final int maxBodySize; // Bodies larger than this are rejected with 413.
+    private final Gson gson; // Maps JSON bodies, and form fields of types without a FormMapper, to objects.
+    private final Map<Class<?>, FormMapper<?>> formMappers = new ConcurrentHashMap<>(); // Form mapping per type.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param maxBodySize the max number of bytes accepted in a body.
+     * @param gson the {@link Gson} instance used to map bodies to objects.
+     */
+    public RequestBodyParser(int maxBodySize, Gson gson) {
+        this.maxBodySize = maxBodySize;
+        this.gson = gson;
+    }
+
+    /**
+     * Registers the {@link FormMapper} building objects of the given type out of form fields, instead
+     * of going through {@link Gson}'s reflection.
+     *
+     * @param type the {@link Class} of the objects built.
+     * @param mapper the {@link FormMapper} building them.
+     * @param <T> the Type of the objects built.
+     */
+    public <T> void registerFormMapper(Class<T> type, FormMapper<T> mapper) {
+        formMappers.put(type, mapper);
+    }
+
+    /**
+     * Parses a body into an object of the given type.
+     *
+     * JSON bodies are mapped directly. Form bodies are mapped by the type's {@link FormMapper}, or
+     * failing that by matching each field name with the type's serialized names, e.g.
+     * "first_name=Jane" sets the field annotated with {@code @SerializedName("first_name")}. A body
+     * declared as JSON that doesn't hold a JSON object is parsed as a form, as sent by jQuery when
+     * passing an object as data.
+     *
+     * @param body the Request's body {@link InputStream}.
+     * @param contentType the Request's Content-Type header value, may be null.
+     * @param type the {@link Class} of the object to map the body to.
+     * @param <T> the Type of the object to map the body to.
+     * @return the mapped object, never null.
+     * @throws BodyParseException if the body is too large (413) or malformed (400).
+     * @throws IOException thrown if an I/O error is encountered while reading the stream.
+     */
+    @SuppressWarnings("unchecked") // registerFormMapper only pairs a type with a mapper of that type
+    public <T> T parse(InputStream body, String contentType, Class<T> type) throws BodyParseException, IOException {
+        byte[] pooled = AssetStreamUtil.BUFFER_POOL.acquire();
+        try {
+            Body read = read(body, pooled);
+            if (isJsonType(contentType) && isJsonObject(read.bytes, read.length)) {
+                T parsed = gson.fromJson(new InputStreamReader(
+                        new ByteArrayInputStream(read.bytes, 0, read.length), StandardCharsets.UTF_8), type);
+                if (parsed != null) {
+                    return parsed;
+                }
+            }
+            Map<String, String> form = decodeForm(read.bytes, read.length);
+            FormMapper<T> mapper = (FormMapper<T>) formMappers.get(type);
+            if (mapper != null) {
+                return mapper.fromForm(form);
+            }
+            JsonObject fields = new JsonObject();
+            for (Map.Entry<String, String> field : form.entrySet()) {
+                fields.addProperty(field.getKey(), field.getValue());
+            }
+            return gson.fromJson(fields, type);
+        } catch (JsonParseException e) {
+            throw new BodyParseException(STATUS_BAD_REQUEST, "Malformed body for " + type.getSimpleName(), e);
+        } finally {
+            AssetStreamUtil.BUFFER_POOL.release(pooled);
+        }
+    }
+
+    /**
+     * Parses a JSON array body into a list of objects of the given type, one element at a time, so
+     * a body with too many elements or bytes is refused as soon as they're read, without the whole
+     * array being parsed first.
+     *
+     * @param body the Request's body {@link InputStream}.
+     * @param type the {@link Class} of the array's elements.
+     * @param maxItems the max number of elements accepted.
+     * @param maxBytes the max number of bytes accepted in the body, may exceed this parser's max body size.
+     * @param <T> the Type of the array's elements.
+     * @return the mapped elements, in order, including null ones.
+     * @throws BodyParseException if the body is too large (413) or not a JSON array of the type (400).
+     * @throws IOException thrown if an I/O error is encountered while reading the stream.
+     */
+    public <T> List<T> parseArray(InputStream body, Class<T> type, int maxItems, long maxBytes)
+            throws BodyParseException, IOException {
+        LimitedInputStream limited = new LimitedInputStream(body, maxBytes);
+        List<T> items = new ArrayList<>();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(limited, StandardCharsets.UTF_8));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (items.size() == maxItems) {
+                    throw new BodyParseException(STATUS_PAYLOAD_TOO_LARGE, "More than " + maxItems + " items");
+                }
+                items.add(gson.<T>fromJson(reader, type));
+            }
+            reader.endArray();
+        } catch (MalformedJsonException | EOFException | IllegalStateException | JsonParseException e) {
+            if (limited.exceeded) { // Cut short, parsing failed on the missing end of the body
+                throw new BodyParseException(STATUS_PAYLOAD_TOO_LARGE, "Body larger than " + maxBytes + " bytes");
+            }
+            throw new BodyParseException(STATUS_BAD_REQUEST, "Malformed array of " + type.getSimpleName(), e);
+        }
+        return items;
+    }
+
+    /**
+     * Parses a "application/x-www-form-urlencoded" body, e.g. "first_name=Jane&last_name=Doe".
+     *
+     * @param body the Request's body {@link InputStream}.
+     * @return {@link Map<String, String>} decoded field's key and value String map, empty if the body is empty.
+     * @throws BodyParseException if the body is too large (413) or malformed (400).
+     * @throws IOException thrown if an I/O error is encountered while reading the stream.
+     */
+    public Map<String, String> parseForm(InputStream body) throws BodyParseException, IOException {
+        byte[] pooled = AssetStreamUtil.BUFFER_POOL.acquire();
+        try {
+            Body read = read(body, pooled);
+            return decodeForm(read.bytes, read.length);
+        } finally {
+            AssetStreamUtil.BUFFER_POOL.release(pooled);
+        }
+    }
+
+    /**
+     * Reads the whole body, into the given buffer if it fits, otherwise into a larger copy of it.
+     *
+     * @param body the Request's body {@link InputStream}.
+     * @param buffer the buffer to start reading into.
+     * @return the {@link Body} read.
+     * @throws BodyParseException if the body is larger than the max body size (413).
+     */
+    private Body read(InputStream body, byte[] buffer) throws BodyParseException, IOException {
+        int limit = maxBodySize + 1; // one extra byte to detect larger bodies
+        int length = 0;
+        int read;
+        while (length < limit) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(limit, 2L * buffer.length));
+            }
+            if ((read = body.read(buffer, length, Math.min(buffer.length, limit) - length)) == -1) {
+                break;
+            }
+            length += read;
+        }
+        if (length > maxBodySize) {
+            throw new BodyParseException(STATUS_PAYLOAD_TOO_LARGE, "Body larger than " + maxBodySize + " bytes");
+        }
+        return new Body(buffer, length);
+    }
+
+    private static boolean isJsonType(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, JSON_MIME, 0, JSON_MIME.length());
+    }
+
+    private static boolean isJsonObject(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the form body on '&' and '=', percent-decoding each key and value in place.
+     */
+    private static Map<String, String> decodeForm(byte[] buffer, int length) throws BodyParseException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            int separator = -1;
+            while (end < length && buffer[end] != '&') {
+                if (separator < 0 && buffer[end] == '=') {
+                    separator = end;
+                }
+                end++;
+            }
+            if (end > start) { // skip empty pairs, e.g. "a=1&&b=2"
+                int keyEnd = separator < 0 ? end : separator;
+                String key = decode(buffer, start, keyEnd);
+                String value = separator < 0 ? "" : decode(buffer, separator + 1, end);
+                fields.put(key, value);
+            }
+            start = end + 1;
+        }
+        return fields;
+    }
+
+    /**
+     * Percent-decodes the given slice of the buffer in place, '+' standing for a space, and returns it
+     * as a UTF-8 {@link String}. Decoding never makes the slice longer, so it can be done in place.
+     */
+    private static String decode(byte[] buffer, int from, int to) throws BodyParseException {
+        int write = from;
+        for (int read = from; read < to; read++) {
+            byte b = buffer[read];
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                int high = read + 2 < to ? hexValue(buffer[read + 1]) : -1;
+                int low = high < 0 ? -1 : hexValue(buffer[read + 2]);
+                if (low < 0) {
+                    throw new BodyParseException(STATUS_BAD_REQUEST, "Malformed percent-encoding");
+                }
+                b = (byte) ((high << 4) | low);
+                read += 2;
+            }
+            buffer[write++] = b;
+        }
+        return new String(buffer, from, write - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A body read into a buffer, which may be larger than the body.
+     */
+    private static final class Body {
+        private final byte[] bytes; // Buffer holding the body from its start.
+        private final int length; // Body's length in bytes.
+
+        private Body(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Ends the stream early, as if the body was over, once more than the max number of bytes are read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining; // Bytes left before the limit.
+        private boolean exceeded; // Whether the body is larger than the limit.
+
+        private LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                exceeded = exceeded || in.read() >= 0;
+                return -1;
+            }
+            int read = in.read();
+            if (read >= 0) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                exceeded = exceeded || in.read() >= 0;
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.app.web.base;
+
+import com.example.app.web.util.model.HttpRequest;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Handles the requests matching a route registered on a {@link Router}, e.g. "GET /names/{id:int}".
+ */
+public interface Route {
+
+    /**
+     * @param exchange the {@link HttpExchange} containing the Response instance.
+     * @param request the {@link HttpRequest} instance mapping the HTTP Request received.
+     * @param match the {@link RouteMatch} holding the path parameters parsed from the request's path.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) throws IOException;
+}
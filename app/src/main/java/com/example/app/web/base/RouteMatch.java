@@ -0,0 +1,101 @@
+package com.example.app.web.base;
+
+/**
+ * Result of looking up a request's method and path on a {@link Router}.
+ *
+ * When a route is {@link Status#FOUND}, its path parameters are available by position, e.g. for
+ * "/names/{id:int}" the id is {@code getInt(0)}. Int parameters are parsed while matching, string
+ * parameters are only copied out of the path when asked for.
+ */
+public class RouteMatch {
+
+    /**
+     * The outcome of the lookup.
+     */
+    public enum Status {
+        FOUND, // A route matched both the path and the method.
+        NOT_FOUND, // No route matched the path, respond with 404.
+        METHOD_NOT_ALLOWED // A route matched the path but not the method, respond with 405.
+    }
+
+    static final int MAX_PARAMETERS = 4; // Max number of path parameters in a route template.
+
+    private final String path;
+    private final int[] intValues = new int[MAX_PARAMETERS];
+    private final int[] starts = new int[MAX_PARAMETERS]; // Start index in the path of each parameter.
+    private final int[] ends = new int[MAX_PARAMETERS]; // End index in the path of each parameter.
+    private Status status = Status.NOT_FOUND;
+    private Route route;
+    private String template;
+    private String allowedMethods;
+
+    RouteMatch(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the outcome of the lookup.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the matched {@link Route}, null unless {@link Status#FOUND}.
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the template of the matched path, e.g. "/names/{id:int}", a bounded value fit for
+     * labeling metrics. Null if the path was {@link Status#NOT_FOUND}.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the comma separated methods the matched path accepts, for the Allow header. Null if
+     * the path was {@link Status#NOT_FOUND}.
+     */
+    public String getAllowedMethods() {
+        return allowedMethods;
+    }
+
+    /**
+     * @param position the parameter's position in the route template, starting at 0.
+     * @return the value of an int parameter, e.g. "{id:int}".
+     */
+    public int getInt(int position) {
+        return intValues[position];
+    }
+
+    /**
+     * @param position the parameter's position in the route template, starting at 0.
+     * @return the value of any parameter as it appears in the path.
+     */
+    public String getString(int position) {
+        return path.substring(starts[position], ends[position]);
+    }
+
+    void setParameter(int position, int start, int end, int intValue) {
+        starts[position] = start;
+        ends[position] = end;
+        intValues[position] = intValue;
+    }
+
+    void setFound(Route route, String template, String allowedMethods) {
+        this.status = Status.FOUND;
+        this.route = route;
+        this.template = template;
+        this.allowedMethods = allowedMethods;
+    }
+
+    void setMethodNotAllowed(String template, String allowedMethods) {
+        this.status = Status.METHOD_NOT_ALLOWED;
+        this.route = null;
+        this.template = template;
+        this.allowedMethods = allowedMethods;
+    }
+}
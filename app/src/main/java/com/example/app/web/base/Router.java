@@ -0,0 +1,205 @@
+package com.example.app.web.base;
+
+import com.example.app.web.util.model.HttpMethod;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Routes requests to a {@link Route} by method and path in a single lookup.
+ *
+ * Route templates are split by "/" into a trie, one node per segment. A segment is either static,
+ * e.g. "names", or a path parameter: "{id:int}" only matches non negative decimal ints, parsed
+ * straight from the path's chars, while "{name}" matches any non empty segment. Static segments take
+ * precedence over parameters, so "/names/_bulk" and "/names/{id:int}" can coexist. A single trailing
+ * slash in the path is ignored.
+ *
+ * Routes are registered once at start up, after that the router is read only and thread safe.
+ * Lookups never throw, an unknown path is {@link RouteMatch.Status#NOT_FOUND} and a known path with
+ * an unregistered method is {@link RouteMatch.Status#METHOD_NOT_ALLOWED}.
+ */
+public class Router {
+
+    private static final String INT_PARAMETER_SUFFIX = ":int}";
+
+    private final Node root = new Node();
+
+    /**
+     * Registers a route.
+     *
+     * @param method the {@link HttpMethod} the route responds to.
+     * @param template the path template, e.g. "/names/{id:int}".
+     * @param route the {@link Route} handling the matching requests.
+     * @return this router, to chain the registrations.
+     * @throws IllegalArgumentException if the template is malformed or conflicts with another route.
+     */
+    public Router add(HttpMethod method, String template, Route route) {
+        if (!template.startsWith("/")) {
+            throw new IllegalArgumentException("Route template must start with '/': " + template);
+        }
+        Node node = root;
+        int parameters = 0;
+        for (String segment : template.substring(1).split("/")) {
+            if (segment.isEmpty()) {
+                continue; // root template, or a trailing slash
+            }
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                if (++parameters > RouteMatch.MAX_PARAMETERS) {
+                    throw new IllegalArgumentException("Too many path parameters: " + template);
+                }
+                node = node.parameterChild(segment.endsWith(INT_PARAMETER_SUFFIX), template);
+            } else {
+                node = node.staticChild(segment);
+            }
+        }
+        if (node.template == null) {
+            node.template = template;
+        }
+        if (node.routes.put(method, route) != null) {
+            throw new IllegalArgumentException("Duplicated route: " + method + " " + template);
+        }
+        node.allowedMethods = joinMethods(node.routes);
+        return this;
+    }
+
+    /**
+     * Looks up the route for the given method and path.
+     *
+     * @param method the request's {@link HttpMethod}, null for a method no route can handle.
+     * @param path the request's decoded path, e.g. "/names/42".
+     * @return the {@link RouteMatch}, never null.
+     */
+    public RouteMatch match(HttpMethod method, String path) {
+        RouteMatch match = new RouteMatch(path);
+        int end = path.length();
+        if (end > 1 && path.charAt(end - 1) == '/') {
+            end--; // ignore a single trailing slash
+        }
+        Node node;
+        if (!path.startsWith("/")) {
+            node = null;
+        } else if (end == 1) {
+            node = root; // "/"
+        } else {
+            node = find(root, path, 1, end, 0, match);
+        }
+        if (node == null || node.allowedMethods == null) {
+            return match; // NOT_FOUND
+        }
+        Route route = method == null ? null : node.routes.get(method);
+        if (route == null) {
+            match.setMethodNotAllowed(node.template, node.allowedMethods);
+        } else {
+            match.setFound(route, node.template, node.allowedMethods);
+        }
+        return match;
+    }
+
+    /**
+     * Walks the trie from the given node, matching the path's segment starting at {@code start}.
+     *
+     * @return the node matching the whole path, null if there's none.
+     */
+    private static Node find(Node node, String path, int start, int end, int parameter, RouteMatch match) {
+        if (start > end) {
+            return node; // past the last segment
+        }
+        int segmentEnd = path.indexOf('/', start);
+        if (segmentEnd < 0 || segmentEnd > end) {
+            segmentEnd = end;
+        }
+        int length = segmentEnd - start;
+
+        // Static segments first
+        for (int i = 0; i < node.staticKeys.length; i++) {
+            String key = node.staticKeys[i];
+            if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+                Node found = find(node.staticChildren[i], path, segmentEnd + 1, end, parameter, match);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+
+        // Then the path parameter, if any
+        Node child = node.parameterChild;
+        if (child == null || length == 0) {
+            return null;
+        }
+        int value = 0;
+        if (node.intParameter) {
+            value = parseInt(path, start, segmentEnd);
+            if (value < 0) {
+                return null;
+            }
+        }
+        match.setParameter(parameter, start, segmentEnd, value);
+        return find(child, path, segmentEnd + 1, end, parameter + 1, match);
+    }
+
+    /**
+     * Parses a non negative decimal int without allocating.
+     *
+     * @return the parsed value, -1 if the chars are not digits or overflow an int.
+     */
+    private static int parseInt(String path, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = path.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String joinMethods(Map<HttpMethod, Route> routes) {
+        StringBuilder methods = new StringBuilder();
+        for (HttpMethod method : routes.keySet()) {
+            if (methods.length() > 0) {
+                methods.append(',');
+            }
+            methods.append(method.name());
+        }
+        return methods.toString();
+    }
+
+    /**
+     * A trie node, one per route template segment.
+     */
+    private static final class Node {
+        private String[] staticKeys = new String[0];
+        private Node[] staticChildren = new Node[0];
+        private Node parameterChild;
+        private boolean intParameter; // Whether parameterChild only matches ints.
+        private final Map<HttpMethod, Route> routes = new EnumMap<>(HttpMethod.class);
+        private String allowedMethods; // Comma separated routes' methods, null while there are none.
+        private String template; // Template of the first route registered, used as the node's label.
+
+        private Node staticChild(String key) {
+            for (int i = 0; i < staticKeys.length; i++) {
+                if (staticKeys[i].equals(key)) {
+                    return staticChildren[i];
+                }
+            }
+            Node child = new Node();
+            staticKeys = Arrays.copyOf(staticKeys, staticKeys.length + 1);
+            staticChildren = Arrays.copyOf(staticChildren, staticChildren.length + 1);
+            staticKeys[staticKeys.length - 1] = key;
+            staticChildren[staticChildren.length - 1] = child;
+            return child;
+        }
+
+        private Node parameterChild(boolean intOnly, String template) {
+            if (parameterChild == null) {
+                parameterChild = new Node();
+                intParameter = intOnly;
+            } else if (intParameter != intOnly) {
+                throw new IllegalArgumentException("Conflicting path parameter type: " + template);
+            }
+            return parameterChild;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.app.web.base;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal JSON writer encoding straight into a growable UTF-8 byte buffer, used by the hand-written
+ * {@link JsonCodec}s. It does no structural validation, callers write the separators themselves.
+ *
+ * Strings are escaped as {@link com.google.gson.Gson} does by default, HTML characters included, so
+ * both produce the same bytes. Instances are not thread safe and are meant to be reused.
+ */
+public class Utf8JsonWriter {
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size; // Number of bytes written to the buffer.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param initialCapacity the initial size in bytes of the buffer, it grows as needed.
+     */
+    public Utf8JsonWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes a field's name, e.g. "first_name", as the {@code "first_name":} prefix to be written
+     * with {@link #writeRaw(byte[])}.
+     *
+     * @param name the field's name, expected to need no escaping.
+     * @return the encoded name.
+     */
+    public static byte[] encodeName(String name) {
+        return ("\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a single ASCII character, e.g. a structural one like '{' or ','.
+     */
+    public void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    /**
+     * Writes already encoded bytes, e.g. a name from {@link #encodeName(String)}.
+     */
+    public void writeRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Writes an integer number value.
+     */
+    public void writeNumber(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a quoted and escaped string value, or null.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        // Worst case is 6 bytes per char, i.e. an escaped control char
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] b = buffer;
+        int p = size;
+        b[p++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c < 0x20 || c == '"' || c == '\\' || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'') {
+                    p = writeEscaped(b, p, c);
+                } else {
+                    b[p++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xc0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c == 0x2028 || c == 0x2029) { // line and paragraph separators
+                p = writeUnicodeEscape(b, p, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xf0 | (codePoint >> 18));
+                b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?'; // Unpaired surrogate, replaced as the UTF-8 encoder would
+            } else {
+                b[p++] = (byte) (0xe0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        b[p++] = '"';
+        size = p;
+    }
+
+    /**
+     * Writes a null value.
+     */
+    public void writeNull() {
+        ensureCapacity(4);
+        buffer[size++] = 'n';
+        buffer[size++] = 'u';
+        buffer[size++] = 'l';
+        buffer[size++] = 'l';
+    }
+
+    /**
+     * @return the number of bytes written since the last {@link #reset()}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the size in bytes of the underlying buffer.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Discards the bytes written so far, keeping the buffer to be reused.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the bytes written so far.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Writes the bytes written so far to the given stream.
+     *
+     * @param outputStream the {@link OutputStream} to write to.
+     * @throws IOException thrown if an I/O error is encountered while writing to the stream.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, size);
+    }
+
+    private static int writeEscaped(byte[] b, int p, char c) {
+        switch (c) {
+            case '"':
+                b[p++] = '\\';
+                b[p++] = '"';
+                return p;
+            case '\\':
+                b[p++] = '\\';
+                b[p++] = '\\';
+                return p;
+            case '\n':
+                b[p++] = '\\';
+                b[p++] = 'n';
+                return p;
+            case '\r':
+                b[p++] = '\\';
+                b[p++] = 'r';
+                return p;
+            case '\t':
+                b[p++] = '\\';
+                b[p++] = 't';
+                return p;
+            case '\b':
+                b[p++] = '\\';
+                b[p++] = 'b';
+                return p;
+            case '\f':
+                b[p++] = '\\';
+                b[p++] = 'f';
+                return p;
+            default:
+                return writeUnicodeEscape(b, p, c);
+        }
+    }
+
+    private static int writeUnicodeEscape(byte[] b, int p, char c) {
+        b[p++] = '\\';
+        b[p++] = 'u';
+        b[p++] = HEX_DIGITS[(c >> 12) & 0xf];
+        b[p++] = HEX_DIGITS[(c >> 8) & 0xf];
+        b[p++] = HEX_DIGITS[(c >> 4) & 0xf];
+        b[p++] = HEX_DIGITS[c & 0xf];
+        return p;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.app.web.server;
+
+import android.util.Log;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.example.app.web.util.HttpConstants.CONNECTION_CLOSE;
+import static com.example.app.web.util.HttpConstants.HEADER_CONNECTION;
+import static com.example.app.web.util.HttpConstants.HEADER_RETRY_AFTER;
+import static com.example.app.web.util.HttpConstants.NO_RESPONSE_LENGTH;
+import static com.example.app.web.util.HttpConstants.STATUS_SERVICE_UNAVAILABLE;
+
+/**
+ * Hands every {@link HttpExchange} of its context over to a dedicated {@link Executor}, e.g. one
+ * reserved for database bound handlers, and returns right away.
+ *
+ * This frees the server's request thread, so slow database calls can't starve handlers serving
+ * static assets. The delegate handler completes the exchange on the dedicated executor. When that
+ * executor is full the request is answered with 503 Service Unavailable and a Retry-After header.
+ */
+public class DispatchingHandler implements HttpHandler {
+
+    private static final String TAG = DispatchingHandler.class.getName()+"_TAG"; // Logging TAG
+
+    private final Executor executor; // Executor running the delegate handler.
+    private final HttpHandler delegate; // Handler actually serving the requests.
+    private final String retryAfterSeconds; // Retry-After header value.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param executor the {@link Executor} running the delegate handler, should reject tasks when full.
+     * @param delegate the {@link HttpHandler} actually serving the requests.
+     * @param retryAfterSeconds seconds clients are asked to wait before retrying when rejected.
+     */
+    public DispatchingHandler(Executor executor, HttpHandler delegate, int retryAfterSeconds) {
+        this.executor = executor;
+        this.delegate = delegate;
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delegate.handle(exchange);
+                    } catch (IOException | RuntimeException e) {
+                        // Nothing else will complete this exchange, release its connection
+                        Log.e(TAG, "Handling " + exchange.getRequestURI() + " failed", e);
+                        exchange.close();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set(HEADER_RETRY_AFTER, retryAfterSeconds);
+            // The request body is left unread, closing the connection saves draining it
+            exchange.getResponseHeaders().set(HEADER_CONNECTION, CONNECTION_CLOSE);
+            exchange.sendResponseHeaders(STATUS_SERVICE_UNAVAILABLE, NO_RESPONSE_LENGTH);
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.app.web.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * ExecutionMode enumerates the ways the HTTP server can run the {@link com.sun.net.httpserver.HttpExchange}s
+ * it receives.
+ */
+public enum ExecutionMode {
+    /**
+     * Each exchange runs on its own virtual thread, where the runtime supports them. Falls back to
+     * {@link #BOUNDED_POOL} otherwise, e.g. on Android's runtime.
+     */
+    VIRTUAL_THREADS,
+    /**
+     * Exchanges run on a small, fixed {@link RequestExecutor} pool with a bounded queue.
+     */
+    BOUNDED_POOL;
+
+    /**
+     * Creates the executor for this mode.
+     *
+     * @param threads the fixed number of threads used by the {@link #BOUNDED_POOL} mode or fallback.
+     * @param queueCapacity the queue capacity used by the {@link #BOUNDED_POOL} mode or fallback.
+     * @return {@link ExecutorService} to be set on the HTTP server.
+     */
+    public ExecutorService createExecutor(int threads, int queueCapacity) {
+        if (this == VIRTUAL_THREADS) {
+            ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if (virtualThreads != null) {
+                return virtualThreads;
+            }
+        }
+        return new RequestExecutor(threads, queueCapacity);
+    }
+
+    /**
+     * @return true if the current runtime supports virtual threads.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return findVirtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()} through reflection, so the app
+     * still compiles and runs on runtimes without virtual threads.
+     *
+     * @return the new {@link ExecutorService}, null if virtual threads are not supported.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method factory = findVirtualThreadFactoryMethod();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.app.web.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+import static com.example.app.web.util.HttpConstants.CONNECTION_CLOSE;
+import static com.example.app.web.util.HttpConstants.HEADER_CONNECTION;
+import static com.example.app.web.util.HttpConstants.HEADER_RETRY_AFTER;
+import static com.example.app.web.util.HttpConstants.NO_RESPONSE_LENGTH;
+import static com.example.app.web.util.HttpConstants.STATUS_SERVICE_UNAVAILABLE;
+
+/**
+ * Answers requests rejected by the {@link RequestExecutor} with 503 Service Unavailable and a
+ * Retry-After header, without invoking the context's handler.
+ *
+ * Must be added to every context created on a server using a {@link RequestExecutor}.
+ */
+public class OverloadFilter extends Filter {
+
+    private final String retryAfterSeconds; // Retry-After header value.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param retryAfterSeconds seconds clients are asked to wait before retrying.
+     */
+    public OverloadFilter(int retryAfterSeconds) {
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (RequestExecutor.isRejectedRequest()) {
+            exchange.getResponseHeaders().set(HEADER_RETRY_AFTER, retryAfterSeconds);
+            // The request body is left unread, closing the connection saves draining it
+            exchange.getResponseHeaders().set(HEADER_CONNECTION, CONNECTION_CLOSE);
+            exchange.sendResponseHeaders(STATUS_SERVICE_UNAVAILABLE, NO_RESPONSE_LENGTH);
+            exchange.close();
+        } else {
+            chain.doFilter(exchange);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Answers requests rejected by the RequestExecutor with 503 Service Unavailable";
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.app.web.server;
+
+import com.example.app.metrics.Gauge;
+import com.example.app.metrics.LatencyHistogram;
+import com.example.app.metrics.MetricsRegistry;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, instrumented {@link java.util.concurrent.Executor} for the HTTP server.
+ *
+ * Runs requests on a fixed number of threads fed by a bounded queue. When both are full the request
+ * is handed to a dedicated rejection thread instead, where it runs flagged as rejected, so the
+ * {@link OverloadFilter} answers it with 503 Service Unavailable before any handler is invoked.
+ * Running a request reads its headers from the client, so it's never done on the server's
+ * dispatcher thread, which a slow client would otherwise stall for the whole server.
+ *
+ * Executors created with {@code answerRejected} set to false, e.g. the one behind a
+ * {@link DispatchingHandler}, throw {@link RejectedExecutionException} instead.
+ *
+ * Queue depth, active threads, rejections and queue wait times are tracked to size the pool, see
+ * {@link #registerMetrics(MetricsRegistry)}.
+ */
+public class RequestExecutor extends ThreadPoolExecutor {
+
+    // Set while a rejected request runs on the rejection thread, read by the OverloadFilter.
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+    private static final int REJECTION_THREADS = 1; // Threads answering rejected requests with 503.
+
+    private final String name; // Prefix of the thread names, labels the executor's metrics.
+    private final AtomicLong rejectedCount = new AtomicLong(); // Requests answered with 503.
+    private volatile LatencyHistogram queueWait; // Time spent waiting in the queue, null until registered.
+    private final ThreadPoolExecutor rejectionExecutor; // Answers rejected requests, null if they're thrown instead.
+
+    /**
+     * Main constructor for this class, creates the executor set on the HTTP server.
+     *
+     * @param threads the fixed number of threads handling requests.
+     * @param queueCapacity the max number of requests waiting for a thread before new ones are rejected.
+     */
+    public RequestExecutor(int threads, int queueCapacity) {
+        this("http-request", threads, queueCapacity, true);
+    }
+
+    /**
+     * Overloaded constructor to choose the threads' name and how rejected tasks are dealt with.
+     *
+     * @param threadPrefix the prefix of the executor's thread names.
+     * @param threads the fixed number of threads running tasks.
+     * @param queueCapacity the max number of tasks waiting for a thread before new ones are rejected,
+     *                      0 to only hand tasks over to idle threads, e.g. for tasks that may never end.
+     * @param answerRejected true to run rejected requests on a rejection thread, flagged for the
+     *                       {@link OverloadFilter}, false to throw {@link RejectedExecutionException}.
+     */
+    public RequestExecutor(String threadPrefix, int threads, int queueCapacity, boolean answerRejected) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                newQueue(queueCapacity),
+                new NamedThreadFactory(threadPrefix),
+                new OverloadPolicy());
+        this.name = threadPrefix;
+        if (answerRejected) {
+            // Unbounded, since refusing a request there too would leak its connection. Each queued
+            // request holds an accepted connection, so they're bounded by the open sockets anyway.
+            rejectionExecutor = new ThreadPoolExecutor(REJECTION_THREADS, REJECTION_THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(threadPrefix + "-rejected"));
+        } else {
+            rejectionExecutor = null;
+        }
+        prestartAllCoreThreads();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedRunnable(command, this));
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (rejectionExecutor != null) {
+            rejectionExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        if (rejectionExecutor != null) {
+            rejectionExecutor.shutdownNow();
+        }
+        return super.shutdownNow();
+    }
+
+    /**
+     * @return a queue holding up to the given number of tasks, or a {@link SynchronousQueue} handing
+     * them over to an idle thread if 0.
+     */
+    private static BlockingQueue<Runnable> newQueue(int capacity) {
+        return capacity == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(capacity);
+    }
+
+    /**
+     * @return true if the current thread is running a request rejected because of overload.
+     */
+    static boolean isRejectedRequest() {
+        return Boolean.TRUE.equals(REJECTED.get());
+    }
+
+    /**
+     * @return the number of requests waiting in the queue for a thread.
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return the number of requests rejected with 503 since the executor started.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Exposes the executor's queue depth, busy threads, rejections and queue wait times on the
+     * given registry, labeled with the executor's thread prefix. Queue waits are recorded from then on.
+     *
+     * @param registry the {@link MetricsRegistry} to register the executor's metrics on.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        String labels = MetricsRegistry.label("executor", name);
+        registry.gauge("executor_queue_depth", "Tasks waiting in the executor's queue.", labels, new Gauge() {
+            @Override
+            public long getValue() {
+                return getQueueDepth();
+            }
+        });
+        registry.gauge("executor_active_threads", "Executor threads busy running a task.", labels, new Gauge() {
+            @Override
+            public long getValue() {
+                return getActiveCount();
+            }
+        });
+        registry.gauge("executor_rejected_tasks", "Tasks rejected since the executor started.", labels, new Gauge() {
+            @Override
+            public long getValue() {
+                return getRejectedCount();
+            }
+        });
+        queueWait = registry.histogram("executor_queue_wait_seconds", "Time tasks waited in the executor's queue for a thread.", labels);
+    }
+
+    private void recordQueueWait(long nanos) {
+        LatencyHistogram histogram = queueWait;
+        if (histogram != null) {
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Wraps each request to measure how long it waited in the queue.
+     */
+    private static final class TimedRunnable implements Runnable {
+        private final Runnable delegate;
+        private final RequestExecutor executor;
+        private final long enqueuedAt = System.nanoTime();
+
+        TimedRunnable(Runnable delegate, RequestExecutor executor) {
+            this.delegate = delegate;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            executor.recordQueueWait(System.nanoTime() - enqueuedAt);
+            delegate.run();
+        }
+
+        void runRejected() {
+            REJECTED.set(Boolean.TRUE);
+            try {
+                delegate.run();
+            } finally {
+                REJECTED.remove();
+            }
+        }
+    }
+
+    /**
+     * Hands rejected requests to the rejection thread, where they run flagged so they are answered
+     * with 503 instead of being handled. Throws {@link RejectedExecutionException} when rejected
+     * requests aren't answered, or the executor is shut down.
+     */
+    private static final class OverloadPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            RequestExecutor requestExecutor = (RequestExecutor) executor;
+            requestExecutor.rejectedCount.incrementAndGet();
+            if (requestExecutor.rejectionExecutor == null || executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor is overloaded or shut down");
+            }
+            final TimedRunnable rejected = (TimedRunnable) runnable;
+            requestExecutor.rejectionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    rejected.runRejected();
+                }
+            });
+        }
+    }
+
+    /**
+     * Names the executor's threads to make them easy to spot in thread dumps.
+     */
+    static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, prefix + "-" + count.incrementAndGet());
+        }
+    }
+}
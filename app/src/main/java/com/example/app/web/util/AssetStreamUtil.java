@@ -0,0 +1,146 @@
+package com.example.app.web.util;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper class to move files and assets as raw bytes, through buffers taken from a shared
+ * {@link BufferPool}. Contents are never decoded to characters, so they are served byte for byte.
+ */
+public final class AssetStreamUtil {
+
+    private static final int BUFFER_SIZE = 16 * 1024; // Bytes copied at a time.
+    private static final int MAX_POOLED_BUFFERS = 16; // Idle buffers kept for reuse.
+
+    public static final BufferPool BUFFER_POOL = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    private AssetStreamUtil() {
+        // Private empty constructor to avoid accidental instantiation
+    }
+
+    /**
+     * Will read all the bytes from the given InputStream and close it.
+     *
+     * @param inputStream the {@link InputStream} of the File/Asset to be read
+     * @return byte array with the file/asset's contents.
+     * @throws IOException thrown if there's an error performing the File I/O operations
+     */
+    public static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            copy(inputStream, out, 0, Long.MAX_VALUE);
+        } finally {
+            inputStream.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Will copy a range of bytes from the given InputStream to the OutputStream. Neither is closed.
+     *
+     * @param in the {@link InputStream} to read from.
+     * @param out the {@link OutputStream} to write to.
+     * @param offset the number of bytes to skip before copying.
+     * @param length the max number of bytes to copy, {@link Long#MAX_VALUE} to copy until the end.
+     * @return the number of bytes copied.
+     * @throws IOException thrown if there's an error performing the I/O operations
+     */
+    public static long copy(InputStream in, OutputStream out, long offset, long length) throws IOException {
+        skipFully(in, offset);
+        byte[] buffer = BUFFER_POOL.acquire();
+        try {
+            long copied = 0;
+            while (copied < length) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+            return copied;
+        } finally {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    /**
+     * Will copy a range of bytes of an asset to the given OutputStream, which is not closed.
+     *
+     * Assets stored uncompressed in the APK are read straight from its file through an
+     * {@link AssetFileDescriptor}'s {@link FileChannel}, seeking to the offset instead of skipping.
+     * Compressed assets fall back to the {@link AssetManager}'s streaming {@link InputStream}.
+     *
+     * @param assetManager the {@link AssetManager} holding the asset.
+     * @param assetPath the asset's path, e.g. "www/static/video.mp4".
+     * @param out the {@link OutputStream} to write to.
+     * @param offset the first byte of the asset to copy.
+     * @param length the number of bytes to copy.
+     * @return the number of bytes copied.
+     * @throws IOException thrown if there's an error performing the I/O operations
+     */
+    public static long copyAsset(AssetManager assetManager, String assetPath, OutputStream out,
+                                 long offset, long length) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assetManager.openFd(assetPath);
+        } catch (FileNotFoundException e) {
+            descriptor = null; // asset is compressed, it can only be streamed
+        }
+
+        if (descriptor == null) {
+            InputStream in = assetManager.open(assetPath, AssetManager.ACCESS_STREAMING);
+            try {
+                return copy(in, out, offset, length);
+            } finally {
+                in.close();
+            }
+        }
+
+        FileInputStream in = descriptor.createInputStream();
+        byte[] buffer = BUFFER_POOL.acquire();
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long end = Math.min(offset + length, descriptor.getLength());
+            long position = offset;
+            while (position < end) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, end - position));
+                int read = channel.read(byteBuffer, descriptor.getStartOffset() + position);
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                position += read;
+            }
+            return position - offset;
+        } finally {
+            BUFFER_POOL.release(buffer);
+            in.close();
+            descriptor.close();
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    return; // reached the end before the offset
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
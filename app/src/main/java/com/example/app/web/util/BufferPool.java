@@ -0,0 +1,50 @@
+package com.example.app.web.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small, thread-safe pool of fixed size byte arrays reused for stream copies, so serving a file
+ * doesn't allocate a new buffer per request.
+ */
+public final class BufferPool {
+
+    private final int bufferSize; // Size in bytes of every buffer handed out.
+    private final ArrayBlockingQueue<byte[]> buffers; // Buffers available for reuse.
+
+    /**
+     * Main constructor for this class.
+     *
+     * @param bufferSize the size in bytes of every buffer handed out.
+     * @param maxPooled the max number of idle buffers kept for reuse.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Takes an idle buffer from the pool, or allocates a new one if none is available.
+     * Must be given back through {@link #release(byte[])} once done.
+     *
+     * @return byte array of {@link #getBufferSize()} bytes.
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Gives a buffer back to the pool. It's dropped if the pool is already full.
+     *
+     * @param buffer the buffer obtained from {@link #acquire()}.
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -12,29 +12,70 @@ public final class HttpConstants {
     // Headers Constants ---------------------------------------------------------------------------
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String HEADER_ALLOW = "Allow";
+    public static final String HEADER_RETRY_AFTER = "Retry-After";
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String HEADER_VARY = "Vary";
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    public static final String HEADER_RANGE = "Range";
+    public static final String HEADER_IF_RANGE = "If-Range";
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+    public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    public static final String HEADER_CONNECTION = "Connection";
+    public static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+    public static final String HEADER_PREFER = "Prefer";
+    public static final String HEADER_PREFERENCE_APPLIED = "Preference-Applied";
+    public static final String HEADER_LOCATION = "Location";
+    public static final String PREFER_RESPOND_ASYNC = "respond-async";
+    public static final String CONNECTION_CLOSE = "close";
+    public static final String CONNECTION_KEEP_ALIVE = "keep-alive";
+    public static final String PROTOCOL_HTTP_1_0 = "HTTP/1.0";
+    public static final String ENCODING_GZIP = "gzip";
+    public static final String RANGE_UNIT_BYTES = "bytes";
+    public static final String CACHE_CONTROL_NO_CACHE = "no-cache";
     public static final int NO_RESPONSE_LENGTH = -1;
+    public static final int CHUNKED_RESPONSE_LENGTH = 0;
 
     // MIME Constants ------------------------------------------------------------------------------
     public static final String HTML_MIME = "text/html";
     public static final String JSON_MIME = "application/json";
     public static final String JS_MIME = "application/javascript";
+    public static final String CSS_MIME = "text/css";
+    public static final String PNG_MIME = "image/png";
+    public static final String SVG_MIME = "image/svg+xml";
+    public static final String BINARY_MIME = "application/octet-stream";
+    public static final String EVENT_STREAM_MIME = "text/event-stream";
+    public static final String PROMETHEUS_TEXT_MIME = "text/plain; version=0.0.4; charset=utf-8";
 
     // Extensions Constants ------------------------------------------------------------------------
+    public static final String HTML_EXTENSION = ".html";
     public static final String JS_EXTENSION = ".js";
+    public static final String CSS_EXTENSION = ".css";
+    public static final String JSON_EXTENSION = ".json";
+    public static final String PNG_EXTENSION = ".png";
+    public static final String SVG_EXTENSION = ".svg";
 
     // Method Constants ----------------------------------------------------------------------------
     public static final String METHOD_GET = "GET";
     public static final String METHOD_POST = "POST";
-    public static final String METHOD_PUT = "POST";
-    public static final String METHOD_DELETE = "POST";
+    public static final String METHOD_PUT = "PUT";
+    public static final String METHOD_DELETE = "DELETE";
     public static final String ALLOWED_METHODS = METHOD_GET + "," + METHOD_POST + "," + METHOD_PUT + "," + METHOD_DELETE;
 
     // Response Codes Constants --------------------------------------------------------------------
     public static final int STATUS_SUCCESS = 200;
+    public static final int STATUS_ACCEPTED = 202;
+    public static final int STATUS_PARTIAL_CONTENT = 206;
+    public static final int STATUS_NOT_MODIFIED = 304;
     public static final int STATUS_BAD_REQUEST = 400;
     public static final int STATUS_NOT_FOUND = 404;
     public static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    public static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    public static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
     public static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+    public static final int STATUS_SERVICE_UNAVAILABLE = 503;
 
     // Response Messages Constants -----------------------------------------------------------------
     public static final String MESSAGE_BAD_REQUEST = "API cannot process this request.";
@@ -0,0 +1,164 @@
+package com.example.app.web.util;
+
+import android.content.res.AssetManager;
+
+import com.example.app.web.util.model.StaticAsset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.app.web.util.HttpConstants.BINARY_MIME;
+import static com.example.app.web.util.HttpConstants.CSS_EXTENSION;
+import static com.example.app.web.util.HttpConstants.CSS_MIME;
+import static com.example.app.web.util.HttpConstants.HTML_EXTENSION;
+import static com.example.app.web.util.HttpConstants.HTML_MIME;
+import static com.example.app.web.util.HttpConstants.JS_EXTENSION;
+import static com.example.app.web.util.HttpConstants.JS_MIME;
+import static com.example.app.web.util.HttpConstants.JSON_EXTENSION;
+import static com.example.app.web.util.HttpConstants.JSON_MIME;
+import static com.example.app.web.util.HttpConstants.PNG_EXTENSION;
+import static com.example.app.web.util.HttpConstants.PNG_MIME;
+import static com.example.app.web.util.HttpConstants.SVG_EXTENSION;
+import static com.example.app.web.util.HttpConstants.SVG_MIME;
+
+/**
+ * In-memory cache of a web root's asset tree.
+ *
+ * Every file under the root is read once, when the cache is created, into a {@link StaticAsset}
+ * holding its entity tags. Files up to {@value MAX_IN_MEMORY_SIZE} bytes also keep their bytes and
+ * gzip variant, so serving them never touches the {@link AssetManager}. Larger files are streamed
+ * through {@link AssetStreamUtil#copyAsset} instead.
+ */
+public final class StaticAssetCache {
+
+    private static final int MAX_IN_MEMORY_SIZE = 256 * 1024; // Larger assets are streamed on every request.
+
+    private final Map<String, StaticAsset> assets; // Assets keyed by request path, e.g. "/index.html".
+
+    private StaticAssetCache(Map<String, StaticAsset> assets) {
+        this.assets = Collections.unmodifiableMap(assets);
+    }
+
+    /**
+     * Loads every asset found under the given web root.
+     *
+     * @param assetManager the {@link AssetManager} to read the assets from.
+     * @param webRoot the assets folder to load, e.g. "www".
+     * @return {@link StaticAssetCache} holding all the assets found.
+     * @throws IOException thrown if there's an error reading the assets.
+     */
+    public static StaticAssetCache load(AssetManager assetManager, String webRoot) throws IOException {
+        Map<String, StaticAsset> assets = new HashMap<>();
+        loadFolder(assetManager, webRoot, "", assets);
+        return new StaticAssetCache(assets);
+    }
+
+    /**
+     * Finds the asset served for the given request path.
+     *
+     * @param path the request path, e.g. "/static/js/functions.js".
+     * @return the {@link StaticAsset}, null if there is no asset for that path.
+     */
+    public StaticAsset get(String path) {
+        return assets.get(path);
+    }
+
+    /**
+     * @return the number of assets held in memory.
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    private static void loadFolder(AssetManager assetManager, String webRoot, String folder,
+                                   Map<String, StaticAsset> assets) throws IOException {
+        String[] children = assetManager.list(webRoot + folder);
+        if (children == null) {
+            return;
+        }
+        for (String child : children) {
+            String path = folder + "/" + child;
+            String[] grandChildren = assetManager.list(webRoot + path);
+            if (grandChildren != null && grandChildren.length > 0) {
+                loadFolder(assetManager, webRoot, path, assets);
+            } else {
+                assets.put(path, loadAsset(assetManager, webRoot + path, path));
+            }
+        }
+    }
+
+    private static StaticAsset loadAsset(AssetManager assetManager, String assetPath, String path) throws IOException {
+        // Single pass over the asset computing its checksum, keeping its bytes only while small enough
+        InputStream in = assetManager.open(assetPath, AssetManager.ACCESS_STREAMING);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] buffer = AssetStreamUtil.BUFFER_POOL.acquire();
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                length += read;
+                if (content != null && length <= MAX_IN_MEMORY_SIZE) {
+                    content.write(buffer, 0, read);
+                } else {
+                    content = null; // too large, will be streamed
+                }
+            }
+        } finally {
+            AssetStreamUtil.BUFFER_POOL.release(buffer);
+            in.close();
+        }
+
+        String etag = etag(crc.getValue(), length, "");
+        if (content == null) {
+            return new StaticAsset(assetPath, contentTypeOf(path), length, etag, null, null, null);
+        }
+
+        byte[] bytes = content.toByteArray();
+        byte[] gzipContent = gzip(bytes);
+        if (gzipContent.length >= bytes.length) {
+            gzipContent = null; // not worth it, always serve the identity content
+        }
+        return new StaticAsset(assetPath, contentTypeOf(path), length, etag, bytes, gzipContent,
+                gzipContent == null ? null : etag(crc.getValue(), length, "-gz"));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 32);
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+        gzipOut.write(content);
+        gzipOut.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Strong entity tag made of the content's CRC32 and length, suffixed per encoding.
+     */
+    private static String etag(long crc, long length, String suffix) {
+        return "\"" + Long.toHexString(crc) + "-" + Long.toHexString(length) + suffix + "\"";
+    }
+
+    private static String contentTypeOf(String path) {
+        if (path.endsWith(HTML_EXTENSION)) {
+            return HTML_MIME;
+        } else if (path.endsWith(JS_EXTENSION)) {
+            return JS_MIME;
+        } else if (path.endsWith(CSS_EXTENSION)) {
+            return CSS_MIME;
+        } else if (path.endsWith(JSON_EXTENSION)) {
+            return JSON_MIME;
+        } else if (path.endsWith(PNG_EXTENSION)) {
+            return PNG_MIME;
+        } else if (path.endsWith(SVG_EXTENSION)) {
+            return SVG_MIME;
+        }
+        return BINARY_MIME;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.app.web.util.model;
+
+import com.example.app.model.Person;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Maps a single item of the JSON array received by the "/names/_bulk" endpoint, e.g.
+ * {"op": "update", "id": 3, "first_name": "Jane", "last_name": "Doe"}.
+ */
+public class BulkOperation {
+    public static final String OP_CREATE = "create";
+    public static final String OP_UPDATE = "update";
+    public static final String OP_DELETE = "delete";
+
+    @SerializedName("op")
+    private String op;
+    @SerializedName(Person.SERIALIZED_ID)
+    private int id;
+    @SerializedName(Person.SERIALIZED_FIRST_NAME)
+    private String firstName;
+    @SerializedName(Person.SERIALIZED_LAST_NAME)
+    private String lastName;
+
+    public String getOp() {
+        return op;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOperation{" +
+                "op='" + op + '\'' +
+                ", id=" + id +
+                ", firstName='" + firstName + '\'' +
+                ", lastName='" + lastName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.app.web.util.model;
+
+import com.example.app.model.Person;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Result of a single {@link BulkOperation}, returned in the same order the operations were received.
+ */
+public class BulkResult {
+
+    @SerializedName("op")
+    private String op;
+    @SerializedName(Person.SERIALIZED_ID)
+    private long id;
+    @SerializedName("code")
+    private int code;
+    @SerializedName("message")
+    private String message;
+
+    public BulkResult(String op, long id, int code, String message) {
+        this.op = op;
+        this.id = id;
+        this.code = code;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult{" +
+                "op='" + op + '\'' +
+                ", id=" + id +
+                ", code=" + code +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
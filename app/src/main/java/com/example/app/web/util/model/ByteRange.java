@@ -0,0 +1,36 @@
+package com.example.app.web.util.model;
+
+/**
+ * ByteRange maps a single, already resolved, "bytes=start-end" range of an HTTP Range header.
+ * Both ends are inclusive, as in the Content-Range header.
+ */
+public class ByteRange {
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" +
+                "start=" + start +
+                ", end=" + end +
+                '}';
+    }
+}
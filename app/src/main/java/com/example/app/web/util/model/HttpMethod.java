@@ -9,4 +9,22 @@ public enum HttpMethod {
     POST,
     PUT,
     DELETE,
+    ;
+
+    private static final HttpMethod[] VALUES = values(); // values() returns a new array on each call.
+
+    /**
+     * Maps a Request's method name to its constant without throwing for unknown methods.
+     *
+     * @param name the method name, e.g. "GET", case insensitive.
+     * @return the matching {@link HttpMethod}, null if it's not one the service handles.
+     */
+    public static HttpMethod fromName(String name) {
+        for (HttpMethod method : VALUES) {
+            if (method.name().equalsIgnoreCase(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
 }
@@ -6,18 +6,24 @@ import com.sun.net.httpserver.HttpExchange;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import static com.example.app.web.util.HttpConstants.CONTENT_TYPE;
+
 public class HttpRequest {
 
     private Headers headers;
-    private HttpMethod requestMethod;
+    private HttpMethod requestMethod; // null if it's not a method the service handles.
     private String requestPath;
+    private String requestQuery;
+    private String requestContentType;
     private final OutputStream responseBody;
     private InputStream requestBody;
 
     public HttpRequest(HttpExchange httpExchange) {
         this.headers = httpExchange.getResponseHeaders();
-        this.requestMethod = HttpMethod.valueOf(httpExchange.getRequestMethod().toUpperCase());
+        this.requestMethod = HttpMethod.fromName(httpExchange.getRequestMethod());
         this.requestPath = httpExchange.getRequestURI().getPath();
+        this.requestQuery = httpExchange.getRequestURI().getRawQuery();
+        this.requestContentType = httpExchange.getRequestHeaders().getFirst(CONTENT_TYPE);
         this.responseBody = httpExchange.getResponseBody();
         this.requestBody = httpExchange.getRequestBody();
     }
@@ -34,6 +40,14 @@ public class HttpRequest {
         return requestPath;
     }
 
+    public String getRequestQuery() {
+        return requestQuery;
+    }
+
+    public String getRequestContentType() {
+        return requestContentType;
+    }
+
     public OutputStream getResponseBody() {
         return responseBody;
     }
@@ -3,10 +3,12 @@ package com.example.app.web.util.model;
 import com.google.gson.annotations.SerializedName;
 
 public class HttpResponse {
+    public static final String SERIALIZED_CODE = "code";
+    public static final String SERIALIZED_MESSAGE = "message";
 
-    @SerializedName("code")
+    @SerializedName(SERIALIZED_CODE)
     private int code;
-    @SerializedName("message")
+    @SerializedName(SERIALIZED_MESSAGE)
     private String message;
 
     public HttpResponse(int code, String message) {
@@ -14,6 +16,14 @@ public class HttpResponse {
         this.message = message;
     }
 
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
     @Override
     public String toString() {
         return "HttpResponse{" +
@@ -22,4 +32,3 @@ public class HttpResponse {
                 '}';
     }
 }
-
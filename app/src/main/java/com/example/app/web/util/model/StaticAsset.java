@@ -0,0 +1,78 @@
+package com.example.app.web.util.model;
+
+/**
+ * StaticAsset describes a file of the web root along with its entity tags.
+ *
+ * Small files are fully loaded in memory with a pre-computed gzip variant, so they can be served
+ * without any I/O or re-encoding. Larger files only keep their metadata and are streamed from their
+ * asset path on every request.
+ */
+public class StaticAsset {
+
+    private final String assetPath;
+    private final String contentType;
+    private final long length;
+    private final String etag;
+    private final byte[] content; // null if the asset is streamed from its asset path.
+    private final byte[] gzipContent; // null if streamed, or if gzip doesn't make the content smaller.
+    private final String gzipEtag;
+
+    public StaticAsset(String assetPath, String contentType, long length, String etag,
+                       byte[] content, byte[] gzipContent, String gzipEtag) {
+        this.assetPath = assetPath;
+        this.contentType = contentType;
+        this.length = length;
+        this.etag = etag;
+        this.content = content;
+        this.gzipContent = gzipContent;
+        this.gzipEtag = gzipEtag;
+    }
+
+    public String getAssetPath() {
+        return assetPath;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public boolean hasGzipContent() {
+        return gzipContent != null;
+    }
+
+    public byte[] getGzipContent() {
+        return gzipContent;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    @Override
+    public String toString() {
+        return "StaticAsset{" +
+                "assetPath='" + assetPath + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", length=" + length +
+                ", inMemory=" + isInMemory() +
+                ", gzipLength=" + (gzipContent == null ? -1 : gzipContent.length) +
+                ", etag='" + etag + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.app.web.util.model;
+
+import com.example.app.model.Person;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Status of a write accepted by the write-behind queue, polled at "/names/_writes/{id}".
+ */
+public class WriteStatus {
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_APPLIED = "applied";
+    public static final String STATUS_FAILED = "failed";
+
+    @SerializedName("write_id")
+    private int writeId;
+    @SerializedName("op")
+    private String op;
+    @SerializedName("status")
+    private String status;
+    @SerializedName(Person.SERIALIZED_ID)
+    private long id;
+    @SerializedName("code")
+    private int code;
+    @SerializedName("message")
+    private String message;
+
+    public WriteStatus(int writeId, String op, String status, long id, int code, String message) {
+        this.writeId = writeId;
+        this.op = op;
+        this.status = status;
+        this.id = id;
+        this.code = code;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteStatus{" +
+                "writeId=" + writeId +
+                ", op='" + op + '\'' +
+                ", status='" + status + '\'' +
+                ", id=" + id +
+                ", code=" + code +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.app.repository;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Latencies measured by the repository benchmarks, shared by the JVM and the instrumented ones.
+ *
+ * Each scenario's samples are summed up as percentiles, and can be written in JMH's JSON result
+ * format, the one the benchmark module writes, so runs of every benchmark are kept per commit and
+ * compared with the same tools, e.g. https://jmh.morethan.io
+ */
+final class BenchmarkResults {
+
+    private static final double[] PERCENTILES = {0, 50, 90, 99, 100}; // Reported percentiles.
+    private static final double NANOS_PER_MICRO = 1000;
+
+    private final String benchmarkClass; // Prefixes the scenarios' names, like JMH's benchmark names.
+    private final JsonArray results = new JsonArray();
+
+    /**
+     * @param benchmarkClass the class running the scenarios.
+     */
+    BenchmarkResults(Class<?> benchmarkClass) {
+        this.benchmarkClass = benchmarkClass.getName();
+    }
+
+    /**
+     * Adds a scenario's results, as a JMH "sample" mode benchmark measured in microseconds.
+     *
+     * @param scenario the scenario's name.
+     * @param warmUp the number of iterations discarded before measuring.
+     * @param samples the measured latencies, in nanoseconds.
+     * @return the percentiles, see {@link #describe(long[])}.
+     */
+    synchronized String add(String scenario, int warmUp, long[] samples) {
+        long[] sorted = sort(samples);
+        long sum = 0;
+        for (long sample : sorted) {
+            sum += sample;
+        }
+        JsonObject percentiles = new JsonObject();
+        for (double percentile : PERCENTILES) {
+            percentiles.addProperty(String.valueOf(percentile), percentile(sorted, percentile) / NANOS_PER_MICRO);
+        }
+        JsonObject primaryMetric = new JsonObject();
+        primaryMetric.addProperty("score", sum / NANOS_PER_MICRO / sorted.length);
+        primaryMetric.addProperty("scoreUnit", "us/op");
+        primaryMetric.add("scorePercentiles", percentiles);
+        JsonObject result = new JsonObject();
+        result.addProperty("benchmark", benchmarkClass + "." + scenario);
+        result.addProperty("mode", "sample");
+        result.addProperty("threads", 1);
+        result.addProperty("forks", 1);
+        result.addProperty("warmupIterations", warmUp);
+        result.addProperty("measurementIterations", sorted.length);
+        result.add("primaryMetric", primaryMetric);
+        result.add("secondaryMetrics", new JsonObject());
+        results.add(result);
+        return describe(sorted);
+    }
+
+    /**
+     * Writes the results added so far as a JMH JSON result file, creating its folder if needed.
+     *
+     * @param file the file written.
+     * @throws IOException if the file can't be written.
+     */
+    synchronized void writeTo(File file) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Can't create " + folder);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param samples latencies, in nanoseconds.
+     * @return their p50/p90/p99 latencies, in microseconds, e.g. "p50=12us p90=20us p99=41us".
+     */
+    static String describe(long[] samples) {
+        long[] sorted = sort(samples);
+        return "p50=" + percentile(sorted, 50) / 1000 + "us"
+                + " p90=" + percentile(sorted, 90) / 1000 + "us"
+                + " p99=" + percentile(sorted, 99) / 1000 + "us";
+    }
+
+    /**
+     * @return the sample at the given percentile of the sorted samples, the nearest rank one.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    private static long[] sort(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
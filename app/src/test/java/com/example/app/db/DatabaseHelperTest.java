@@ -0,0 +1,269 @@
+package com.example.app.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link DatabaseHelper} upgrades databases of every older version to the current schema,
+ * keeping their records, and that the migrations' backfills complete, resume where they stopped,
+ * and never run again once done.
+ *
+ * The older databases are created with the schemas those versions of the app shipped.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE) // The legacy SQLite build lacks the unicode61 tokenizer
+public class DatabaseHelperTest {
+
+    private static final String DATABASE_NAME = "Device.db";
+    private static final int CURRENT_VERSION = 5;
+    private static final int ROWS = 1234; // Rows of the older databases, a few backfill batches.
+    private static final long BACKFILL_TIMEOUT_MILLIS = 30000;
+
+    // Schemas shipped by the older versions, each version adding its statements to the previous ones
+    private static final String[] VERSION_1 = {
+            "CREATE TABLE people (_id INTEGER PRIMARY KEY,firstName TEXT,lastName TEXT)"};
+    private static final String[] VERSION_2 = {
+            "CREATE INDEX people_name_idx ON people (lastName, firstName)"};
+    private static final String[] VERSION_3 = {
+            "ALTER TABLE people ADD COLUMN updatedAt INTEGER"};
+    private static final String[] VERSION_4 = {
+            "CREATE VIRTUAL TABLE people_fts USING fts4(firstName, lastName, tokenize=unicode61, prefix=\"2,3\")",
+            "CREATE TRIGGER people_fts_ai AFTER INSERT ON people BEGIN INSERT INTO people_fts" +
+                    " (docid, firstName, lastName) VALUES (new._id, new.firstName, new.lastName); END",
+            "CREATE TRIGGER people_fts_au AFTER UPDATE OF firstName, lastName ON people BEGIN UPDATE" +
+                    " people_fts SET firstName = new.firstName, lastName = new.lastName WHERE docid = old._id; END",
+            "CREATE TRIGGER people_fts_ad AFTER DELETE ON people BEGIN DELETE FROM people_fts" +
+                    " WHERE docid = old._id; END"};
+    private static final String[][] SCHEMAS = {VERSION_1, VERSION_2, VERSION_3, VERSION_4};
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private DatabaseAccess access;
+
+    @After
+    public void tearDown() {
+        if (access != null) {
+            access.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1() throws Exception {
+        createDatabase(1, ROWS);
+        assertUpgradedAndBackfilled();
+    }
+
+    @Test
+    public void upgradeFromVersion2() throws Exception {
+        createDatabase(2, ROWS);
+        assertUpgradedAndBackfilled();
+    }
+
+    @Test
+    public void upgradeFromVersion3() throws Exception {
+        createDatabase(3, ROWS);
+        assertUpgradedAndBackfilled();
+    }
+
+    /**
+     * Version 4 didn't record its backfills, the rows it left out of the full-text index are indexed.
+     */
+    @Test
+    public void upgradeFromVersion4_withAnUnfinishedBackfill() throws Exception {
+        createDatabase(4, ROWS);
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(context.getDatabasePath(DATABASE_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("DELETE FROM people_fts WHERE docid > 1000");
+        db.execSQL("UPDATE people SET updatedAt = NULL WHERE _id > 1000");
+        db.close();
+        assertUpgradedAndBackfilled();
+    }
+
+    @Test
+    public void newDatabase_hasTheSameSchemaAsAnUpgradedOne() throws Exception {
+        createDatabase(1, 0);
+        open();
+        awaitBackfills();
+        List<String> upgraded = schema();
+        access.close();
+        assertTrue(context.deleteDatabase(DATABASE_NAME));
+
+        open();
+        awaitBackfills();
+        assertEquals(upgraded, schema());
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM pending_backfills"));
+    }
+
+    @Test
+    public void completedBackfills_areNotRunAgain() throws Exception {
+        createDatabase(2, ROWS);
+        open();
+        awaitBackfills();
+        write("UPDATE people SET updatedAt = NULL WHERE _id <= 10");
+        access.close();
+
+        open();
+        awaitBackfills();
+        assertEquals(10, queryLong("SELECT COUNT(*) FROM people WHERE updatedAt IS NULL"));
+    }
+
+    @Test
+    public void interruptedBackfill_resumesAfterItsLastBatch() throws Exception {
+        createDatabase(2, ROWS);
+        open();
+        awaitBackfills();
+        // As if the app stopped once the version 3 backfill committed its batch ending at row 500
+        write("UPDATE people SET updatedAt = NULL");
+        write("INSERT INTO pending_backfills (version, afterId) VALUES (3, 500)");
+        access.close();
+
+        open();
+        awaitBackfills();
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM pending_backfills"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM people WHERE _id > 500 AND updatedAt IS NULL"));
+        assertEquals(500, queryLong("SELECT COUNT(*) FROM people WHERE updatedAt IS NULL"));
+    }
+
+    /**
+     * Creates a database as the given version of the app left it, with rows named "FirstN LastN".
+     */
+    private void createDatabase(int version, int rows) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DATABASE_NAME), null);
+        try {
+            for (int i = 0; i < version; i++) {
+                for (String statement : SCHEMAS[i]) {
+                    db.execSQL(statement);
+                }
+            }
+            db.beginTransaction();
+            try {
+                for (int i = 1; i <= rows; i++) {
+                    db.execSQL(version >= 3
+                                    ? "INSERT INTO people (_id, firstName, lastName, updatedAt) VALUES (?, ?, ?, 1)"
+                                    : "INSERT INTO people (_id, firstName, lastName) VALUES (?, ?, ?)",
+                            new Object[]{i, "First" + i, "Last" + i});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    private void assertUpgradedAndBackfilled() throws Exception {
+        open();
+        assertEquals(CURRENT_VERSION, queryLong("PRAGMA user_version"));
+        awaitBackfills();
+
+        assertEquals(ROWS, queryLong("SELECT COUNT(*) FROM people"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM people WHERE updatedAt IS NULL"));
+        assertEquals(ROWS, queryLong("SELECT COUNT(*) FROM people_fts"));
+        assertEquals(1234, queryLong("SELECT docid FROM people_fts WHERE people_fts MATCH 'first1234'"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM sqlite_master WHERE name = 'people_name_idx'"));
+        assertEquals(Arrays.asList("_id", "firstName", "lastName", "updatedAt"), columns("people"));
+
+        // The triggers keep the index in sync with the new rows
+        write("INSERT INTO people (firstName, lastName) VALUES ('Ada', 'Lovelace')");
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM people_fts WHERE people_fts MATCH 'lovelace'"));
+    }
+
+    private void open() {
+        access = new DatabaseAccess(new DatabaseHelper(context));
+    }
+
+    /**
+     * Opens the database, which starts the backfills, and waits for them to be done.
+     */
+    private void awaitBackfills() throws Exception {
+        queryLong("SELECT 1");
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("db-backfill")) {
+                thread.join(BACKFILL_TIMEOUT_MILLIS);
+                assertTrue("backfill still running", !thread.isAlive());
+            }
+        }
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM pending_backfills"));
+    }
+
+    private long queryLong(final String sql) throws IOException {
+        return access.read(new DatabaseAccess.Read<Long>() {
+            @Override
+            public Long run(SQLiteDatabase db) {
+                return DatabaseUtils.longForQuery(db, sql, null);
+            }
+        });
+    }
+
+    private void write(final String sql) {
+        access.write(new DatabaseAccess.Write<Void>() {
+            @Override
+            public Void run(SQLiteDatabase db) {
+                db.execSQL(sql);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return the type and name of every table, index and trigger, sorted.
+     */
+    private List<String> schema() throws IOException {
+        return access.read(new DatabaseAccess.Read<List<String>>() {
+            @Override
+            public List<String> run(SQLiteDatabase db) {
+                return strings(db.rawQuery("SELECT type || ' ' || name FROM sqlite_master" +
+                        " WHERE name NOT LIKE 'android_%' AND name NOT LIKE 'sqlite_%' ORDER BY 1", null));
+            }
+        });
+    }
+
+    private List<String> columns(final String table) throws IOException {
+        return access.read(new DatabaseAccess.Read<List<String>>() {
+            @Override
+            public List<String> run(SQLiteDatabase db) {
+                List<String> columns = new ArrayList<>();
+                Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+                try {
+                    while (cursor.moveToNext()) {
+                        columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return columns;
+            }
+        });
+    }
+
+    private static List<String> strings(Cursor cursor) {
+        List<String> values = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                values.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.app.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link LatencyHistogram}'s bucket boundaries, its precision, and its cumulative counts.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void valuesUpToTheFirstPowerOfTwo_areExact() {
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        for (int value = 1; value <= LatencyHistogram.SUB_BUCKETS; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals(value, LatencyHistogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void everyBucket_includesItsUpperBoundAndNotTheNextValue() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertEquals("upper bound " + upperBound, i, LatencyHistogram.bucketIndex(upperBound));
+            if (i + 1 < LatencyHistogram.BUCKET_COUNT) {
+                assertEquals("after " + upperBound, i + 1, LatencyHistogram.bucketIndex(upperBound + 1));
+            }
+        }
+    }
+
+    @Test
+    public void buckets_areAtMostAnEighthOfTheirLowerBoundWide() {
+        for (int i = LatencyHistogram.SUB_BUCKETS; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowerBound = LatencyHistogram.bucketUpperBound(i - 1);
+            long width = LatencyHistogram.bucketUpperBound(i) - lowerBound;
+            assertTrue("bucket " + i, width > 0 && width * LatencyHistogram.SUB_BUCKETS <= lowerBound);
+        }
+    }
+
+    @Test
+    public void powersOfTwo_areBucketBoundaries() {
+        for (int magnitude = 0; magnitude <= 36; magnitude++) {
+            long power = 1L << magnitude;
+            assertEquals(power, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(power)));
+        }
+    }
+
+    @Test
+    public void lastBucket_endsAtTheMaxTrackableValue() {
+        int last = LatencyHistogram.BUCKET_COUNT - 1;
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, LatencyHistogram.bucketUpperBound(last));
+        assertEquals(last, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS));
+    }
+
+    @Test
+    public void record_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        long[] bounds = {1, LatencyHistogram.MAX_TRACKABLE_NANOS - 1, LatencyHistogram.MAX_TRACKABLE_NANOS};
+        long[] counts = new long[bounds.length];
+        assertEquals(2, histogram.getCumulativeCounts(bounds, counts));
+        assertEquals(1, counts[0]); // the negative value, recorded as 0
+        assertEquals(1, counts[1]);
+        assertEquals(2, counts[2]); // the huge one, counted in the last bucket
+        assertEquals(2, histogram.getCount());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getSumNanos());
+    }
+
+    @Test
+    public void cumulativeCounts_includeValuesEqualToTheBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 16);
+        histogram.record((1L << 16) + 1);
+        histogram.record(1L << 17);
+        histogram.record((1L << 17) + 1);
+        long[] bounds = {(1L << 16) - 1, 1L << 16, 1L << 17, 1L << 18};
+        long[] counts = new long[bounds.length];
+        assertEquals(4, histogram.getCumulativeCounts(bounds, counts));
+        assertEquals(0, counts[0]); // bound within a bucket, which is left out
+        assertEquals(1, counts[1]);
+        assertEquals(3, counts[2]);
+        assertEquals(4, counts[3]);
+    }
+
+    @Test
+    public void cumulativeCounts_handleBoundsPastTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        long[] bounds = {Long.MAX_VALUE};
+        long[] counts = new long[1];
+        assertEquals(1, histogram.getCumulativeCounts(bounds, counts));
+        assertEquals(1, counts[0]);
+    }
+}
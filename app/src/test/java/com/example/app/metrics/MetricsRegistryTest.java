@@ -0,0 +1,122 @@
+package com.example.app.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link MetricsRegistry}'s Prometheus text exposition: the families' headers, the samples'
+ * labels, and histogram buckets being cumulative and inclusive of their "le" bound.
+ */
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void countersAndGauges_areWrittenWithTheirHeaders() throws IOException {
+        registry.counter("requests_total", "Requests served.", MetricsRegistry.label("route", "/names")).add(3);
+        registry.counter("requests_total", "Requests served.", MetricsRegistry.label("route", "/")).add(1);
+        registry.gauge("queue_depth", "Queued tasks.", "", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+
+        assertEquals("# HELP requests_total Requests served.\n"
+                + "# TYPE requests_total counter\n"
+                + "requests_total{route=\"/names\"} 3\n"
+                + "requests_total{route=\"/\"} 1\n"
+                + "# HELP queue_depth Queued tasks.\n"
+                + "# TYPE queue_depth gauge\n"
+                + "queue_depth 7\n", export());
+    }
+
+    @Test
+    public void histogram_writesCumulativeInclusiveBuckets() throws IOException {
+        LatencyHistogram histogram = registry.histogram("op_duration_seconds", "Op latency.",
+                MetricsRegistry.label("op", "insert"));
+        histogram.record(1000); // below the first bucket
+        histogram.record(1L << 16); // exactly on the first bound, ~65us
+        histogram.record((1L << 16) + 1);
+        histogram.record(1L << 40); // past the last bound
+
+        List<String> lines = lines(export());
+        assertEquals("# HELP op_duration_seconds Op latency.", lines.get(0));
+        assertEquals("# TYPE op_duration_seconds histogram", lines.get(1));
+        assertEquals("op_duration_seconds_bucket{op=\"insert\",le=\"6.5536E-5\"} 2", lines.get(2));
+        assertEquals("op_duration_seconds_bucket{op=\"insert\",le=\"1.31072E-4\"} 3", lines.get(3));
+        long previous = 0;
+        int buckets = 0;
+        for (String line : lines) {
+            if (line.startsWith("op_duration_seconds_bucket{op=\"insert\",le=\"")) {
+                long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                assertTrue(line, count >= previous);
+                previous = count;
+                buckets++;
+            }
+        }
+        assertEquals(20, buckets); // 19 powers of two, from 2^16 to 2^34 ns, and +Inf
+        assertTrue(lines.contains("op_duration_seconds_bucket{op=\"insert\",le=\"17.179869184\"} 3"));
+        assertTrue(lines.contains("op_duration_seconds_bucket{op=\"insert\",le=\"+Inf\"} 4"));
+        assertTrue(lines.contains("op_duration_seconds_count{op=\"insert\"} 4"));
+        double sum = (1000 + (1L << 16) + (1L << 16) + 1 + (1L << 40)) / 1e9;
+        assertTrue(lines.contains("op_duration_seconds_sum{op=\"insert\"} " + sum));
+    }
+
+    @Test
+    public void histogramWithoutLabels_onlyLabelsItsBuckets() throws IOException {
+        registry.histogram("idle_seconds", "Idle time.", "");
+        List<String> lines = lines(export());
+        assertEquals("idle_seconds_bucket{le=\"6.5536E-5\"} 0", lines.get(2));
+        assertTrue(lines.contains("idle_seconds_bucket{le=\"+Inf\"} 0"));
+        assertTrue(lines.contains("idle_seconds_sum 0.0"));
+        assertTrue(lines.contains("idle_seconds_count 0"));
+    }
+
+    @Test
+    public void label_escapesItsValue() {
+        assertEquals("path=\"a\\\\b \\\"c\\\"\\nd\"", MetricsRegistry.label("path", "a\\b \"c\"\nd"));
+    }
+
+    @Test
+    public void sameNameAndLabels_returnTheSameSeries() {
+        String labels = MetricsRegistry.label("op", "insert");
+        assertSame(registry.counter("c_total", "C.", labels), registry.counter("c_total", "C.", labels));
+        assertSame(registry.histogram("h_seconds", "H.", labels), registry.histogram("h_seconds", "H.", labels));
+        assertSame(registry.requests("/names"), registry.requests("/names"));
+    }
+
+    @Test
+    public void nameRegisteredWithAnotherType_isRejected() {
+        registry.counter("ops_total", "Ops.", "");
+        try {
+            registry.histogram("ops_total", "Ops.", "");
+            fail("Expected a type conflict");
+        } catch (IllegalArgumentException expected) {
+            // rejected as expected
+        }
+    }
+
+    private String export() throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.writeTo(writer);
+        return writer.toString();
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
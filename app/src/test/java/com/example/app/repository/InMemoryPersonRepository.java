@@ -0,0 +1,175 @@
+package com.example.app.repository;
+
+import com.example.app.model.Person;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Minimal {@link Repository} keeping {@link Person} records in a sorted map, so the HTTP and
+ * service layers can be benchmarked without the database's cost, and the other repositories can be
+ * checked against it. Shared with the benchmark module.
+ */
+public class InMemoryPersonRepository implements Repository<Person> {
+
+    private final TreeMap<Integer, Person> people = new TreeMap<>();
+    private int lastId;
+
+    @Override
+    public synchronized long insert(Person record) {
+        int id = nextId();
+        people.put(id, new Person(id, record.getFirstName(), record.getLastName()));
+        return id;
+    }
+
+    /**
+     * @return the id of the next record inserted, ascending like SQLite's rowids. Overridden to pick them.
+     */
+    protected int nextId() {
+        return ++lastId;
+    }
+
+    @Override
+    public synchronized Person findById(int id) {
+        return people.get(id);
+    }
+
+    @Override
+    public synchronized List<Person> findAll() {
+        return new ArrayList<>(people.values());
+    }
+
+    @Override
+    public void findAll(RecordConsumer<Person> consumer) throws IOException {
+        findPage(0, 0, null, consumer);
+    }
+
+    @Override
+    public void findPage(int afterId, int limit, Set<String> fields, RecordConsumer<Person> consumer) throws IOException {
+        boolean id = isProjected(fields, Person.SERIALIZED_ID);
+        boolean firstName = isProjected(fields, Person.SERIALIZED_FIRST_NAME);
+        boolean lastName = isProjected(fields, Person.SERIALIZED_LAST_NAME);
+        List<Person> page = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Integer, Person> entry : people.tailMap(afterId, false).entrySet()) {
+                if (limit > 0 && page.size() == limit) {
+                    break;
+                }
+                Person person = entry.getValue();
+                // Same as PersonRepository#findPage, fields not projected are left as defaults
+                page.add(fields == null ? person : new Person(id ? person.getId() : 0,
+                        firstName ? person.getFirstName() : null, lastName ? person.getLastName() : null));
+            }
+        }
+        for (Person person : page) {
+            consumer.accept(person);
+        }
+    }
+
+    @Override
+    public void search(String query, int offset, int limit, RecordConsumer<Person> consumer) throws IOException {
+        final String[] terms = PersonRepository.toSearchTerms(query);
+        List<Person> matches = new ArrayList<>();
+        synchronized (this) {
+            for (Person person : people.values()) {
+                if (matchesAll(person, terms)) {
+                    matches.add(person);
+                }
+            }
+        }
+        // Same order as PersonRepository#SQL_SEARCH
+        Collections.sort(matches, new Comparator<Person>() {
+            @Override
+            public int compare(Person a, Person b) {
+                int exact = Boolean.compare(isExact(b, terms[0]), isExact(a, terms[0]));
+                if (exact != 0) {
+                    return exact;
+                }
+                int length = Integer.compare(length(a), length(b));
+                return length != 0 ? length : Integer.compare(a.getId(), b.getId());
+            }
+        });
+        for (Person person : matches.subList(Math.min(offset, matches.size()), Math.min(offset + limit, matches.size()))) {
+            consumer.accept(person);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the fields hold an unknown one, as PersonRepository does.
+     */
+    private static boolean isProjected(Set<String> fields, String field) {
+        if (fields != null && !Person.SERIALIZED_FIELDS.containsAll(fields)) {
+            throw new IllegalArgumentException("Unknown Person field in " + fields);
+        }
+        return fields == null || fields.contains(field);
+    }
+
+    private static boolean matchesAll(Person person, String[] terms) {
+        String[] words = (person.getFirstName() + " " + person.getLastName()).toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                found |= word.startsWith(term);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isExact(Person person, String term) {
+        return term.equalsIgnoreCase(person.getFirstName()) || term.equalsIgnoreCase(person.getLastName());
+    }
+
+    private static int length(Person person) {
+        return (person.getFirstName() == null ? 0 : person.getFirstName().length())
+                + (person.getLastName() == null ? 0 : person.getLastName().length());
+    }
+
+    @Override
+    public synchronized boolean update(Person record) {
+        if (!people.containsKey(record.getId())) {
+            return false;
+        }
+        people.put(record.getId(), record);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(Person record) {
+        return people.remove(record.getId()) != null;
+    }
+
+    @Override
+    public synchronized long[] applyBatch(List<BatchOperation<Person>> operations) {
+        long[] results = new long[operations.size()];
+        for (int i = 0; i < results.length; i++) {
+            BatchOperation<Person> operation = operations.get(i);
+            switch (operation.getType()) {
+                case INSERT:
+                    results[i] = insert(operation.getRecord());
+                    break;
+                case UPDATE:
+                    results[i] = update(operation.getRecord()) ? 1 : 0;
+                    break;
+                case DELETE:
+                    results[i] = delete(operation.getRecord()) ? 1 : 0;
+                    break;
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void release() {
+        people.clear();
+    }
+}
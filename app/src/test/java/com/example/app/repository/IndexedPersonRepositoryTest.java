@@ -0,0 +1,308 @@
+package com.example.app.repository;
+
+import com.example.app.model.Person;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link IndexedPersonRepository} answers like the {@link InMemoryPersonRepository} reference
+ * through the same writes, including ids colliding in its table and names rewritten until its pool
+ * is compacted.
+ */
+public class IndexedPersonRepositoryTest {
+
+    private static final long SEED = 42; // Same writes on every run.
+    private static final int CHURN_STEPS = 3000; // Random writes applied by the churn test.
+    private static final int COLLISION_MASK = 4095; // Ids equal under it share their home slot in tables up to 4096 slots.
+    private static final int COLLISION_SLOT = 4094; // That home slot, the second to last one whatever the table's size, so probes wrap.
+    private static final long LOAD_TIMEOUT_MILLIS = 5000; // Max time waited for the index to be loaded.
+    private static final String[] NAMES = {null, "", "Ada", "Lovelace", "Zo\u00eb", "Jos\u00e9 Mar\u00eda", "\u674e\u5c0f\u9f99", "\ud83d\ude00"};
+
+    private InMemoryPersonRepository reference;
+    private IndexedPersonRepository indexed;
+    private Random random;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        reference = new CollidingIdsRepository();
+        indexed = new IndexedPersonRepository(new CollidingIdsRepository());
+        awaitLoaded(indexed);
+        random = new Random(SEED);
+    }
+
+    @After
+    public void tearDown() {
+        indexed.release();
+    }
+
+    @Test
+    public void churnWithCollidingIds_matchesTheReference() throws IOException {
+        List<Integer> issued = new ArrayList<>(); // Every id inserted, deleted ones included
+        for (int step = 0; step < CHURN_STEPS; step++) {
+            int choice = random.nextInt(10);
+            if (choice < 4) {
+                Person person = randomPerson(0);
+                long id = reference.insert(person);
+                assertEquals(id, indexed.insert(person));
+                issued.add((int) id);
+            } else if (choice < 6) {
+                Person person = randomPerson(pickId(issued));
+                assertEquals(reference.update(person), indexed.update(person));
+            } else if (choice < 8) {
+                Person person = new Person(pickId(issued), null, null);
+                assertEquals(reference.delete(person), indexed.delete(person));
+            } else {
+                List<BatchOperation<Person>> operations = randomBatch(issued);
+                long[] results = reference.applyBatch(operations);
+                assertArrayEquals(results, indexed.applyBatch(operations));
+                for (int i = 0; i < results.length; i++) {
+                    if (operations.get(i).getType() == BatchOperation.Type.INSERT) {
+                        issued.add((int) results[i]);
+                    }
+                }
+            }
+            if (step % 100 == 0) {
+                assertSameRecords(issued);
+            }
+        }
+        assertSameRecords(issued);
+    }
+
+    @Test
+    public void rewrittenNames_areCompacted() throws IOException {
+        List<Integer> issued = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Person person = randomPerson(0);
+            issued.add((int) reference.insert(person));
+            indexed.insert(person);
+        }
+        // Each round leaves about 20KB of replaced names behind, 4MB over all of them without compaction
+        for (int round = 0; round < 200; round++) {
+            for (int id : issued) {
+                Person person = new Person(id, repeat(randomName(), round % 7 + 1), repeat(randomName(), 8 - round % 7));
+                assertEquals(reference.update(person), indexed.update(person));
+            }
+            if (round == 100) {
+                for (int id : issued.subList(0, 50)) {
+                    assertEquals(reference.delete(new Person(id, null, null)), indexed.delete(new Person(id, null, null)));
+                }
+            }
+        }
+        assertSameRecords(issued);
+        assertTrue("footprint " + indexed.getMemoryFootprint(), indexed.getMemoryFootprint() < 256 * 1024);
+    }
+
+    @Test
+    public void pagesAfterAnyId_matchTheReference() throws IOException {
+        List<Integer> issued = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Person person = randomPerson(0);
+            issued.add((int) reference.insert(person));
+            indexed.insert(person);
+        }
+        for (int i = 0; i < issued.size(); i += 3) {
+            Person person = new Person(issued.get(i), null, null);
+            reference.delete(person);
+            indexed.delete(person);
+        }
+
+        List<Integer> afterIds = new ArrayList<>(Arrays.asList(0, -1, Integer.MAX_VALUE));
+        for (int i = 0; i < issued.size(); i += 7) {
+            afterIds.add(issued.get(i)); // Deleted ones included
+            afterIds.add(issued.get(i) + 1); // Never issued
+        }
+        int[] limits = {0, 1, 63, 64, 65, 128, 1000}; // Around the index's 64 records chunks
+        List<Set<String>> projections = Arrays.asList(null, Collections.<String>emptySet(),
+                Collections.singleton(Person.SERIALIZED_ID),
+                new HashSet<>(Arrays.asList(Person.SERIALIZED_FIRST_NAME, Person.SERIALIZED_LAST_NAME)));
+        for (int afterId : afterIds) {
+            for (int limit : limits) {
+                for (Set<String> fields : projections) {
+                    String page = "after " + afterId + " limit " + limit + " fields " + fields;
+                    List<String> expected = new ArrayList<>();
+                    reference.findPage(afterId, limit, fields, collect(expected));
+                    List<String> actual = new ArrayList<>();
+                    indexed.findPage(afterId, limit, fields, collect(actual));
+                    assertEquals(page, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pagesWithAnUnknownField_areRejected() throws IOException {
+        try {
+            indexed.findPage(0, 10, Collections.singleton("age"), collect(new ArrayList<String>()));
+            fail("Unknown field accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected, like the reference and PersonRepository
+        }
+    }
+
+    @Test
+    public void searches_seeTheWrites() throws IOException {
+        List<Integer> issued = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Person person = randomPerson(0);
+            issued.add((int) reference.insert(person));
+            indexed.insert(person);
+        }
+        for (int i = 0; i < issued.size(); i += 5) {
+            Person person = i % 2 == 0 ? new Person(issued.get(i), "Adaline", "Lovell") : new Person(issued.get(i), null, null);
+            assertEquals(reference.update(person), indexed.update(person));
+            assertEquals(reference.delete(new Person(issued.get(i + 1), null, null)),
+                    indexed.delete(new Person(issued.get(i + 1), null, null)));
+        }
+        for (String query : Arrays.asList("ada", "ada love", "lovell", "jos\u00e9", "\u674e\u5c0f\u9f99", "missing")) {
+            for (int offset : new int[]{0, 10}) {
+                List<String> expected = new ArrayList<>();
+                reference.search(query, offset, 20, collect(expected));
+                List<String> actual = new ArrayList<>();
+                indexed.search(query, offset, 20, collect(actual));
+                assertEquals(query + " offset " + offset, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void existingRecords_areLoaded() throws IOException, InterruptedException {
+        InMemoryPersonRepository delegate = new CollidingIdsRepository();
+        List<Integer> issued = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Person person = randomPerson(0);
+            issued.add((int) reference.insert(person));
+            delegate.insert(person);
+        }
+        indexed.release();
+        indexed = new IndexedPersonRepository(delegate);
+        awaitLoaded(indexed);
+        assertSameRecords(issued);
+    }
+
+    /**
+     * Checks every issued id is found, or not, by both repositories, and that they list the same records.
+     */
+    private void assertSameRecords(List<Integer> issued) throws IOException {
+        for (int id : issued) {
+            assertEquals("id " + id, describe(reference.findById(id)), describe(indexed.findById(id)));
+        }
+        List<String> expected = new ArrayList<>();
+        for (Person person : reference.findAll()) {
+            expected.add(describe(person));
+        }
+        List<String> actual = new ArrayList<>();
+        for (Person person : indexed.findAll()) {
+            actual.add(describe(person));
+        }
+        assertEquals(expected, actual);
+        List<String> streamed = new ArrayList<>();
+        indexed.findAll(collect(streamed));
+        assertEquals(expected, streamed);
+    }
+
+    private List<BatchOperation<Person>> randomBatch(List<Integer> issued) {
+        List<BatchOperation<Person>> operations = new ArrayList<>();
+        for (int i = random.nextInt(5) + 1; i > 0; i--) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    operations.add(new BatchOperation<>(BatchOperation.Type.INSERT, randomPerson(0)));
+                    break;
+                case 1:
+                    operations.add(new BatchOperation<>(BatchOperation.Type.UPDATE, randomPerson(pickId(issued))));
+                    break;
+                default:
+                    operations.add(new BatchOperation<>(BatchOperation.Type.DELETE, new Person(pickId(issued), null, null)));
+                    break;
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * @return an issued id, live or deleted, or now and then one never issued.
+     */
+    private int pickId(List<Integer> issued) {
+        if (issued.isEmpty() || random.nextInt(10) == 0) {
+            return random.nextInt(Integer.MAX_VALUE) + 1;
+        }
+        return issued.get(random.nextInt(issued.size()));
+    }
+
+    private Person randomPerson(int id) {
+        return new Person(id, randomName(), randomName());
+    }
+
+    private String randomName() {
+        String name = NAMES[random.nextInt(NAMES.length)];
+        return name == null ? null : name + random.nextInt(100);
+    }
+
+    private static String repeat(String name, int times) {
+        if (name == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(name);
+        }
+        return builder.toString();
+    }
+
+    private static String describe(Person person) {
+        return person == null ? "none" : person.getId() + ":" + person.getFirstName() + ":" + person.getLastName();
+    }
+
+    private static RecordConsumer<Person> collect(final List<String> records) {
+        return new RecordConsumer<Person>() {
+            @Override
+            public void accept(Person person) {
+                records.add(describe(person));
+            }
+        };
+    }
+
+    private static void awaitLoaded(IndexedPersonRepository repository) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (!repository.isLoaded()) {
+            assertTrue("Index not loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Hands out ids sharing their home slot in the index's table every other insert, past the
+     * ascending ones in between.
+     */
+    private static class CollidingIdsRepository extends InMemoryPersonRepository {
+
+        private int lastId;
+        private int inserts;
+
+        @Override
+        protected int nextId() {
+            lastId++;
+            if (inserts++ % 2 == 0) {
+                while ((IndexedPersonRepository.hash(lastId) & COLLISION_MASK) != COLLISION_SLOT) {
+                    lastId++;
+                }
+            }
+            return lastId;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.app.repository;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.app.model.Person;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM latency benchmark of the real {@link PersonRepository}, from the bound statements down to the
+ * rows mapped out of the Cursor, run by Robolectric over its native SQLite build.
+ *
+ * Left out of the unit tests, run with: ./gradlew testDebugUnitTest -Pbenchmarks
+ * Results are written in JMH's JSON format to app/build/reports/benchmarks/PersonRepositoryJvmBenchmark.json,
+ * see {@link BenchmarkResults}. They track changes to the repository's SQL and binding code between
+ * commits, not the device's storage, see the instrumented PersonRepositoryBenchmark for the numbers
+ * on a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE) // The legacy SQLite build lacks the unicode61 tokenizer
+public class PersonRepositoryJvmBenchmark {
+
+    private static final int SEED_ROWS = 2000; // Rows added to the table before measuring.
+    private static final int PAGE_SIZE = 20; // Rows read by each page and search.
+    private static final int WARM_UP = 200; // Iterations discarded before measuring.
+    private static final int ITERATIONS = 1000; // Measured iterations per scenario.
+    // Folder the results are written to, set by the build.
+    private static final String REPORTS_DIR = System.getProperty("benchmark.reportsDir", "build/reports/benchmarks");
+
+    private static final BenchmarkResults RESULTS = new BenchmarkResults(PersonRepositoryJvmBenchmark.class);
+
+    private PersonRepository personRepository;
+    private int nextId; // Rotates over the seeded ids so every call hits a different row.
+
+    @Before
+    public void setUp() {
+        personRepository = new PersonRepository(ApplicationProvider.getApplicationContext());
+        for (int i = 0; i < SEED_ROWS; i++) {
+            personRepository.insert(new Person("First" + i, "Last" + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        personRepository.release();
+    }
+
+    @AfterClass
+    public static void writeResults() throws IOException {
+        RESULTS.writeTo(new File(REPORTS_DIR, PersonRepositoryJvmBenchmark.class.getSimpleName() + ".json"));
+    }
+
+    @Test
+    public void insertThenDelete() throws IOException {
+        measure("insertThenDelete", new Operation() {
+            @Override
+            public int run() {
+                long id = personRepository.insert(new Person("Jane", "Doe"));
+                assertTrue(personRepository.delete(new Person((int) id, null, null)));
+                return 1;
+            }
+        });
+    }
+
+    @Test
+    public void findById() throws IOException {
+        measure("findById", new Operation() {
+            @Override
+            public int run() {
+                assertNotNull(personRepository.findById(nextId()));
+                return 1;
+            }
+        });
+    }
+
+    @Test
+    public void update() throws IOException {
+        measure("update", new Operation() {
+            @Override
+            public int run() {
+                assertTrue(personRepository.update(new Person(nextId(), "Jane", "Doe")));
+                return 1;
+            }
+        });
+    }
+
+    @Test
+    public void findPage() throws IOException {
+        measure("findPage", new Operation() {
+            @Override
+            public int run() throws IOException {
+                return consume(new Read() {
+                    @Override
+                    public void run(RecordConsumer<Person> consumer) throws IOException {
+                        personRepository.findPage(nextId() - 1, PAGE_SIZE, null, consumer);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Searches a prefix shared by a handful of names, e.g. "first123" matching "First1234".
+     */
+    @Test
+    public void searchSelectivePrefix() throws IOException {
+        measure("searchSelectivePrefix", new Operation() {
+            @Override
+            public int run() throws IOException {
+                final String term = "first" + nextId() / 10;
+                return consume(new Read() {
+                    @Override
+                    public void run(RecordConsumer<Person> consumer) throws IOException {
+                        personRepository.search(term, 0, PAGE_SIZE, consumer);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Searches a prefix shared by every name, the worst case since the most matches are ranked.
+     */
+    @Test
+    public void searchBroadPrefix() throws IOException {
+        measure("searchBroadPrefix", new Operation() {
+            @Override
+            public int run() throws IOException {
+                return consume(new Read() {
+                    @Override
+                    public void run(RecordConsumer<Person> consumer) throws IOException {
+                        personRepository.search("la", 0, PAGE_SIZE, consumer);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs the operation {@value WARM_UP} times, then times it {@value ITERATIONS} times, checking
+     * every run finds rows, and adds its latencies to the results.
+     */
+    private static void measure(String name, Operation operation) throws IOException {
+        long[] samples = new long[ITERATIONS];
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            int rows = operation.run();
+            if (i >= 0) samples[i] = System.nanoTime() - start;
+            assertTrue(name + " found no rows", rows > 0);
+        }
+        RESULTS.add(name, WARM_UP, samples);
+    }
+
+    /**
+     * Runs a streaming read, counting the rows it hands out.
+     */
+    private static int consume(Read read) throws IOException {
+        final int[] rows = new int[1];
+        read.run(new RecordConsumer<Person>() {
+            @Override
+            public void accept(Person person) {
+                assertNotNull(person.getFirstName());
+                rows[0]++;
+            }
+        });
+        return rows[0];
+    }
+
+    private int nextId() {
+        nextId = nextId % (SEED_ROWS - PAGE_SIZE) + 1;
+        return nextId;
+    }
+
+    /**
+     * A measured repository call.
+     */
+    private interface Operation {
+        /**
+         * @return the number of rows the call found or changed.
+         */
+        int run() throws IOException;
+    }
+
+    /**
+     * A streaming repository read.
+     */
+    private interface Read {
+        void run(RecordConsumer<Person> consumer) throws IOException;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.app.repository;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.app.db.DatabaseContract.PersonEntry;
+import com.example.app.db.DatabaseHelper;
+import com.example.app.model.Person;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link PersonRepository#applyBatch(List)}'s group commit, run by Robolectric over its native
+ * SQLite build.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE) // The legacy SQLite build lacks the unicode61 tokenizer
+public class PersonRepositoryTest {
+
+    private static final String REJECTED_NAME = "Rejected"; // First name the test trigger aborts inserts of.
+
+    private PersonRepository personRepository;
+
+    @Before
+    public void setUp() {
+        personRepository = new PersonRepository(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        personRepository.release();
+    }
+
+    @Test
+    public void applyBatchAppliesEveryOperation() throws IOException {
+        long id = personRepository.insert(new Person("Jane", "Doe"));
+        long deleted = personRepository.insert(new Person("John", "Doe"));
+
+        long[] results = personRepository.applyBatch(Arrays.asList(
+                new BatchOperation<>(BatchOperation.Type.INSERT, new Person("Ada", "Lovelace")),
+                new BatchOperation<>(BatchOperation.Type.UPDATE, new Person((int) id, "Janet", "Doe")),
+                new BatchOperation<>(BatchOperation.Type.DELETE, new Person((int) deleted, null, null)),
+                new BatchOperation<>(BatchOperation.Type.DELETE, new Person(Integer.MAX_VALUE, null, null))));
+
+        assertTrue(results[0] > 0);
+        assertEquals("Ada", personRepository.findById((int) results[0]).getFirstName());
+        assertEquals(1, results[1]);
+        assertEquals("Janet", personRepository.findById((int) id).getFirstName());
+        assertEquals(1, results[2]);
+        assertNull(personRepository.findById((int) deleted));
+        assertEquals(0, results[3]); // Affecting no record fails nothing
+    }
+
+    @Test
+    public void applyBatchRollsBackAFailedOperationAlone() throws IOException {
+        long id = personRepository.insert(new Person("Jane", "Doe"));
+        SQLiteDatabase db = new DatabaseHelper(ApplicationProvider.getApplicationContext()).getWritableDatabase();
+        db.execSQL("CREATE TRIGGER reject BEFORE INSERT ON " + PersonEntry.TABLE_NAME
+                + " WHEN NEW." + PersonEntry.COLUMN_NAME_FIRST + " = '" + REJECTED_NAME + "'"
+                + " BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+
+        long[] results = personRepository.applyBatch(Arrays.asList(
+                new BatchOperation<>(BatchOperation.Type.INSERT, new Person("Ada", "Lovelace")),
+                new BatchOperation<>(BatchOperation.Type.INSERT, new Person(REJECTED_NAME, "Doe")),
+                new BatchOperation<>(BatchOperation.Type.UPDATE, new Person((int) id, "Janet", "Doe"))));
+
+        assertEquals(-1, results[1]);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, PersonEntry.TABLE_NAME,
+                PersonEntry.COLUMN_NAME_FIRST + " = ?", new String[]{REJECTED_NAME}));
+        // The operations around the failed one were still committed
+        assertTrue(results[0] > 0);
+        assertEquals("Ada", personRepository.findById((int) results[0]).getFirstName());
+        assertEquals(1, results[2]);
+        assertEquals("Janet", personRepository.findById((int) id).getFirstName());
+    }
+
+}
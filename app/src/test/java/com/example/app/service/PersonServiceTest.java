@@ -0,0 +1,143 @@
+package com.example.app.service;
+
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.model.Person;
+import com.example.app.repository.InMemoryPersonRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link PersonService}'s {@link RecordCache} of Persons by id: its hit, miss and eviction
+ * counts, writes replacing or dropping cached Persons, and lookups racing a write never caching
+ * what they read before it.
+ */
+public class PersonServiceTest {
+
+    private BlockingRepository repository;
+    private PersonService personService;
+    private final ExecutorService lookups = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() {
+        repository = new BlockingRepository();
+        personService = new PersonService(repository);
+    }
+
+    @After
+    public void tearDown() {
+        lookups.shutdownNow();
+        personService.cleanUp();
+    }
+
+    @Test
+    public void lookups_countHitsAndMisses() throws IOException {
+        int id = (int) repository.insert(new Person("Ada", "Lovelace")); // Written behind the service's back, not cached
+
+        assertEquals("Ada", personService.findPersonById(id).getFirstName());
+        assertEquals("Ada", personService.findPersonById(id).getFirstName());
+        assertNull(personService.findPersonById(id + 1));
+
+        assertEquals(1, personService.getCacheHitCount());
+        assertEquals(2, personService.getCacheMissCount());
+        String exported = export();
+        assertTrue(exported, exported.contains("person_cache_hits 1\n"));
+        assertTrue(exported, exported.contains("person_cache_misses 2\n"));
+    }
+
+    @Test
+    public void personsPastTheCacheSize_areEvicted() {
+        int first = (int) personService.addNewPerson("First", "Person");
+        for (int i = 0; i < PersonService.PERSON_CACHE_SIZE; i++) {
+            personService.addNewPerson("Person", String.valueOf(i));
+        }
+
+        assertEquals(1, personService.getCacheEvictionCount());
+        assertEquals("First", personService.findPersonById(first).getFirstName()); // Read again
+        assertEquals(1, personService.getCacheMissCount());
+        assertEquals(2, personService.getCacheEvictionCount());
+    }
+
+    @Test
+    public void writes_replaceOrDropCachedPersons() {
+        int id = (int) personService.addNewPerson("Ada", "Lovelace");
+        assertEquals("Ada", personService.findPersonById(id).getFirstName());
+
+        assertTrue(personService.updatePerson(id, "Augusta", "King"));
+        assertEquals("Augusta", personService.findPersonById(id).getFirstName());
+
+        assertTrue(personService.deletePerson(id));
+        assertNull(personService.findPersonById(id));
+        assertEquals(2, personService.getCacheHitCount());
+        assertEquals(1, personService.getCacheMissCount());
+    }
+
+    @Test
+    public void lookupRacingAnUpdate_doesNotCacheWhatItRead() throws Exception {
+        final int id = (int) repository.insert(new Person("Ada", "Lovelace")); // Not cached
+        repository.blockNextRead();
+        Future<Person> lookup = lookups.submit(new Callable<Person>() {
+            @Override
+            public Person call() {
+                return personService.findPersonById(id);
+            }
+        });
+        assertTrue(repository.read.await(5, TimeUnit.SECONDS)); // The old record is read, not cached yet
+
+        assertTrue(personService.updatePerson(id, "Augusta", "King"));
+        repository.release.countDown();
+
+        assertEquals("Ada", lookup.get(5, TimeUnit.SECONDS).getFirstName()); // Current when it was read
+        assertEquals("Augusta", personService.findPersonById(id).getFirstName());
+        assertEquals(1, personService.getCacheHitCount()); // The update's copy, the lookup's was dropped
+    }
+
+    private static String export() throws IOException {
+        StringWriter writer = new StringWriter();
+        MetricsRegistry.getDefault().writeTo(writer);
+        return writer.toString();
+    }
+
+    /**
+     * Holds the next lookup by id back once it read the record, until released.
+     */
+    private static class BlockingRepository extends InMemoryPersonRepository {
+
+        private final CountDownLatch read = new CountDownLatch(1); // Counted down once the blocked lookup read.
+        private final CountDownLatch release = new CountDownLatch(1); // Lets the blocked lookup return.
+        private volatile boolean blockNext;
+
+        void blockNextRead() {
+            blockNext = true;
+        }
+
+        @Override
+        public Person findById(int id) {
+            Person person = super.findById(id);
+            if (blockNext) {
+                blockNext = false;
+                read.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return person;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.app.web;
+
+import com.example.app.metrics.Counter;
+import com.example.app.metrics.MetricsRegistry;
+import com.example.app.model.Person;
+import com.example.app.service.ChangeEvent;
+import com.example.app.service.ChangeFeed;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link NamesStreamHandler} ends the stream of a client that stopped reading, instead of
+ * blocking its thread forever on the full socket.
+ */
+public class NamesStreamHandlerTest {
+
+    private static final int FEED_CAPACITY = 8192; // More than the events published, no stream lags.
+    private static final int EVENTS = 4096;
+    private static final int NAME_LENGTH = 8 * 1024; // ~32 MiB of events, more than the sockets buffer.
+    private static final long WRITE_TIMEOUT_MILLIS = 200;
+
+    private final ChangeFeed<Person> changeFeed = new ChangeFeed<>(FEED_CAPACITY);
+    private final CountDownLatch streamEnded = new CountDownLatch(1);
+    private NamesStreamHandler handler;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new NamesStreamHandler(changeFeed, WRITE_TIMEOUT_MILLIS);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(NamesStreamHandler.ENDPOINT, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handler.handle(exchange);
+                } finally {
+                    streamEnded.countDown();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        changeFeed.close();
+        server.stop(0);
+        executor.shutdownNow();
+        handler.tearDown();
+    }
+
+    @Test
+    public void clientNotReading_isDisconnectedOnceTheWriteTimesOut() throws Exception {
+        Counter dropped = MetricsRegistry.getDefault().counter("names_stream_dropped_total",
+                "Event streams closed because the client fell behind.", "");
+        long droppedBefore = dropped.get();
+
+        Socket client = new Socket();
+        client.setReceiveBufferSize(1024);
+        client.connect(server.getAddress());
+        try {
+            OutputStream request = client.getOutputStream();
+            request.write(("GET " + NamesStreamHandler.ENDPOINT + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+            readUntil(client.getInputStream(), "retry: ");
+
+            // The client stops reading while the events keep coming
+            char[] name = new char[NAME_LENGTH];
+            Arrays.fill(name, 'x');
+            for (int i = 1; i <= EVENTS; i++) {
+                changeFeed.publish(ChangeEvent.Type.UPDATE, new Person(i, new String(name), "Doe"));
+            }
+
+            assertTrue("the stream is still blocked writing", streamEnded.await(10, TimeUnit.SECONDS));
+            assertEquals(droppedBefore + 1, dropped.get());
+        } finally {
+            client.close();
+        }
+    }
+
+    private static void readUntil(InputStream inputStream, String marker) throws IOException {
+        StringBuilder received = new StringBuilder();
+        while (received.indexOf(marker) < 0) {
+            int b = inputStream.read();
+            if (b < 0) {
+                throw new IOException("Stream ended before " + marker + ": " + received);
+            }
+            received.append((char) b);
+        }
+    }
+}
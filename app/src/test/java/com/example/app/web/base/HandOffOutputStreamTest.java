@@ -0,0 +1,123 @@
+package com.example.app.web.base;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link HandOffOutputStream} hands every write over in order, holds at most its capacity
+ * back, and fails either side once the other one did.
+ */
+public class HandOffOutputStreamTest {
+
+    private static final int CAPACITY = 4;
+    private static final long TIMEOUT_MILLIS = 200;
+
+    private final ExecutorService drainer = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        drainer.shutdownNow();
+    }
+
+    @Test
+    public void writes_areDrainedInOrder() throws Exception {
+        HandOffOutputStream handOff = new HandOffOutputStream(CAPACITY, TIMEOUT_MILLIS);
+        ByteArrayOutputStream drained = new ByteArrayOutputStream();
+        Future<?> draining = drain(handOff, drained);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            byte[] chunk = ("chunk" + i + ",").getBytes("UTF-8");
+            handOff.write(chunk, 0, chunk.length);
+            expected.write(chunk);
+        }
+        handOff.write('!');
+        expected.write('!');
+        handOff.close();
+        draining.get(5, TimeUnit.SECONDS);
+        assertArrayEquals(expected.toByteArray(), drained.toByteArray());
+    }
+
+    @Test
+    public void writesPastTheCapacity_timeOutWhenNotDrained() throws IOException {
+        HandOffOutputStream handOff = new HandOffOutputStream(CAPACITY, TIMEOUT_MILLIS);
+        for (int i = 0; i < CAPACITY; i++) {
+            handOff.write(i);
+        }
+        long start = System.nanoTime();
+        try {
+            handOff.write(CAPACITY);
+            fail("Write past the capacity accepted");
+        } catch (IOException e) {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS));
+        }
+        try {
+            handOff.drainTo(new ByteArrayOutputStream());
+            fail("Timed out stream drained");
+        } catch (IOException e) {
+            // Expected, the writer gave up
+        }
+    }
+
+    @Test
+    public void failedDrain_failsTheNextWrite() throws Exception {
+        HandOffOutputStream handOff = new HandOffOutputStream(CAPACITY, TIMEOUT_MILLIS);
+        Future<?> draining = drain(handOff, new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Client gone");
+            }
+        });
+        handOff.write(1);
+        try {
+            draining.get(5, TimeUnit.SECONDS);
+            fail("Failed write drained");
+        } catch (ExecutionException e) {
+            assertEquals("Client gone", e.getCause().getMessage());
+        }
+        try {
+            handOff.write(2);
+            fail("Write accepted after the drain failed");
+        } catch (IOException e) {
+            // Expected, so the read producing them stops
+        }
+    }
+
+    @Test
+    public void cancelledWrites_failTheDrain() throws Exception {
+        HandOffOutputStream handOff = new HandOffOutputStream(CAPACITY, TIMEOUT_MILLIS);
+        ByteArrayOutputStream drained = new ByteArrayOutputStream();
+        Future<?> draining = drain(handOff, drained);
+        handOff.cancel();
+        try {
+            draining.get(5, TimeUnit.SECONDS);
+            fail("Cancelled stream drained");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private Future<?> drain(final HandOffOutputStream handOff, final OutputStream outputStream) {
+        return drainer.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                handOff.drainTo(outputStream);
+                return null;
+            }
+        });
+    }
+}
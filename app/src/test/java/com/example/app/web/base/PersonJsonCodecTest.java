@@ -0,0 +1,98 @@
+package com.example.app.web.base;
+
+import com.example.app.model.Person;
+import com.example.app.web.util.model.HttpResponse;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link PersonJsonCodec} writes the same JSON as the default {@link Gson} mapping, and leaves
+ * every other type to its fallback codec.
+ */
+public class PersonJsonCodecTest {
+
+    private static final Gson GSON = new Gson();
+
+    private final PersonJsonCodec codec = new PersonJsonCodec(new GsonJsonCodec(GSON));
+
+    @Test
+    public void person_matchesGson() throws IOException {
+        assertSameAsGson(new Person(1, "Jane", "Doe"));
+        assertSameAsGson(new Person(-42, "Zo\u00eb \"Z\" <o'b>", "\ud83d\ude00\ud83d\u2028"));
+        assertSameAsGson(new Person(Integer.MAX_VALUE, "", "\n\t\\"));
+    }
+
+    @Test
+    public void person_leavesNullFieldsOut() throws IOException {
+        assertSameAsGson(new Person(3, null, "Doe"));
+        assertSameAsGson(new Person(3, "Jane", null));
+        assertSameAsGson(new Person(0, null, null));
+    }
+
+    @Test
+    public void personArraysAndLists_matchGson() throws IOException {
+        Person[] people = {new Person(1, "Jane", "Doe"), null, new Person(2, "\u00e9", null)};
+        assertSameAsGson(people);
+        assertSameAsGson(new Person[0]);
+        assertSameAsGson(Arrays.asList(people));
+        assertSameAsGson(Collections.emptyList());
+    }
+
+    @Test
+    public void httpResponse_matchesGson() throws IOException {
+        assertSameAsGson(new HttpResponse(200, "Created \"Jane\""));
+        assertSameAsGson(new HttpResponse(404, null));
+    }
+
+    @Test
+    public void otherTypes_areLeftToTheFallback() throws IOException {
+        List<Object> mixed = Arrays.<Object>asList(new Person(1, "Jane", "Doe"), "not a person");
+        assertSameAsGson(mixed);
+        Map<String, Integer> map = Collections.singletonMap("count", 3);
+        assertSameAsGson(map);
+    }
+
+    @Test
+    public void writePerson_writesOnlyTheRequestedFields() {
+        Person person = new Person(7, "Jane", null);
+        assertEquals("{\"id\":7}", writePerson(person, Person.SERIALIZED_ID));
+        assertEquals("{\"first_name\":\"Jane\",\"last_name\":null}",
+                writePerson(person, Person.SERIALIZED_FIRST_NAME, Person.SERIALIZED_LAST_NAME));
+        assertEquals("{}", writePerson(person));
+    }
+
+    @Test
+    public void largeValues_growTheWriterAndStillMatchGson() throws IOException {
+        char[] name = new char[100 * 1024];
+        Arrays.fill(name, '\u00e9');
+        assertSameAsGson(new Person(1, new String(name), "Doe"));
+        assertSameAsGson(new Person(2, "Jane", "Doe"));
+    }
+
+    private void assertSameAsGson(Object value) throws IOException {
+        byte[] expected = GSON.toJson(value).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, codec.toJson(value));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        codec.writeJson(value, outputStream);
+        assertArrayEquals(expected, outputStream.toByteArray());
+    }
+
+    private static String writePerson(Person person, String... fields) {
+        Utf8JsonWriter writer = new Utf8JsonWriter(16);
+        PersonJsonCodec.writePerson(writer, person, new HashSet<>(Arrays.asList(fields)));
+        return new String(writer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
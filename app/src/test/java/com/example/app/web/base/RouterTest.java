@@ -0,0 +1,216 @@
+package com.example.app.web.base;
+
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.HttpRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link Router}'s matching: static segments before parameters, 404 and 405 outcomes, and
+ * int parameters parsed without overflowing.
+ */
+public class RouterTest {
+
+    private static final Route ALL_NAMES = new NamedRoute("all names");
+    private static final Route ADD_NAME = new NamedRoute("add name");
+    private static final Route BULK = new NamedRoute("bulk");
+    private static final Route NAME_BY_ID = new NamedRoute("name by id");
+    private static final Route UPDATE_NAME = new NamedRoute("update name");
+    private static final Route WRITE_STATUS = new NamedRoute("write status");
+    private static final Route BY_TAG = new NamedRoute("by tag");
+
+    private final Router router = new Router()
+            .add(HttpMethod.GET, "/names", ALL_NAMES)
+            .add(HttpMethod.POST, "/names", ADD_NAME)
+            .add(HttpMethod.POST, "/names/_bulk", BULK)
+            .add(HttpMethod.GET, "/names/{id:int}", NAME_BY_ID)
+            .add(HttpMethod.PUT, "/names/{id:int}", UPDATE_NAME)
+            .add(HttpMethod.GET, "/names/_writes/{id:int}", WRITE_STATUS)
+            .add(HttpMethod.GET, "/tags/{tag}/names", BY_TAG);
+
+    @Test
+    public void staticSegments_matchBeforeParameters() {
+        assertFound(BULK, "/names/_bulk", router.match(HttpMethod.POST, "/names/_bulk"));
+        RouteMatch match = router.match(HttpMethod.GET, "/names/42");
+        assertFound(NAME_BY_ID, "/names/{id:int}", match);
+        assertEquals(42, match.getInt(0));
+    }
+
+    @Test
+    public void staticSegmentNotMatchingTheRest_fallsBackToTheParameter() {
+        Router router = new Router()
+                .add(HttpMethod.GET, "/a/b/c", new NamedRoute("static"))
+                .add(HttpMethod.GET, "/a/{x}/d", BY_TAG);
+        RouteMatch match = router.match(HttpMethod.GET, "/a/b/d");
+        assertFound(BY_TAG, "/a/{x}/d", match);
+        assertEquals("b", match.getString(0));
+    }
+
+    @Test
+    public void staticSegment_isNotAnInt() {
+        // "_bulk" only accepts POST, a GET must not fall through to "{id:int}"
+        RouteMatch match = router.match(HttpMethod.GET, "/names/_bulk");
+        assertEquals(RouteMatch.Status.METHOD_NOT_ALLOWED, match.getStatus());
+        assertEquals("POST", match.getAllowedMethods());
+    }
+
+    @Test
+    public void nestedParameters_areReadByPosition() {
+        RouteMatch match = router.match(HttpMethod.GET, "/names/_writes/7");
+        assertFound(WRITE_STATUS, "/names/_writes/{id:int}", match);
+        assertEquals(7, match.getInt(0));
+
+        match = router.match(HttpMethod.GET, "/tags/friends/names");
+        assertFound(BY_TAG, "/tags/{tag}/names", match);
+        assertEquals("friends", match.getString(0));
+    }
+
+    @Test
+    public void knownPathWithOtherMethod_isMethodNotAllowed() {
+        RouteMatch match = router.match(HttpMethod.DELETE, "/names");
+        assertEquals(RouteMatch.Status.METHOD_NOT_ALLOWED, match.getStatus());
+        assertNull(match.getRoute());
+        assertEquals("/names", match.getTemplate());
+        assertEquals("GET,POST", match.getAllowedMethods());
+
+        match = router.match(HttpMethod.POST, "/names/3");
+        assertEquals(RouteMatch.Status.METHOD_NOT_ALLOWED, match.getStatus());
+        assertEquals("GET,PUT", match.getAllowedMethods());
+    }
+
+    @Test
+    public void unsupportedMethod_isMethodNotAllowed() {
+        RouteMatch match = router.match(null, "/names");
+        assertEquals(RouteMatch.Status.METHOD_NOT_ALLOWED, match.getStatus());
+        assertEquals("GET,POST", match.getAllowedMethods());
+    }
+
+    @Test
+    public void unknownPaths_areNotFound() {
+        String[] paths = {"/", "/nope", "/names/1/x", "/names/abc", "/names//", "/names/_writes",
+                "/tags//names", "names", ""};
+        for (String path : paths) {
+            RouteMatch match = router.match(HttpMethod.GET, path);
+            assertEquals(path, RouteMatch.Status.NOT_FOUND, match.getStatus());
+            assertNull(path, match.getTemplate());
+            assertNull(path, match.getAllowedMethods());
+        }
+    }
+
+    @Test
+    public void singleTrailingSlash_isIgnored() {
+        assertFound(ALL_NAMES, "/names", router.match(HttpMethod.GET, "/names/"));
+        RouteMatch match = router.match(HttpMethod.GET, "/names/5/");
+        assertFound(NAME_BY_ID, "/names/{id:int}", match);
+        assertEquals(5, match.getInt(0));
+    }
+
+    @Test
+    public void intParameter_acceptsUpToMaxValue() {
+        RouteMatch match = router.match(HttpMethod.GET, "/names/2147483647");
+        assertFound(NAME_BY_ID, "/names/{id:int}", match);
+        assertEquals(Integer.MAX_VALUE, match.getInt(0));
+
+        match = router.match(HttpMethod.GET, "/names/0000000000012");
+        assertFound(NAME_BY_ID, "/names/{id:int}", match);
+        assertEquals(12, match.getInt(0));
+    }
+
+    @Test
+    public void intParameter_rejectsOverflowAndNonDigits() {
+        String[] ids = {"2147483648", "2147483650", "9999999999", "99999999999999999999", "-1", "+1",
+                "1a", "1.5", " 1"};
+        for (String id : ids) {
+            assertEquals(id, RouteMatch.Status.NOT_FOUND, router.match(HttpMethod.GET, "/names/" + id).getStatus());
+        }
+    }
+
+    @Test
+    public void rootTemplate_matchesTheRootPath() {
+        Route root = new NamedRoute("root");
+        assertFound(root, "/", new Router().add(HttpMethod.GET, "/", root).match(HttpMethod.GET, "/"));
+    }
+
+    @Test
+    public void malformedTemplates_areRejected() {
+        assertRejected(new Router(), "names");
+        assertRejected(new Router().add(HttpMethod.GET, "/names", ALL_NAMES), "/names");
+        assertRejected(new Router().add(HttpMethod.GET, "/names/{id:int}", NAME_BY_ID), "/names/{name}");
+        assertRejected(new Router(), "/{a}/{b}/{c}/{d}/{e}");
+    }
+
+    @Test
+    public void dispatch_answersMethodNotAllowedWithTheAllowHeader() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/names", new BaseHttpHandler() {
+            @Override
+            public void handle(HttpExchange httpExchange) throws IOException {
+                dispatch(router, httpExchange, new HttpRequest(httpExchange));
+            }
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpURLConnection connection = (HttpURLConnection) new URL(base + "/names/42").openConnection();
+            connection.setRequestMethod("DELETE");
+            assertEquals(405, connection.getResponseCode());
+            assertEquals("GET,PUT", connection.getHeaderField("Allow"));
+            connection.disconnect();
+
+            connection = (HttpURLConnection) new URL(base + "/names/2147483648").openConnection();
+            assertEquals(404, connection.getResponseCode());
+            assertNull(connection.getHeaderField("Allow"));
+            connection.disconnect();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void assertFound(Route route, String template, RouteMatch match) {
+        assertEquals(RouteMatch.Status.FOUND, match.getStatus());
+        assertSame(route, match.getRoute());
+        assertEquals(template, match.getTemplate());
+    }
+
+    private static void assertRejected(Router router, String template) {
+        try {
+            router.add(HttpMethod.GET, template, ALL_NAMES);
+            fail("Expected " + template + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // rejected as expected
+        }
+    }
+
+    /**
+     * A route only told apart by its name, never handling requests.
+     */
+    private static final class NamedRoute implements Route {
+        private final String name;
+
+        NamedRoute(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) {
+            throw new UnsupportedOperationException(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
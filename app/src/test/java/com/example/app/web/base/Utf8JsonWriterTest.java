@@ -0,0 +1,105 @@
+package com.example.app.web.base;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link Utf8JsonWriter} encodes strings and numbers to the very bytes {@link Gson} produces,
+ * escapes and multi-byte characters included.
+ */
+public class Utf8JsonWriterTest {
+
+    private static final Gson GSON = new Gson();
+
+    @Test
+    public void writeString_escapesQuotesAndBackslashes() {
+        assertSameAsGson("say \"hi\" \\ bye");
+    }
+
+    @Test
+    public void writeString_escapesControlCharacters() {
+        StringBuilder controls = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            controls.append(c);
+        }
+        controls.append('\u007f');
+        assertSameAsGson(controls.toString());
+    }
+
+    @Test
+    public void writeString_escapesHtmlCharacters() {
+        assertSameAsGson("<script>alert('x&y=z')</script>");
+    }
+
+    @Test
+    public void writeString_escapesLineAndParagraphSeparators() {
+        assertSameAsGson("a\u2028b\u2029c");
+    }
+
+    @Test
+    public void writeString_encodesTwoAndThreeByteCharacters() {
+        assertSameAsGson("Zo\u00eb \u00c5ngstr\u00f6m \u00ff\u0100\u07ff\u0800 \u4e2d\u6587 \uffff");
+    }
+
+    @Test
+    public void writeString_encodesSurrogatePairsAsFourBytes() {
+        String emoji = "\ud83d\ude00"; // U+1F600
+        assertSameAsGson("smile " + emoji + " \udbff\udfff");
+        assertArrayEquals(new byte[]{'"', (byte) 0xf0, (byte) 0x9f, (byte) 0x98, (byte) 0x80, '"'}, write(emoji));
+    }
+
+    @Test
+    public void writeString_replacesUnpairedSurrogates() {
+        assertSameAsGson("\ud83d");
+        assertSameAsGson("\ude00");
+        assertSameAsGson("a\ud83db");
+        assertSameAsGson("\ude00\ud83d");
+        assertSameAsGson("x\ud83d");
+    }
+
+    @Test
+    public void writeString_null() {
+        assertEquals("null", new String(write(null), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeNumber_matchesGson() {
+        long[] values = {0, 7, -7, 10, 99, 100, -100, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            Utf8JsonWriter writer = new Utf8JsonWriter(1);
+            writer.writeNumber(value);
+            assertEquals(GSON.toJson(value), new String(writer.toByteArray(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void buffer_growsAndIsReusedAfterReset() {
+        Utf8JsonWriter writer = new Utf8JsonWriter(1);
+        String value = "\u0000\u0000\u0000\u0000";
+        writer.writeString(value);
+        assertEquals(GSON.toJson(value), new String(writer.toByteArray(), StandardCharsets.UTF_8));
+        int capacity = writer.capacity();
+        writer.reset();
+        assertEquals(0, writer.size());
+        writer.writeString("ok");
+        assertEquals("\"ok\"", new String(writer.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(capacity, writer.capacity());
+    }
+
+    private static void assertSameAsGson(String value) {
+        assertArrayEquals(value, GSON.toJson(value).getBytes(StandardCharsets.UTF_8), write(value));
+    }
+
+    private static byte[] write(String value) {
+        Utf8JsonWriter writer = new Utf8JsonWriter(4);
+        writer.writeString(value);
+        return writer.toByteArray();
+    }
+}
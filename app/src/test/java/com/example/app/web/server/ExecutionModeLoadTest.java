@@ -0,0 +1,289 @@
+package com.example.app.web.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM load test comparing the server's execution modes.
+ *
+ * A burst of slow "database" requests runs alongside fast "static asset" requests. Without a
+ * dedicated database executor the slow requests occupy the request threads and static requests
+ * queue up behind them, for up to DB_BACKLOG_MILLIS. With one, static requests are served right
+ * away whatever the mode.
+ *
+ * Overloaded executors must answer the requests they can't take with 503 Service Unavailable, a
+ * Retry-After header and "Connection: close", while still serving the others.
+ */
+public class ExecutionModeLoadTest {
+
+    private static final int THREADS = 4;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int DB_REQUESTS = 64;
+    private static final int STATIC_REQUESTS = 64;
+    private static final long DB_LATENCY_MILLIS = 20;
+    // Time the request threads take to get through the database burst, when they run it themselves.
+    private static final long DB_BACKLOG_MILLIS = DB_LATENCY_MILLIS * DB_REQUESTS / THREADS;
+    // Max p90 latency of the static requests served alongside the burst with a database executor.
+    private static final long MAX_STATIC_P90_MILLIS = DB_BACKLOG_MILLIS / 4;
+    private static final long SLOW_DB_LATENCY_MILLIS = 200;
+    private static final int BURST_REQUESTS = 16;
+    private static final byte[] STATIC_BODY = "<html></html>".getBytes();
+
+    @Test
+    public void boundedPool_sharedWithDatabase_queuesStaticRequests() throws Exception {
+        long staticP90 = run(ExecutionMode.BOUNDED_POOL, false);
+        assertTrue("static p90 " + staticP90 + "ms", staticP90 >= DB_LATENCY_MILLIS);
+    }
+
+    @Test
+    public void boundedPool_withDatabaseExecutor_servesStaticRequestsRightAway() throws Exception {
+        long sharedP90 = run(ExecutionMode.BOUNDED_POOL, false);
+        long staticP90 = run(ExecutionMode.BOUNDED_POOL, true);
+        assertTrue("static p90 " + staticP90 + "ms", staticP90 < MAX_STATIC_P90_MILLIS);
+        assertTrue("static p90 " + staticP90 + "ms, " + sharedP90 + "ms without db executor", staticP90 < sharedP90);
+    }
+
+    @Test
+    public void virtualThreads_withDatabaseExecutor_servesStaticRequestsRightAway() throws Exception {
+        // Falls back to the bounded pool where virtual threads are unsupported
+        long staticP90 = run(ExecutionMode.VIRTUAL_THREADS, true);
+        assertTrue("static p90 " + staticP90 + "ms", staticP90 < MAX_STATIC_P90_MILLIS);
+    }
+
+    @Test
+    public void fullDatabaseExecutor_rejectsWith503_whileStaticRequestsSucceed() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        RequestExecutor requestExecutor = new RequestExecutor(THREADS, QUEUE_CAPACITY);
+        RequestExecutor dbExecutor = new RequestExecutor("db", 1, 1, false);
+        server.setExecutor(requestExecutor);
+        OverloadFilter overloadFilter = new OverloadFilter(1);
+        server.createContext("/static", new FixedResponseHandler(0)).getFilters().add(overloadFilter);
+        server.createContext("/db", new DispatchingHandler(dbExecutor, new FixedResponseHandler(SLOW_DB_LATENCY_MILLIS), 1))
+                .getFilters().add(overloadFilter);
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(BURST_REQUESTS + STATIC_REQUESTS);
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            List<Future<Reply>> dbCalls = submit(clients, base + "/db", BURST_REQUESTS);
+            List<Future<Reply>> staticCalls = submit(clients, base + "/static", STATIC_REQUESTS);
+
+            // One running and one queued database call at most, the others are refused right away
+            int rejected = assertAnsweredOrRejected(collect(dbCalls));
+            assertTrue("expected rejected database requests", rejected >= BURST_REQUESTS - 2 - 2);
+            assertEquals(rejected, dbExecutor.getRejectedCount());
+            for (Reply reply : collect(staticCalls)) {
+                assertEquals(200, reply.status);
+            }
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+            requestExecutor.shutdownNow();
+            dbExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fullRequestExecutor_rejectsWith503() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        RequestExecutor requestExecutor = new RequestExecutor(1, 1);
+        server.setExecutor(requestExecutor);
+        server.createContext("/db", new FixedResponseHandler(SLOW_DB_LATENCY_MILLIS))
+                .getFilters().add(new OverloadFilter(1));
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(BURST_REQUESTS);
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            int rejected = assertAnsweredOrRejected(collect(submit(clients, base + "/db", BURST_REQUESTS)));
+            assertTrue("expected rejected requests", rejected > 0);
+            assertEquals(rejected, requestExecutor.getRejectedCount());
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends the database burst, then the static requests, checking they're all answered.
+     *
+     * @param mode the request executor's {@link ExecutionMode}.
+     * @param dedicatedDbExecutor true to run the database requests on their own executor.
+     * @return the static requests' p90 latency, in milliseconds.
+     */
+    private long run(ExecutionMode mode, boolean dedicatedDbExecutor) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService requestExecutor = mode.createExecutor(THREADS, QUEUE_CAPACITY);
+        RequestExecutor dbExecutor = new RequestExecutor("db", THREADS, QUEUE_CAPACITY, false);
+        server.setExecutor(requestExecutor);
+        OverloadFilter overloadFilter = new OverloadFilter(1);
+        server.createContext("/static", new FixedResponseHandler(0)).getFilters().add(overloadFilter);
+        HttpHandler dbHandler = new FixedResponseHandler(DB_LATENCY_MILLIS);
+        server.createContext("/db", dedicatedDbExecutor
+                ? new DispatchingHandler(dbExecutor, dbHandler, 1)
+                : dbHandler).getFilters().add(overloadFilter);
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(DB_REQUESTS + STATIC_REQUESTS);
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            List<Future<Reply>> dbCalls = submit(clients, base + "/db", DB_REQUESTS);
+            List<Future<Reply>> staticCalls = submit(clients, base + "/static", STATIC_REQUESTS);
+
+            List<Reply> staticReplies = collect(staticCalls);
+            List<Reply> dbReplies = collect(dbCalls);
+            // Every request fits in the queues, none is rejected
+            for (Reply reply : staticReplies) {
+                assertEquals(200, reply.status);
+            }
+            for (Reply reply : dbReplies) {
+                assertEquals(200, reply.status);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(p90(staticReplies));
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+            requestExecutor.shutdownNow();
+            dbExecutor.shutdownNow();
+        }
+    }
+
+    private static List<Future<Reply>> submit(ExecutorService clients, String url, int count) {
+        List<Future<Reply>> calls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            calls.add(clients.submit(new TimedGet(url)));
+        }
+        return calls;
+    }
+
+    private static List<Reply> collect(List<Future<Reply>> calls) throws Exception {
+        List<Reply> replies = new ArrayList<>();
+        for (Future<Reply> call : calls) {
+            replies.add(call.get(30, TimeUnit.SECONDS));
+        }
+        return replies;
+    }
+
+    /**
+     * Asserts every reply is either a success or a well formed 503.
+     *
+     * @return the number of 503 replies.
+     */
+    private static int assertAnsweredOrRejected(List<Reply> replies) {
+        int rejected = 0;
+        for (Reply reply : replies) {
+            if (reply.status == 503) {
+                assertEquals("1", reply.retryAfter);
+                assertEquals("close", reply.connection);
+                rejected++;
+            } else {
+                assertEquals(200, reply.status);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * @return the replies' p90 latency, in nanoseconds.
+     */
+    private static long p90(List<Reply> replies) {
+        long[] sorted = new long[replies.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = replies.get(i).latencyNanos;
+        }
+        Arrays.sort(sorted);
+        return sorted[sorted.length * 9 / 10];
+    }
+
+    /**
+     * A response's status code, headers of interest, and latency.
+     */
+    private static final class Reply {
+        private final int status;
+        private final String retryAfter;
+        private final String connection;
+        private final long latencyNanos;
+
+        Reply(int status, String retryAfter, String connection, long latencyNanos) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+            this.connection = connection;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * Sends a GET request, returning its {@link Reply}.
+     */
+    private static final class TimedGet implements Callable<Reply> {
+        private final String url;
+
+        TimedGet(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public Reply call() throws IOException {
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                while (body.read() != -1) {
+                    // drain the body so the connection can be reused
+                }
+                body.close();
+            }
+            return new Reply(status, connection.getHeaderField("Retry-After"),
+                    connection.getHeaderField("Connection"), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Answers every request after the given delay, simulating a blocking database call.
+     */
+    private static final class FixedResponseHandler implements HttpHandler {
+        private final long delayMillis;
+
+        FixedResponseHandler(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(200, STATIC_BODY.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(STATIC_BODY);
+            os.close();
+        }
+    }
+}
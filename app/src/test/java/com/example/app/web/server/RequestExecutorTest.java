@@ -0,0 +1,113 @@
+package com.example.app.web.server;
+
+import com.example.app.metrics.LatencyHistogram;
+import com.example.app.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link RequestExecutor#registerMetrics(MetricsRegistry)} exports the time tasks waited in
+ * the queue, along with the executor's gauges, and executors without a queue refuse tasks right away.
+ */
+public class RequestExecutorTest {
+
+    private static final long BLOCKED_MILLIS = 100; // Time the only thread is kept busy.
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final RequestExecutor executor = new RequestExecutor("test", 1, 1, false);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void queuedTasks_recordTheirWait() throws Exception {
+        executor.registerMetrics(registry);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(BLOCKED_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(new Runnable() { // Waits for the busy thread
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        LatencyHistogram queueWait = registry.histogram("executor_queue_wait_seconds", "",
+                MetricsRegistry.label("executor", "test"));
+        assertEquals(2, queueWait.getCount());
+        assertTrue(queueWait.getSumNanos() >= TimeUnit.MILLISECONDS.toNanos(BLOCKED_MILLIS / 2));
+        String exported = export();
+        assertTrue(exported, exported.contains("executor_queue_wait_seconds_count{executor=\"test\"} 2\n"));
+        assertTrue(exported, exported.contains("executor_queue_depth{executor=\"test\"} 0\n"));
+        assertTrue(exported, exported.contains("executor_rejected_tasks{executor=\"test\"} 0\n"));
+    }
+
+    @Test
+    public void handOffExecutor_refusesTasksPastItsThreads() throws Exception {
+        RequestExecutor handOff = new RequestExecutor("hand-off", 1, 0, false);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            handOff.execute(new Runnable() { // Never ends on its own, like an event stream
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            try {
+                handOff.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fail("Task run past the executor's threads");
+                    }
+                });
+                fail("Task accepted past the executor's threads");
+            } catch (RejectedExecutionException e) {
+                // Expected, nothing waits for the busy thread
+            }
+            assertEquals(0, handOff.getQueueDepth());
+            assertEquals(1, handOff.getRejectedCount());
+        } finally {
+            release.countDown();
+            handOff.shutdownNow();
+        }
+    }
+
+    private String export() throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.writeTo(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.app.metrics;
+
+import com.example.app.web.util.model.HttpMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording into the metrics on the request path, alone and from several
+ * threads at once, and of exporting them. Run with "-prof gc" to check recording doesn't allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final LatencyHistogram histogram = registry.histogram("benchmark_seconds", "Benchmark.", "");
+    private final Counter counter = registry.counter("benchmark_total", "Benchmark.", "");
+    private long value = 1;
+
+    public MetricsBenchmark() {
+        for (int status : new int[]{200, 400, 404, 500}) {
+            registry.requests("/names/{id:int}").record(HttpMethod.GET, status, status * 1000L);
+        }
+    }
+
+    @Benchmark
+    public void recordHistogram() {
+        histogram.record(value = value * 31 & 0xFFFFFFFL); // Spread over ~28 bits of nanoseconds
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordHistogramContended() {
+        histogram.record(System.nanoTime() & 0xFFFFFL);
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public void recordRequest() {
+        registry.requests("/names/{id:int}").record(HttpMethod.GET, 200, 150000);
+    }
+
+    @Benchmark
+    public String export() throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.writeTo(writer);
+        return writer.toString();
+    }
+}
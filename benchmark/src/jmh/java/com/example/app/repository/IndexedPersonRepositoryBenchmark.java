@@ -0,0 +1,66 @@
+package com.example.app.repository;
+
+import com.example.app.model.Person;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reads {@link IndexedPersonRepository} serves from memory. Run with "-prof gc" to
+ * compare the allocation rate against the {@link InMemoryPersonRepository} it loads from, which
+ * holds a {@link Person} object per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndexedPersonRepositoryBenchmark {
+
+    @Param("10000")
+    private int seedRows; // Records loaded into the index before measuring.
+    private static final int PAGE_SIZE = 20; // Records read by each findPage call.
+
+    private IndexedPersonRepository repository;
+    private int nextId; // Rotates over the seeded ids so every call hits a different record.
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        InMemoryPersonRepository delegate = new InMemoryPersonRepository();
+        for (int i = 0; i < seedRows; i++) {
+            delegate.insert(new Person("First" + i, "Last" + i));
+        }
+        repository = new IndexedPersonRepository(delegate);
+        while (!repository.isLoaded()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Benchmark
+    public Person findById() {
+        return repository.findById(nextId());
+    }
+
+    @Benchmark
+    public void findPage(final Blackhole blackhole) throws IOException {
+        repository.findPage(nextId() - 1, PAGE_SIZE, null, new RecordConsumer<Person>() {
+            @Override
+            public void accept(Person person) {
+                blackhole.consume(person);
+            }
+        });
+    }
+
+    private int nextId() {
+        nextId = nextId % (seedRows - PAGE_SIZE) + 1;
+        return nextId;
+    }
+}
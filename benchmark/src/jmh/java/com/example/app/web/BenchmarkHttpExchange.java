@@ -0,0 +1,145 @@
+package com.example.app.web;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import static com.example.app.web.util.HttpConstants.CONTENT_TYPE;
+
+/**
+ * In-memory {@link HttpExchange} replaying a single request, so handlers can be benchmarked
+ * without a socket. Call {@link #reset} before each use.
+ */
+public class BenchmarkHttpExchange extends HttpExchange {
+
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+    private String requestMethod;
+    private URI requestUri;
+    private InputStream requestBody;
+    private int responseCode = -1;
+
+    /**
+     * Prepares this exchange to replay a new request.
+     *
+     * @param method the request method, e.g. "GET".
+     * @param uri the request URI, path and query, e.g. "/names?limit=20".
+     * @param contentType the request body's Content-Type, null if there's no body.
+     * @param body the request body, may be empty.
+     * @return this exchange.
+     */
+    public BenchmarkHttpExchange reset(String method, String uri, String contentType, byte[] body) {
+        requestHeaders.clear();
+        if (contentType != null) {
+            requestHeaders.set(CONTENT_TYPE, contentType);
+        }
+        responseHeaders.clear();
+        responseBody.reset();
+        requestMethod = method;
+        requestUri = URI.create(uri);
+        requestBody = new ByteArrayInputStream(body);
+        responseCode = -1;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written to the response body.
+     */
+    public int getResponseLength() {
+        return responseBody.size();
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return requestUri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return requestMethod;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        responseCode = rCode;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        // Attributes are not used by the handlers
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
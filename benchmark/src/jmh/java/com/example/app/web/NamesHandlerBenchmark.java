@@ -0,0 +1,91 @@
+package com.example.app.web;
+
+import com.example.app.model.Person;
+import com.example.app.repository.InMemoryPersonRepository;
+import com.example.app.service.PersonService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.app.web.util.HttpConstants.JSON_MIME;
+import static com.example.app.web.util.HttpConstants.METHOD_DELETE;
+import static com.example.app.web.util.HttpConstants.METHOD_GET;
+import static com.example.app.web.util.HttpConstants.METHOD_POST;
+import static com.example.app.web.util.HttpConstants.METHOD_PUT;
+
+/**
+ * Runs full {@link NamesHandler} request flows, from the {@link com.example.app.web.util.model.HttpRequest}
+ * mapping to the written response, over a {@link BenchmarkHttpExchange}.
+ *
+ * The {@link PersonService} is backed by an {@link InMemoryPersonRepository} so only the HTTP and
+ * service layers are measured, see the app's PersonRepositoryJvmBenchmark for the database's cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NamesHandlerBenchmark {
+
+    private static final int SEED_ROWS = 1000; // Persons stored before measuring.
+    private static final String FORM_MIME = "application/x-www-form-urlencoded";
+    private static final byte[] NO_BODY = new byte[0];
+    private static final byte[] FORM_BODY = "first_name=Jane&last_name=Doe".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_BODY = "{\"first_name\":\"Jane\",\"last_name\":\"Doe\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final BenchmarkHttpExchange exchange = new BenchmarkHttpExchange();
+    private NamesHandler handler;
+    private int lastId = SEED_ROWS; // Id of the last Person created, ids are assigned in sequence.
+
+    @Setup
+    public void setUp() {
+        PersonService personService = new PersonService(new InMemoryPersonRepository());
+        for (int i = 0; i < SEED_ROWS; i++) {
+            personService.addNewPerson("First" + i, "Last" + i);
+        }
+        handler = new NamesHandler(personService);
+    }
+
+    @Benchmark
+    public int getById() throws IOException {
+        handler.handle(exchange.reset(METHOD_GET, NamesHandler.ENDPOINT + "/500", null, NO_BODY));
+        return exchange.getResponseLength();
+    }
+
+    @Benchmark
+    public int getPage() throws IOException {
+        handler.handle(exchange.reset(METHOD_GET, NamesHandler.ENDPOINT + "?after_id=500&limit=20", null, NO_BODY));
+        return exchange.getResponseLength();
+    }
+
+    @Benchmark
+    public int getPageProjected() throws IOException {
+        handler.handle(exchange.reset(METHOD_GET,
+                NamesHandler.ENDPOINT + "?after_id=500&limit=20&fields=" + Person.SERIALIZED_FIRST_NAME, null, NO_BODY));
+        return exchange.getResponseLength();
+    }
+
+    @Benchmark
+    public int putJson() throws IOException {
+        handler.handle(exchange.reset(METHOD_PUT, NamesHandler.ENDPOINT + "/500", JSON_MIME, JSON_BODY));
+        return exchange.getResponseLength();
+    }
+
+    /**
+     * Creates a Person through a form body and deletes it again, so the stored set stays the same.
+     */
+    @Benchmark
+    public int postFormThenDelete() throws IOException {
+        handler.handle(exchange.reset(METHOD_POST, NamesHandler.ENDPOINT, FORM_MIME, FORM_BODY));
+        int length = exchange.getResponseLength();
+        handler.handle(exchange.reset(METHOD_DELETE, NamesHandler.ENDPOINT + "/" + (++lastId), null, NO_BODY));
+        return length + exchange.getResponseLength();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.app.web.base;
+
+import com.example.app.model.Person;
+import com.example.app.web.util.model.HttpMethod;
+import com.example.app.web.util.model.HttpRequest;
+import com.example.app.web.util.model.HttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.app.web.util.HttpConstants.MESSAGE_NOT_FOUND;
+import static com.example.app.web.util.HttpConstants.STATUS_NOT_FOUND;
+
+/**
+ * Measures the {@link BaseHttpHandler} helpers and the {@link Router} lookups every handler goes through. JSON encoding is measured
+ * with both the default {@link GsonJsonCodec} and the hand-written {@link PersonJsonCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BaseHttpHandlerBenchmark {
+
+    private static final int LIST_SIZE = 100; // Persons in the list parsed by the list benchmarks.
+
+    private final BaseHttpHandler handler = new BaseHttpHandler("/names") { };
+    private final BaseHttpHandler personHandler =
+            new BaseHttpHandler("/names", new PersonJsonCodec(BaseHttpHandler.GSON_CODEC)) { };
+    private final Person person = new Person(42, "Jane", "Doe");
+    private final HttpResponse httpResponse = new HttpResponse(STATUS_NOT_FOUND, MESSAGE_NOT_FOUND);
+    private final List<Person> people = new ArrayList<>();
+    private final Router router = new Router();
+
+    public BaseHttpHandlerBenchmark() {
+        Route route = new Route() {
+            @Override
+            public void handle(HttpExchange exchange, HttpRequest request, RouteMatch match) {
+                // Only the lookup is measured
+            }
+        };
+        router.add(HttpMethod.GET, "/names", route)
+                .add(HttpMethod.POST, "/names", route)
+                .add(HttpMethod.POST, "/names/_bulk", route)
+                .add(HttpMethod.GET, "/names/{id:int}", route)
+                .add(HttpMethod.PUT, "/names/{id:int}", route)
+                .add(HttpMethod.DELETE, "/names/{id:int}", route);
+        for (int i = 0; i < LIST_SIZE; i++) {
+            people.add(new Person(i, "First" + i, "Last" + i));
+        }
+    }
+
+    @Benchmark
+    public byte[] gsonPersonToJson() {
+        return handler.toJson(person);
+    }
+
+    @Benchmark
+    public byte[] gsonResponseToJson() {
+        return handler.toJson(httpResponse);
+    }
+
+    @Benchmark
+    public byte[] gsonListToJson() {
+        return handler.toJson(people);
+    }
+
+    @Benchmark
+    public byte[] codecPersonToJson() {
+        return personHandler.toJson(person);
+    }
+
+    @Benchmark
+    public byte[] codecResponseToJson() {
+        return personHandler.toJson(httpResponse);
+    }
+
+    @Benchmark
+    public byte[] codecListToJson() {
+        return personHandler.toJson(people);
+    }
+
+    @Benchmark
+    public int matchIdRoute() {
+        return router.match(HttpMethod.GET, "/names/42").getInt(0);
+    }
+
+    @Benchmark
+    public RouteMatch.Status matchUnknownRoute() {
+        return router.match(HttpMethod.GET, "/names/42/x").getStatus();
+    }
+
+    @Benchmark
+    public Map<String, String> getQueryParameters() {
+        return handler.getQueryParameters("after_id=40&limit=20&fields=id%2Cfirst_name");
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.app.web.base;
+
+import com.example.app.model.Person;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link RequestBodyParser} against the Scanner and regex split approach previously
+ * used by BaseHttpHandler#getBodyParameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestBodyParserBenchmark {
+
+    private static final byte[] FORM_BODY =
+            "id=42&first_name=Jos%C3%A9+Mar%C3%ADa&last_name=Garc%C3%ADa".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_BODY =
+            "{\"id\":42,\"first_name\":\"Jos\u00e9 Mar\u00eda\",\"last_name\":\"Garc\u00eda\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final RequestBodyParser parser = new RequestBodyParser(RequestBodyParser.DEFAULT_MAX_BODY_SIZE, new Gson());
+
+    @Benchmark
+    public Map<String, String> scannerForm() {
+        return scannerParse(new ByteArrayInputStream(FORM_BODY));
+    }
+
+    @Benchmark
+    public Map<String, String> parserForm() throws Exception {
+        return parser.parseForm(new ByteArrayInputStream(FORM_BODY));
+    }
+
+    @Benchmark
+    public Person parserFormToPerson() throws Exception {
+        return parser.parse(new ByteArrayInputStream(FORM_BODY), "application/x-www-form-urlencoded", Person.class);
+    }
+
+    @Benchmark
+    public Person parserJsonToPerson() throws Exception {
+        return parser.parse(new ByteArrayInputStream(JSON_BODY), "application/json", Person.class);
+    }
+
+    /**
+     * Verbatim copy of the former BaseHttpHandler#getBodyParameters, kept as the baseline.
+     */
+    private static Map<String, String> scannerParse(InputStream requestBody) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+
+        Scanner scanner = new Scanner(requestBody).useDelimiter("\\A");
+        String contents = scanner.next();
+        String[] inputs = contents.split("&");
+
+        for(String input:inputs) {
+            String[] keyValue = input.split("=");
+            parameters.put(keyValue[0], keyValue[1]);
+        }
+
+        return parameters;
+    }
+}